@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The few numbers of a build, which the trend graph needs. Unlike the full
+ * {@link UtplsqlResult} this does not grow with the number of asserts, except for
+ * the failure counts of the failed packages.
+ */
+public final class BuildSummary {
+
+    private final int buildNumber;
+    private final int totalCount;
+    private final int failCount;
+    private final long durationMicros;
+    private final Map<String, Integer> packageFailures;
+
+    BuildSummary(int buildNumber, int totalCount, int failCount, long durationMicros,
+                 Map<String, Integer> packageFailures) {
+        this.buildNumber = buildNumber;
+        this.totalCount = totalCount;
+        this.failCount = failCount;
+        this.durationMicros = durationMicros;
+        this.packageFailures = Collections.unmodifiableMap(packageFailures);
+    }
+
+    /**
+     * @param buildNumber the number of the build
+     * @param result the result of the build
+     * @return the summary of the result
+     */
+    static BuildSummary of(int buildNumber, UtplsqlResult result) {
+        long durationMicros = 0;
+        Map<String, Integer> packageFailures = new LinkedHashMap<String, Integer>();
+        for (TestPackage testPackage : result.getPackages()) {
+            durationMicros += testPackage.getElapsedMicros();
+            if (testPackage.getFailures() > 0) {
+                Integer failures = packageFailures.get(testPackage.getQualifiedName());
+                packageFailures.put(testPackage.getQualifiedName(),
+                        (failures == null ? 0 : failures) + testPackage.getFailures());
+            }
+        }
+        return new BuildSummary(buildNumber, result.getTotalCount(), result.getFailCount(),
+                durationMicros, packageFailures);
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getFailCount() {
+        return failCount;
+    }
+
+    public int getPassCount() {
+        return totalCount - failCount;
+    }
+
+    /**
+     * @return the sum of the elapsed times of all testcases in seconds
+     */
+    public double getDuration() {
+        return durationMicros / 1e6;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    /**
+     * @return the number of failures per qualified package name, only packages with failures.
+     * Empty for summaries read for the trend only.
+     */
+    public Map<String, Integer> getPackageFailures() {
+        return packageFailures;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads dbms_output files in large chunks through a {@link FileChannel} and decodes
+ * them with an explicit charset. The lines are handed out as ranges of the internal
+ * char buffer, so no String is created per line. Line terminators are the same as
+ * for {@link java.io.BufferedReader#readLine()}.
+ * <p>
+ * The buffers and the decoder are reused for all files read by one instance, so an
+ * instance must not be shared between threads.
+ */
+final class DbmsOutputReader {
+
+    /**
+     * Receives the lines of a file
+     */
+    interface LineHandler {
+        /**
+         * @param chars buffer containing the line, only valid during this call
+         * @param offset start of the line
+         * @param length length of the line, without line terminator
+         */
+        void line(char[] chars, int offset, int length) throws IOException;
+    }
+
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private CharBuffer chars;
+
+    /**
+     * where to continue looking for line terminators in {@link #chars}
+     */
+    private int scanPosition;
+
+    /**
+     * true if the last line ended with '\r', so a following '\n' is skipped
+     */
+    private boolean skipLineFeed;
+
+    /**
+     * statistics of the last file read
+     */
+    private long bytesRead;
+    private long lineCount;
+    private int longestLine;
+
+    /**
+     * @param charset the charset of the files, a null charset means the platform default
+     * @param bufferSize the number of bytes read at once
+     */
+    DbmsOutputReader(Charset charset, int bufferSize) {
+        this.decoder = (charset == null ? Charset.defaultCharset() : charset).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        this.chars = CharBuffer.allocate(bufferSize);
+    }
+
+    DbmsOutputReader(Charset charset) {
+        this(charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Resolves the configured name of a charset
+     * @param name the name of the charset, or an empty value for the platform default
+     * @return the charset
+     * @throws java.nio.charset.IllegalCharsetNameException if the name is illegal
+     * @throws java.nio.charset.UnsupportedCharsetException if the charset is not available
+     */
+    static Charset toCharset(String name) {
+        if (name == null || name.trim().length() == 0) {
+            return Charset.defaultCharset();
+        }
+        return Charset.forName(name.trim());
+    }
+
+    /**
+     * Reads all lines of a file
+     * @param file the file to read
+     * @param handler receives the lines in order
+     */
+    void read(File file, LineHandler handler) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            read(in.getChannel(), handler);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void read(FileChannel channel, LineHandler handler) throws IOException {
+        decoder.reset();
+        bytes.clear();
+        chars.clear();
+        scanPosition = 0;
+        skipLineFeed = false;
+        bytesRead = 0;
+        lineCount = 0;
+        longestLine = 0;
+
+        boolean endOfInput = false;
+        while (true) {
+            if (!endOfInput) {
+                int read = channel.read(bytes);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    bytesRead += read;
+                }
+            }
+            bytes.flip();
+            int before = chars.position();
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            boolean decoded = chars.position() > before;
+            bytes.compact();
+            emitLines(handler);
+            if (result.isOverflow()) {
+                growIfStuck(decoded);
+            } else if (endOfInput) {
+                break;
+            }
+        }
+        while (true) {
+            int before = chars.position();
+            CoderResult result = decoder.flush(chars);
+            if (!result.isOverflow()) {
+                break;
+            }
+            boolean decoded = chars.position() > before;
+            emitLines(handler);
+            growIfStuck(decoded);
+        }
+        emitLines(handler);
+
+        // the last line does not need a line terminator
+        if (chars.position() > 0) {
+            emit(handler, chars.array(), 0, chars.position());
+            chars.clear();
+        }
+    }
+
+    /**
+     * Hands out all complete lines in the char buffer and moves the remaining
+     * incomplete line to the start of the buffer.
+     */
+    private void emitLines(LineHandler handler) throws IOException {
+        char[] array = chars.array();
+        int limit = chars.position();
+        int lineStart = 0;
+        int i = scanPosition;
+        if (skipLineFeed && i < limit) {
+            if (array[i] == '\n') {
+                lineStart = ++i;
+            }
+            skipLineFeed = false;
+        }
+        while (i < limit) {
+            char c = array[i];
+            if (c == '\n' || c == '\r') {
+                emit(handler, array, lineStart, i - lineStart);
+                i++;
+                if (c == '\r') {
+                    if (i == limit) {
+                        skipLineFeed = true;
+                    } else if (array[i] == '\n') {
+                        i++;
+                    }
+                }
+                lineStart = i;
+            } else {
+                i++;
+            }
+        }
+        if (lineStart > 0) {
+            System.arraycopy(array, lineStart, array, 0, limit - lineStart);
+            chars.position(limit - lineStart);
+        }
+        scanPosition = chars.position();
+    }
+
+    private void emit(LineHandler handler, char[] array, int offset, int length) throws IOException {
+        lineCount++;
+        if (length > longestLine) {
+            longestLine = length;
+        }
+        handler.line(array, offset, length);
+    }
+
+    /**
+     * @return the number of bytes of the last file read
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of lines of the last file read
+     */
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the length of the longest line of the last file read in chars
+     */
+    int getLongestLine() {
+        return longestLine;
+    }
+
+    /**
+     * A line longer than the char buffer needs a bigger buffer. The buffer also
+     * grows, if an overflow decoded nothing, e.g. a surrogate pair does not fit
+     * into the last free char.
+     * @param decoded true if the overflowing call decoded at least one char
+     */
+    private void growIfStuck(boolean decoded) {
+        if (!decoded || !chars.hasRemaining()) {
+            CharBuffer bigger = CharBuffer.allocate(chars.capacity() * 2);
+            chars.flip();
+            bigger.put(chars);
+            chars = bigger;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * An {@link UtplsqlResult} in the encoding of {@link ResultCodec}, as it is sent
+ * from the node of the workspace to the master. The counts are read from the
+ * header without decoding the packages, e.g. to reject an empty result. The
+ * {@link UtplsqlRecorder} needs all packages for the result file, the timing
+ * analysis and the indexes of the job, so it decodes the whole result once
+ * through {@link #getResult()}.
+ */
+public final class EncodedResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] bytes;
+
+    private final PublishStatistics statistics;
+
+    private transient ResultCodec.Header header;
+    private transient UtplsqlResult result;
+
+    EncodedResult(UtplsqlResult result) throws IOException {
+        this(result, new PublishStatistics());
+    }
+
+    /**
+     * @param result the result to encode
+     * @param statistics the statistics of the node, the master adds its own phases
+     */
+    EncodedResult(UtplsqlResult result, PublishStatistics statistics) throws IOException {
+        this.bytes = ResultCodec.encode(result);
+        this.statistics = statistics;
+        this.result = result;
+    }
+
+    private ResultCodec.Header getHeader() throws IOException {
+        if (header == null) {
+            header = ResultCodec.readHeader(bytes);
+        }
+        return header;
+    }
+
+    public int getTotalCount() throws IOException {
+        return getHeader().totalCount;
+    }
+
+    public int getFailCount() throws IOException {
+        return getHeader().failCount;
+    }
+
+    /**
+     * @return the statistics of publishing this result
+     */
+    public PublishStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the size of the encoding in bytes
+     */
+    public int getSize() {
+        return bytes.length;
+    }
+
+    /**
+     * @return the decoded result
+     */
+    public synchronized UtplsqlResult getResult() throws IOException {
+        if (result == null) {
+            result = ResultCodec.decode(bytes);
+        }
+        return result;
+    }
+}
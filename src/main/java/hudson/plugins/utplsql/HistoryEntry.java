@@ -0,0 +1,59 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+/**
+ * Status and elapsed time of an assert in a single build, read from the {@link HistoryIndex}
+ */
+public final class HistoryEntry {
+
+    private final int buildNumber;
+    private final Testcase.Status result;
+    private final long elapsedMicros;
+
+    HistoryEntry(int buildNumber, Testcase.Status result, long elapsedMicros) {
+        this.buildNumber = buildNumber;
+        this.result = result;
+        this.elapsedMicros = elapsedMicros;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public Testcase.Status getResult() {
+        return result;
+    }
+
+    public long getElapsedMicros() {
+        return elapsedMicros;
+    }
+
+    /**
+     * @return the elapsed time in seconds
+     */
+    public double getDuration() {
+        return elapsedMicros / 1e6;
+    }
+}
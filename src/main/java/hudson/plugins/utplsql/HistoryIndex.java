@@ -0,0 +1,430 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only index of the status and elapsed time of every assert in every build
+ * of a job, kept in the directory {@value #DIRECTORY} of the job. The history of a
+ * single assert is read from one bucket file instead of loading the results of all
+ * builds.
+ * <p>
+ * {@value #IDENTITIES} lists the {@link Testcase#getId() identities} as written by
+ * {@link DataOutputStream#writeUTF(String)}, the position in that list is the number
+ * of the identity. The records of an identity are appended to the bucket file
+ * <code>number % {@value #BUCKETS}</code>, {@value #RECORD_SIZE} bytes each: build
+ * number, identity number, status and elapsed time in microseconds. The identities
+ * are written before the records, so a record never refers to an unknown identity.
+ * An incomplete entry at the end of a file, e.g. after a crash, is ignored and
+ * overwritten by the next append. If a build was recorded more than once, the last
+ * record wins.
+ * <p>
+ * The identities read so far are cached for all jobs on the master, at most
+ * <code>hudson.plugins.utplsql.HistoryIndex.maxIdentities</code> identities. The
+ * least recently used jobs are evicted first, and the identities are only softly
+ * referenced, so the garbage collector may clear them before. The
+ * {@link UtplsqlItemListener} drops the identities of deleted and renamed jobs.
+ */
+final class HistoryIndex {
+
+    static final String DIRECTORY = "utplsql-history";
+    static final String IDENTITIES = "identities";
+    static final int BUCKETS = 256;
+    static final int RECORD_SIZE = 4 + 4 + 1 + 8;
+    static final int BLOCK_RECORDS = 4096;
+
+    /**
+     * serializes the appends of concurrent builds, the index is only written on the master
+     */
+    private static final Object LOCK = new Object();
+
+    static final int MAX_IDENTITIES = Integer.getInteger(HistoryIndex.class.getName() + ".maxIdentities", 500000);
+
+    /**
+     * the identities of the indexes read recently, by the path of the identities file.
+     * The files only grow, so only the new part has to be read. Guarded by {@link #LOCK}.
+     */
+    private static final LinkedHashMap<String, SoftReference<Identities>> CACHE
+            = new LinkedHashMap<String, SoftReference<Identities>>(16, 0.75f, true);
+
+    private final File directory;
+
+    /**
+     * @param directory the directory of the job
+     */
+    HistoryIndex(File directory) {
+        this.directory = new File(directory, DIRECTORY);
+    }
+
+    /**
+     * Appends the status and elapsed time of all asserts of a build
+     * @param buildNumber the number of the build
+     * @param result the result of the build
+     */
+    void append(int buildNumber, UtplsqlResult result) throws IOException {
+        synchronized (LOCK) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create " + directory);
+            }
+            Identities identities = identities();
+            ByteArrayOutputStream newIdentities = new ByteArrayOutputStream();
+            DataOutputStream names = new DataOutputStream(newIdentities);
+            Map<Integer, DataOutputStream> buckets = new TreeMap<Integer, DataOutputStream>();
+            Map<Integer, ByteArrayOutputStream> bucketBytes = new HashMap<Integer, ByteArrayOutputStream>();
+            List<String> added = new ArrayList<String>();
+            int next = identities.numbers.size();
+            Map<String, Integer> addedNumbers = new HashMap<String, Integer>();
+
+            for (TestPackage testPackage : result.getPackages()) {
+                for (Testcase testcase : testPackage.getTestCases()) {
+                    String id = testcase.getId();
+                    Integer number = identities.numbers.get(id);
+                    if (number == null) {
+                        number = addedNumbers.get(id);
+                    }
+                    if (number == null) {
+                        number = next++;
+                        addedNumbers.put(id, number);
+                        added.add(id);
+                        names.writeUTF(id);
+                    }
+                    int bucket = number % BUCKETS;
+                    DataOutputStream out = buckets.get(bucket);
+                    if (out == null) {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        bucketBytes.put(bucket, bytes);
+                        out = new DataOutputStream(bytes);
+                        buckets.put(bucket, out);
+                    }
+                    out.writeInt(buildNumber);
+                    out.writeInt(number);
+                    out.writeByte(testcase.getResult().ordinal());
+                    out.writeLong(testcase.getElapsedMicros());
+                }
+            }
+
+            if (!added.isEmpty()) {
+                names.close();
+                RandomAccessFile file = new RandomAccessFile(identities.file, "rw");
+                try {
+                    // overwrites an incomplete identity
+                    file.seek(identities.length);
+                    file.write(newIdentities.toByteArray());
+                    identities.length = file.getFilePointer();
+                    file.setLength(identities.length);
+                } finally {
+                    file.close();
+                }
+                for (String id : added) {
+                    identities.numbers.put(id, identities.numbers.size());
+                }
+            }
+
+            for (Map.Entry<Integer, DataOutputStream> entry : buckets.entrySet()) {
+                entry.getValue().close();
+                RandomAccessFile file = new RandomAccessFile(bucket(entry.getKey()), "rw");
+                try {
+                    long length = file.length();
+                    // overwrites an incomplete record
+                    file.seek(length - length % RECORD_SIZE);
+                    file.write(bucketBytes.get(entry.getKey()).toByteArray());
+                } finally {
+                    file.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the history of a single assert
+     * @param id the {@link Testcase#getId() identity} of the assert
+     * @param max the maximum number of entries, the latest are returned
+     * @return the entries ordered by descending build number, empty if the assert is unknown
+     */
+    List<HistoryEntry> history(String id, int max) throws IOException {
+        Integer number;
+        synchronized (LOCK) {
+            number = identities().numbers.get(id);
+        }
+        if (number == null) {
+            return Collections.emptyList();
+        }
+        File bucket = bucket(number % BUCKETS);
+        if (!bucket.exists()) {
+            return Collections.emptyList();
+        }
+        byte[] bytes;
+        RandomAccessFile file = new RandomAccessFile(bucket, "r");
+        try {
+            long length = file.length();
+            bytes = new byte[(int) (length - length % RECORD_SIZE)];
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+
+        TreeMap<Integer, HistoryEntry> entries = new TreeMap<Integer, HistoryEntry>(Collections.reverseOrder());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        Testcase.Status[] statuses = Testcase.Status.values();
+        while (in.available() > 0) {
+            int buildNumber = in.readInt();
+            int recordNumber = in.readInt();
+            int status = in.readByte();
+            long elapsedMicros = in.readLong();
+            if (recordNumber == number) {
+                entries.put(buildNumber, new HistoryEntry(buildNumber, statuses[status], elapsedMicros));
+            }
+        }
+        List<HistoryEntry> list = new ArrayList<HistoryEntry>(Math.min(max, entries.size()));
+        for (HistoryEntry entry : entries.values()) {
+            if (list.size() == max) {
+                break;
+            }
+            list.add(entry);
+        }
+        return list;
+    }
+
+    /**
+     * Reads the elapsed times of some asserts in some builds, see {@link #entries}
+     * @return the elapsed times in microseconds by identity, by build number. Builds
+     * without records are missing.
+     */
+    Map<Integer, Map<String, Long>> times(Collection<String> ids, Collection<Integer> buildNumbers)
+            throws IOException {
+        Map<Integer, Map<String, Long>> times = new HashMap<Integer, Map<String, Long>>();
+        for (Map.Entry<Integer, Map<String, HistoryEntry>> build : entries(ids, buildNumbers).entrySet()) {
+            Map<String, Long> micros = new HashMap<String, Long>(build.getValue().size() * 4 / 3 + 1);
+            for (Map.Entry<String, HistoryEntry> entry : build.getValue().entrySet()) {
+                micros.put(entry.getKey(), entry.getValue().getElapsedMicros());
+            }
+            times.put(build.getKey(), micros);
+        }
+        return times;
+    }
+
+    /**
+     * Reads the status and elapsed time of some asserts in some builds. The bucket files
+     * are read backwards in blocks of {@value #BLOCK_RECORDS} records and only down to the
+     * first block without a record of the oldest of the builds or a newer one.
+     * @param ids the {@link Testcase#getId() identities} of the asserts
+     * @param buildNumbers the numbers of the builds
+     * @return the entries by identity, by build number. Builds without records are missing.
+     */
+    Map<Integer, Map<String, HistoryEntry>> entries(Collection<String> ids, Collection<Integer> buildNumbers)
+            throws IOException {
+        Map<Integer, Map<String, HistoryEntry>> entries = new HashMap<Integer, Map<String, HistoryEntry>>();
+        if (ids.isEmpty() || buildNumbers.isEmpty()) {
+            return entries;
+        }
+        Map<Integer, Map<Integer, String>> buckets = new TreeMap<Integer, Map<Integer, String>>();
+        synchronized (LOCK) {
+            Map<String, Integer> numbers = identities().numbers;
+            for (String id : ids) {
+                Integer number = numbers.get(id);
+                if (number != null) {
+                    Map<Integer, String> bucket = buckets.get(number % BUCKETS);
+                    if (bucket == null) {
+                        bucket = new HashMap<Integer, String>();
+                        buckets.put(number % BUCKETS, bucket);
+                    }
+                    bucket.put(number, id);
+                }
+            }
+        }
+        int oldest = Collections.min(buildNumbers);
+        for (Map.Entry<Integer, Map<Integer, String>> bucket : buckets.entrySet()) {
+            File file = bucket(bucket.getKey());
+            if (file.exists()) {
+                readBackwards(file, bucket.getValue(), buildNumbers, oldest, entries);
+            }
+        }
+        return entries;
+    }
+
+    private static void readBackwards(File bucket, Map<Integer, String> ids, Collection<Integer> buildNumbers,
+                                      int oldest, Map<Integer, Map<String, HistoryEntry>> entries)
+            throws IOException {
+        Testcase.Status[] statuses = Testcase.Status.values();
+        RandomAccessFile file = new RandomAccessFile(bucket, "r");
+        try {
+            long end = file.length() - file.length() % RECORD_SIZE;
+            byte[] bytes = new byte[BLOCK_RECORDS * RECORD_SIZE];
+            boolean recent = true;
+            while (end > 0 && recent) {
+                int length = (int) Math.min(end, bytes.length);
+                end -= length;
+                file.seek(end);
+                file.readFully(bytes, 0, length);
+                ByteBuffer records = ByteBuffer.wrap(bytes, 0, length);
+                // the builds of a job may be recorded out of order, so a whole block is read
+                recent = false;
+                // the last record of a build wins
+                for (int position = length - RECORD_SIZE; position >= 0; position -= RECORD_SIZE) {
+                    int buildNumber = records.getInt(position);
+                    recent |= buildNumber >= oldest;
+                    String id = ids.get(records.getInt(position + 4));
+                    if (id == null || !buildNumbers.contains(buildNumber)) {
+                        continue;
+                    }
+                    Map<String, HistoryEntry> build = entries.get(buildNumber);
+                    if (build == null) {
+                        build = new HashMap<String, HistoryEntry>();
+                        entries.put(buildNumber, build);
+                    }
+                    if (!build.containsKey(id)) {
+                        build.put(id, new HistoryEntry(buildNumber, statuses[records.get(position + 8)],
+                                records.getLong(position + 9)));
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private File bucket(int bucket) {
+        return new File(directory, Integer.toString(bucket));
+    }
+
+    /**
+     * Drops the cached identities of an index
+     * @param directory the directory of the job
+     */
+    static void invalidate(File directory) {
+        synchronized (LOCK) {
+            CACHE.remove(new File(new File(directory, DIRECTORY), IDENTITIES).getPath());
+        }
+    }
+
+    /**
+     * @return the number of identities cached for all indexes
+     */
+    static int getCachedIdentities() {
+        synchronized (LOCK) {
+            int cached = 0;
+            for (SoftReference<Identities> reference : CACHE.values()) {
+                Identities identities = reference.get();
+                cached += identities == null ? 0 : identities.numbers.size();
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * @return the identities of this index, up to date with the file. Called with the lock held.
+     */
+    private Identities identities() throws IOException {
+        File file = new File(directory, IDENTITIES);
+        SoftReference<Identities> reference = CACHE.get(file.getPath());
+        Identities identities = reference == null ? null : reference.get();
+        long length = file.length();
+        if (identities == null || length < identities.length) {
+            // new, replaced or cleared by the garbage collector
+            identities = new Identities(file);
+            CACHE.put(file.getPath(), new SoftReference<Identities>(identities));
+        }
+        if (length > identities.length) {
+            byte[] bytes = new byte[(int) (length - identities.length)];
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.seek(identities.length);
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            DataInputStream names = new DataInputStream(new ByteArrayInputStream(bytes));
+            int complete = 0;
+            try {
+                while (complete < bytes.length) {
+                    identities.numbers.put(names.readUTF(), identities.numbers.size());
+                    complete = bytes.length - names.available();
+                }
+            } catch (EOFException e) {
+                // an incomplete identity at the end, read again with the next append
+            }
+            identities.length += complete;
+            evict();
+        }
+        return identities;
+    }
+
+    /**
+     * Drops the identities cleared by the garbage collector, then the least recently
+     * used ones until the limit is kept. The identities just read are kept even if
+     * they are more than the limit.
+     */
+    private static void evict() {
+        int cached = 0;
+        for (Iterator<SoftReference<Identities>> i = CACHE.values().iterator(); i.hasNext();) {
+            Identities identities = i.next().get();
+            if (identities == null) {
+                i.remove();
+            } else {
+                cached += identities.numbers.size();
+            }
+        }
+        for (Iterator<SoftReference<Identities>> i = CACHE.values().iterator();
+                cached > MAX_IDENTITIES && CACHE.size() > 1;) {
+            Identities identities = i.next().get();
+            cached -= identities == null ? 0 : identities.numbers.size();
+            i.remove();
+        }
+    }
+
+    /**
+     * The identities read from a file
+     */
+    private static final class Identities {
+        final File file;
+        final Map<String, Integer> numbers = new HashMap<String, Integer>();
+        /**
+         * the number of bytes read from the file
+         */
+        long length;
+
+        Identities(File file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.IOException;
+
+/**
+ * Push parser for the dbms_output of utPLSQL. It is fed lines, or chunks of
+ * characters in any size, as they arrive, e.g. from a file, from the database or
+ * from a file that is still growing, and reports each testcase and package as
+ * soon as it is complete. Nothing but the current package is kept.
+ * <p>
+ * A testcase is complete with the next line, which does not continue its message,
+ * a package with the header of the next package. The last ones are completed by
+ * {@link #finish()}.
+ * <p>
+ * The lines <code>Ran setup</code> and <code>Ran teardown</code> complete a testcase
+ * like other output, so they do not become part of its message.
+ * <p>
+ * The header of a suite, <code>SUITE FAILURE: "NAME"</code>, comes before the results
+ * of its packages, so the packages up to the next suite header belong to the suite.
+ */
+final class IncrementalParser implements DbmsOutputReader.LineHandler {
+
+    /**
+     * Receives the parsed testcases and packages, in the order of the output
+     */
+    interface Listener {
+        /**
+         * @param testcase a testcase with its complete message, already added to its package
+         */
+        void testcase(Testcase testcase) throws IOException;
+
+        /**
+         * @param testPackage a package with all its testcases
+         */
+        void testPackage(TestPackage testPackage) throws IOException;
+    }
+
+    private final UtplsqlLineLexer lexer = new UtplsqlLineLexer();
+    private final int maxMessageLength;
+    private final MessageSpill spill;
+    private final Listener listener;
+    private String currentSuite;
+    private TestPackage currentPackage;
+    private Testcase currentTestcase;
+    private boolean truncated;
+
+    /**
+     * the incomplete last line of the chunks
+     */
+    private char[] pending = new char[256];
+    private int pendingLength;
+
+    /**
+     * true if the last chunk ended with '\r', so a following '\n' is skipped
+     */
+    private boolean skipLineFeed;
+
+    /**
+     * @param maxMessageLength maximum length of a message, 0 for no limit
+     * @param spill receives the full text of truncated messages
+     * @param listener receives the testcases and packages
+     */
+    IncrementalParser(int maxMessageLength, MessageSpill spill, Listener listener) {
+        this.maxMessageLength = maxMessageLength;
+        this.spill = spill;
+        this.listener = listener;
+    }
+
+    /**
+     * Parses a complete line
+     */
+    public void line(char[] chars, int offset, int length) throws IOException {
+        // For some reason there are a lot of trailing whitespaces,
+        // the lexer ignores them.
+        switch (lexer.lex(chars, offset, length)) {
+        case PACKAGE:
+            // new Package starting
+            finishTestcase();
+            finishPackage();
+            currentPackage = new TestPackage(currentSuite, lexer.getSchema(), lexer.getPackageName());
+            break;
+        case SUITE:
+            finishTestcase();
+            if (lexer.getSuiteName() != null) {
+                // the header of a suite comes before its packages
+                finishPackage();
+                currentSuite = lexer.getSuiteName();
+            }
+            break;
+        case TESTCASE:
+            finishTestcase();
+            currentTestcase = new Testcase(currentPackage, lexer);
+            currentPackage.add(currentTestcase);
+            break;
+        case OUTPUT:
+        case FIXTURE:
+            finishTestcase();
+            break;
+        default:
+            //If we have a current testcase and the line does not start with ">",
+            //we append the output to the current testcase.
+            if (currentTestcase != null) {
+                currentTestcase.appendToMessage(lexer.getLine());
+            }
+        }
+    }
+
+    /**
+     * Parses the lines of a chunk of characters. A line may be split across chunks;
+     * it is parsed once its line terminator, '\n', '\r' or "\r\n", arrived.
+     */
+    void chars(char[] chars, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        if (skipLineFeed && i < end) {
+            if (chars[i] == '\n') {
+                i++;
+            }
+            skipLineFeed = false;
+        }
+        int lineStart = i;
+        while (i < end) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r') {
+                if (pendingLength > 0) {
+                    append(chars, lineStart, i - lineStart);
+                    line(pending, 0, pendingLength);
+                    pendingLength = 0;
+                } else {
+                    line(chars, lineStart, i - lineStart);
+                }
+                i++;
+                if (c == '\r') {
+                    if (i == end) {
+                        skipLineFeed = true;
+                    } else if (chars[i] == '\n') {
+                        i++;
+                    }
+                }
+                lineStart = i;
+            } else {
+                i++;
+            }
+        }
+        append(chars, lineStart, end - lineStart);
+    }
+
+    private void append(char[] chars, int offset, int length) {
+        if (pendingLength + length > pending.length) {
+            char[] bigger = new char[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, bigger, 0, pendingLength);
+            pending = bigger;
+        }
+        System.arraycopy(chars, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /**
+     * The end of the output: parses a last line without line terminator and
+     * completes the last testcase and package.
+     */
+    void finish() throws IOException {
+        if (pendingLength > 0) {
+            line(pending, 0, pendingLength);
+            pendingLength = 0;
+        }
+        finishTestcase();
+        finishPackage();
+    }
+
+    /**
+     * @return true if a message was truncated
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * no more lines are appended to the message of the current testcase
+     */
+    private void finishTestcase() throws IOException {
+        if (currentTestcase != null) {
+            truncated |= currentTestcase.finishMessage(maxMessageLength, spill);
+            Testcase testcase = currentTestcase;
+            currentTestcase = null;
+            listener.testcase(testcase);
+        }
+    }
+
+    private void finishPackage() throws IOException {
+        if (currentPackage != null) {
+            TestPackage testPackage = currentPackage;
+            currentPackage = null;
+            listener.testPackage(testPackage);
+        }
+    }
+}
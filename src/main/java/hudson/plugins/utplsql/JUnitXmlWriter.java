@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.util.IOException2;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes {@link TestPackage}s as jUnit xml files, e.g. to archive them or to
+ * hand them to other tools. The xml is streamed case by case to the file, so
+ * the memory needed does not depend on the size of the package.
+ */
+final class JUnitXmlWriter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+
+    /**
+     * Writes one jUnit file per package into a directory.
+     * @param result the packages to write
+     * @param directory the directory, which is created if necessary
+     */
+    void write(UtplsqlResult result, File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        int number = 0;
+        for (TestPackage testPackage : result.getPackages()) {
+            // the number keeps packages with the same name from overwriting each other
+            File file = new File(directory, "TEST-" + (++number) + "-" + testPackage.getName() + ".xml");
+            OutputStream out = new FileOutputStream(file);
+            try {
+                write(testPackage, out);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Writes one package as jUnit testsuite.
+     * @param testPackage the package to write
+     * @param out the stream to write to, which is not closed
+     */
+    void write(TestPackage testPackage, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, ENCODING);
+        try {
+            XMLStreamWriter xml = factory.createXMLStreamWriter(writer);
+            xml.writeStartDocument(ENCODING, "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("testsuite");
+            xml.writeAttribute("errors", "0");
+            xml.writeAttribute("failures", String.valueOf(testPackage.getFailures()));
+            xml.writeAttribute("name", testPackage.getName());
+            xml.writeAttribute("tests", String.valueOf(testPackage.getTotalCount()));
+            xml.writeAttribute("time", String.valueOf(testPackage.getDuration()));
+            xml.writeCharacters("\n");
+            for (Testcase testcase : testPackage.getTestCases()) {
+                write(testcase, xml);
+            }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException2("Could not write jUnit xml of package " + testPackage.getName(), e);
+        }
+        writer.flush();
+    }
+
+    private static void write(Testcase testcase, XMLStreamWriter xml) throws XMLStreamException {
+        xml.writeStartElement("testcase");
+        xml.writeAttribute("classname", testcase.getClassName());
+        xml.writeAttribute("name", testcase.getStableName());
+        xml.writeAttribute("time", String.valueOf(testcase.getElapsedTimeInSeconds()));
+        if (testcase.isFailed()) {
+            xml.writeCharacters("\n");
+            xml.writeEmptyElement("failure");
+            xml.writeAttribute("message", testcase.getMessage() == null ? "" : testcase.getMessage());
+            xml.writeCharacters("\n");
+        }
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+}
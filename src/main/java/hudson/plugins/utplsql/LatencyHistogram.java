@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Histogram of elapsed times in microseconds with fixed, logarithmic buckets.
+ * Times below 16 us have a bucket each, above each power of two is split into
+ * 8 buckets, so a percentile is at most 12.5% above the exact value. Histograms
+ * with the same buckets are merged by adding up the counts, so the histogram of a
+ * build is the sum of the histograms of its packages.
+ */
+public final class LatencyHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int EXACT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * counts per bucket, only as long as the highest bucket used
+     */
+    private int[] counts = new int[0];
+    private long count;
+    private long totalMicros;
+    private long maxMicros;
+
+    /**
+     * @param micros an elapsed time, negative times are counted as 0
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        int bucket = bucketOf(micros);
+        if (bucket >= counts.length) {
+            counts = Arrays.copyOf(counts, bucket + 1);
+        }
+        counts[bucket]++;
+        count++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    /**
+     * Adds the counts of another histogram to this one
+     */
+    public void merge(LatencyHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        totalMicros += other.totalMicros;
+        maxMicros = Math.max(maxMicros, other.maxMicros);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket containing the percentile, never more
+     * than the maximum. 0 for an empty histogram.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    public long getP95() {
+        return getPercentile(95);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < EXACT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest time falling into a bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < EXACT) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - EXACT) % SUB_BUCKETS;
+        long lowerBound = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
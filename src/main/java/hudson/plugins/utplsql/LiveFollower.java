@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Follows the dbms_output files of a running build. Each poll only transfers the
+ * bytes appended to the files since the last poll, which are parsed on the master
+ * by an {@link IncrementalParser} per file. The cost of a poll therefore depends on
+ * the output written since the last poll, not on the size of the files.
+ */
+final class LiveFollower {
+
+    /**
+     * maximum number of bytes read from one file in one poll, the rest follows
+     * with the next poll
+     */
+    static final int MAX_BYTES_PER_POLL = 4 * 1024 * 1024;
+
+    private final String testResultLocations;
+    private final String charset;
+    private final IncrementalParser.Listener listener;
+    private final Map<String, FileState> files = new LinkedHashMap<String, FileState>();
+
+    /**
+     * @param testResultLocations the files to follow, relative to the workspace
+     * @param charset name of the charset of the files, empty for the default of the node
+     * @param listener receives the testcases and packages of all files
+     */
+    LiveFollower(String testResultLocations, String charset, IncrementalParser.Listener listener) {
+        this.testResultLocations = testResultLocations;
+        this.charset = charset;
+        this.listener = listener;
+    }
+
+    /**
+     * Reads and parses what was appended to the files since the last poll
+     * @return the number of bytes read
+     */
+    synchronized long poll(FilePath workspace) throws IOException, InterruptedException {
+        HashMap<String, Long> offsets = new HashMap<String, Long>();
+        for (Map.Entry<String, FileState> file : files.entrySet()) {
+            offsets.put(file.getKey(), file.getValue().offset);
+        }
+        long bytes = 0;
+        for (Tail tail : workspace.act(new TailCallable(testResultLocations, charset, offsets))) {
+            parse(tail);
+            bytes += tail.bytes.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Parses the bytes appended to a file
+     */
+    synchronized void parse(Tail tail) throws IOException {
+        FileState state = files.get(tail.path);
+        if (state == null || state.offset != tail.offset) {
+            // a new file, or the file was written anew
+            state = new FileState(Charset.forName(tail.charset));
+            files.put(tail.path, state);
+        }
+        state.append(tail.bytes, false);
+    }
+
+    /**
+     * Completes the last lines, testcases and packages of all files
+     */
+    synchronized void finish() throws IOException {
+        for (FileState state : files.values()) {
+            state.append(new byte[0], true);
+            state.parser.finish();
+        }
+    }
+
+    /**
+     * What was read and parsed of one file
+     */
+    private final class FileState {
+        private final CharsetDecoder decoder;
+        private final IncrementalParser parser = new IncrementalParser(0, null, listener);
+        private final CharBuffer chars = CharBuffer.allocate(8192);
+        private long offset;
+
+        /**
+         * the bytes of an incomplete character at the end of the last poll
+         */
+        private byte[] leftover = new byte[0];
+
+        FileState(Charset charset) {
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        void append(byte[] bytes, boolean endOfInput) throws IOException {
+            offset += bytes.length;
+            ByteBuffer in = ByteBuffer.allocate(leftover.length + bytes.length);
+            in.put(leftover).put(bytes).flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(in, chars, endOfInput);
+                drain();
+            } while (result.isOverflow());
+            if (endOfInput) {
+                while (decoder.flush(chars).isOverflow()) {
+                    drain();
+                }
+                drain();
+            }
+            leftover = new byte[in.remaining()];
+            in.get(leftover);
+        }
+
+        private void drain() throws IOException {
+            chars.flip();
+            parser.chars(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+            chars.clear();
+        }
+    }
+
+    /**
+     * The bytes appended to a file since the last poll
+     */
+    static final class Tail implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * path of the file on the node
+         */
+        final String path;
+
+        /**
+         * position of the bytes in the file
+         */
+        final long offset;
+
+        final byte[] bytes;
+
+        /**
+         * name of the charset of the file, resolved on the node
+         */
+        final String charset;
+
+        Tail(String path, long offset, byte[] bytes, String charset) {
+            this.path = path;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.charset = charset;
+        }
+    }
+
+    /**
+     * Reads the tails of the files on the node of the workspace
+     */
+    static final class TailCallable implements FileCallable<ArrayList<Tail>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String testResultLocations;
+        private final String charset;
+        private final HashMap<String, Long> offsets;
+
+        /**
+         * @param offsets the number of bytes already read, by path of the file
+         */
+        TailCallable(String testResultLocations, String charset, HashMap<String, Long> offsets) {
+            this.testResultLocations = testResultLocations;
+            this.charset = charset;
+            this.offsets = offsets;
+        }
+
+        public ArrayList<Tail> invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+            String charsetName = DbmsOutputReader.toCharset(charset).name();
+            ArrayList<Tail> tails = new ArrayList<Tail>();
+            for (FilePath path : new FilePath(dir).list(testResultLocations)) {
+                File file = new File(path.getRemote());
+                Long known = offsets.get(file.getPath());
+                long offset = known == null ? 0 : known;
+                long length = file.length();
+                if (length < offset) {
+                    // written anew
+                    offset = 0;
+                }
+                int count = (int) Math.min(length - offset, MAX_BYTES_PER_POLL);
+                if (count == 0 && known != null) {
+                    continue;
+                }
+                byte[] bytes = new byte[count];
+                RandomAccessFile in = new RandomAccessFile(file, "r");
+                try {
+                    in.seek(offset);
+                    in.readFully(bytes);
+                } finally {
+                    in.close();
+                }
+                tails.add(new Tail(file.getPath(), offset, bytes, charsetName));
+            }
+            return tails;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the lines of a multiline message as chunks and joins them only once,
+ * when the message is complete. Appending a line does not copy the lines before.
+ */
+final class MessageBuffer {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final List<String> lines = new ArrayList<String>();
+
+    /**
+     * length of the joined message
+     */
+    private long length;
+
+    /**
+     * @param firstLine the first line of the message
+     */
+    MessageBuffer(String firstLine) {
+        lines.add(firstLine);
+        length = firstLine.length();
+    }
+
+    void append(String line) {
+        lines.add(line);
+        length += LINE_SEPARATOR.length() + line.length();
+    }
+
+    /**
+     * @return the length of the joined message
+     */
+    long length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE));
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                sb.append(LINE_SEPARATOR);
+            }
+            sb.append(lines.get(i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.FilePath;
+import hudson.util.IOException2;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the full text of messages, which are too long to be kept in the build
+ * record, to a side file of the build. The file is only created, if a message
+ * is spilled at all. Since the target is a {@link FilePath}, the file is written
+ * to the master, even if the dbms_output is parsed on a slave.
+ * <p>
+ * Instances may be shared by several parser threads.
+ */
+final class MessageSpill implements Closeable {
+
+    /**
+     * name of the side file in the build directory
+     */
+    static final String FILE_NAME = "utplsql-messages.txt";
+
+    private final FilePath target;
+    private Writer writer;
+    private int count;
+
+    /**
+     * @param target the file to write to
+     */
+    MessageSpill(FilePath target) {
+        this.target = target;
+    }
+
+    /**
+     * Appends the full message of a testcase to the side file.
+     * @param testcase the testcase, whose message is spilled
+     * @param message the full message
+     * @return the number of the message in the side file
+     */
+    synchronized int spill(Testcase testcase, String message) throws IOException {
+        if (writer == null) {
+            try {
+                writer = new BufferedWriter(new OutputStreamWriter(target.write(), "UTF-8"));
+            } catch (InterruptedException e) {
+                // the caller can only throw an IOException, the interrupt must not get lost
+                Thread.currentThread().interrupt();
+                throw new IOException2("Interrupted while opening " + target.getRemote(), e);
+            }
+        }
+        count++;
+        writer.write("===== #" + count + " " + testcase.getClassName() + "." + testcase.getName() + "\n");
+        writer.write(message);
+        writer.write("\n");
+        return count;
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
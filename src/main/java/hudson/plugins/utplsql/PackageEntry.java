@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+/**
+ * An entry in the package directory of a {@link StoredResult}: the counts of a
+ * package and where its testcases are stored. The testcases are not loaded.
+ */
+public final class PackageEntry {
+
+    private final int index;
+    private final String schema;
+    private final String name;
+    private final int totalCount;
+    private final int failures;
+    private final long elapsedMicros;
+    private final long offset;
+    private final int length;
+
+    PackageEntry(int index, String schema, String name, int totalCount, int failures, long elapsedMicros,
+                 long offset, int length) {
+        this.index = index;
+        this.schema = schema;
+        this.name = name;
+        this.totalCount = totalCount;
+        this.failures = failures;
+        this.elapsedMicros = elapsedMicros;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the position of the package in the result
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the schema of the package, null if the log names none
+     */
+    public String getSchema() {
+        return schema;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return <code>SCHEMA.NAME</code>, see {@link TestPackage#getQualifiedName()}
+     */
+    public String getQualifiedName() {
+        return schema == null ? name : schema + "." + name;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the sum of the elapsed times of all testcases in seconds
+     */
+    public double getDuration() {
+        return elapsedMicros / 1e6;
+    }
+
+    public long getElapsedMicros() {
+        return elapsedMicros;
+    }
+
+    /**
+     * @return the position of the block of the package in the file
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the length of the block of the package in bytes
+     */
+    int getLength() {
+        return length;
+    }
+}
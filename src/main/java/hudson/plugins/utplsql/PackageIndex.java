@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Merges the packages of any number of dbms_output files into one result, so a
+ * package, which was run in several shards, is a single package with the asserts
+ * of all files. Packages are the same if schema and name are equal; if the schema
+ * is not printed, only the name counts.
+ * <p>
+ * The files may be added concurrently and in any order. The packages of the result
+ * are in the order they first appear, and the asserts of a package are in the order
+ * of the files and of the packages within a file, as if the files had been
+ * concatenated.
+ */
+final class PackageIndex {
+
+    /**
+     * the packages of all files by schema and name
+     */
+    private final ConcurrentMap<String, Queue<Part>> packages = new ConcurrentHashMap<String, Queue<Part>>();
+
+    /**
+     * Adds the packages of a file, may be called by several threads at once
+     * @param fileIndex the position of the file among all files
+     * @param testPackages the packages in the order they appear in the file
+     */
+    void add(int fileIndex, List<TestPackage> testPackages) {
+        for (int i = 0; i < testPackages.size(); i++) {
+            TestPackage testPackage = testPackages.get(i);
+            String key = testPackage.getQualifiedName();
+            Queue<Part> parts = packages.get(key);
+            if (parts == null) {
+                Queue<Part> created = new ConcurrentLinkedQueue<Part>();
+                parts = packages.putIfAbsent(key, created);
+                if (parts == null) {
+                    parts = created;
+                }
+            }
+            parts.add(new Part((long) fileIndex << 32 | i, testPackage));
+        }
+    }
+
+    /**
+     * @return the merged packages, once all files are added
+     */
+    UtplsqlResult toResult() {
+        List<List<Part>> sorted = new ArrayList<List<Part>>(packages.size());
+        for (Queue<Part> parts : packages.values()) {
+            List<Part> list = new ArrayList<Part>(parts);
+            Collections.sort(list, BY_POSITION);
+            sorted.add(list);
+        }
+        // by the first appearance of each package
+        Collections.sort(sorted, new Comparator<List<Part>>() {
+            public int compare(List<Part> a, List<Part> b) {
+                return BY_POSITION.compare(a.get(0), b.get(0));
+            }
+        });
+
+        UtplsqlResult result = new UtplsqlResult();
+        for (List<Part> parts : sorted) {
+            TestPackage first = parts.get(0).testPackage;
+            if (parts.size() == 1) {
+                result.add(first);
+                continue;
+            }
+            TestPackage merged = new TestPackage(first.getSuite(), first.getSchema(), first.getName());
+            for (Part part : parts) {
+                merged.addAll(part.testPackage);
+            }
+            result.add(merged);
+        }
+        return result;
+    }
+
+    private static final Comparator<Part> BY_POSITION = new Comparator<Part>() {
+        public int compare(Part a, Part b) {
+            return a.position < b.position ? -1 : (a.position == b.position ? 0 : 1);
+        }
+    };
+
+    /**
+     * A package of one file
+     */
+    private static final class Part {
+        /**
+         * the index of the file in the upper, the position within the file in the lower 32 bits
+         */
+        final long position;
+        final TestPackage testPackage;
+
+        Part(long position, TestPackage testPackage) {
+            this.position = position;
+            this.testPackage = testPackage;
+        }
+    }
+}
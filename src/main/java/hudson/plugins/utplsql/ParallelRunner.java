@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs utPLSQL packages concurrently over a pool of database sessions. utPLSQL
+ * itself runs one package after the other, so each session runs whole packages
+ * taken from a shared queue. The queue is ordered by the duration expected from
+ * previous builds, longest first, which keeps the last sessions from waiting for
+ * one long package started late. Packages without a previous duration are started
+ * first, in the configured order.
+ * <p>
+ * The output of each package is buffered and handed on in the configured order,
+ * as soon as all packages before it are finished, so the merged output reads as if
+ * the packages had run in a single session.
+ */
+final class ParallelRunner {
+
+    /**
+     * Finds the test packages matching a LIKE pattern, e.g. UT_%
+     */
+    static final String DISCOVER = "select object_name from user_objects"
+            + " where object_type = 'PACKAGE' and object_name like ? order by object_name";
+
+    private final UtplsqlRunner runner;
+    private final UtplsqlRunner.ConnectionFactory connections;
+    private final int sessions;
+
+    /**
+     * @param connections opens the sessions
+     * @param batchSize number of lines fetched at once
+     * @param sessions maximum number of sessions running packages at the same time
+     */
+    ParallelRunner(UtplsqlRunner.ConnectionFactory connections, int batchSize, int sessions) {
+        this.runner = new UtplsqlRunner(connections, batchSize);
+        this.connections = connections;
+        this.sessions = Math.max(1, sessions);
+    }
+
+    /**
+     * Replaces the names containing % by the packages they match. _ is not taken as
+     * a wildcard, since it is part of most package names. Names without wildcards
+     * are kept as they are; duplicates are dropped.
+     */
+    List<String> discover(List<String> names) throws SQLException {
+        boolean patterns = false;
+        for (String name : names) {
+            patterns |= isPattern(name);
+        }
+        if (!patterns) {
+            return names;
+        }
+        Set<String> packages = new LinkedHashSet<String>();
+        Connection connection = connections.connect();
+        try {
+            PreparedStatement query = connection.prepareStatement(DISCOVER);
+            try {
+                for (String name : names) {
+                    if (!isPattern(name)) {
+                        packages.add(name);
+                        continue;
+                    }
+                    query.setString(1, name.toUpperCase(Locale.ENGLISH));
+                    ResultSet rows = query.executeQuery();
+                    try {
+                        while (rows.next()) {
+                            packages.add(rows.getString(1));
+                        }
+                    } finally {
+                        rows.close();
+                    }
+                }
+            } finally {
+                query.close();
+            }
+        } finally {
+            connection.close();
+        }
+        return new ArrayList<String>(packages);
+    }
+
+    private static boolean isPattern(String name) {
+        return name.indexOf('%') >= 0;
+    }
+
+    /**
+     * @param names the packages or suites in the configured order
+     * @param expectedMicros the duration of each package in a previous build, see {@link #expected}
+     * @return the indexes of the names in the order they are started
+     */
+    static List<Integer> schedule(final List<String> names, final Map<String, Long> expectedMicros) {
+        List<Integer> order = new ArrayList<Integer>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            order.add(i);
+        }
+        // stable, so unknown packages and packages of the same duration keep their order
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long x = expected(names.get(a), expectedMicros);
+                long y = expected(names.get(b), expectedMicros);
+                return x > y ? -1 : x < y ? 1 : 0;
+            }
+        });
+        return order;
+    }
+
+    /**
+     * @param name the package, with or without its schema
+     * @param expectedMicros the duration by upper case <code>SCHEMA.NAME</code> and by name alone
+     * @return the expected duration, {@link Long#MAX_VALUE} if unknown
+     */
+    static long expected(String name, Map<String, Long> expectedMicros) {
+        Long micros = expectedMicros.get(name.toUpperCase(Locale.ENGLISH));
+        return micros == null ? Long.MAX_VALUE : micros;
+    }
+
+    /**
+     * Runs the tests, each package or suite in one of the sessions
+     * @param mode how the tests are started
+     * @param names the packages or suites
+     * @param expectedMicros the duration of each package in a previous build, see {@link #expected}
+     * @param handler receives the merged dbms_output
+     * @return the number of lines of dbms_output
+     */
+    long run(UtplsqlRunner.Mode mode, List<String> names, Map<String, Long> expectedMicros,
+             DbmsOutputReader.LineHandler handler) throws SQLException, IOException, InterruptedException {
+        if (sessions == 1 || names.size() < 2) {
+            return runner.run(mode, names, handler);
+        }
+        Merger merger = new Merger(names.size(), handler);
+        List<Integer> order = schedule(names, expectedMicros);
+        AtomicInteger next = new AtomicInteger();
+        int count = Math.min(sessions, names.size());
+        List<Session> workers = new ArrayList<Session>(count);
+        for (int i = 0; i < count; i++) {
+            Session session = new Session(mode, names, order, next, merger);
+            session.setName("utPLSQL session " + (i + 1));
+            workers.add(session);
+            session.start();
+        }
+        try {
+            for (Session session : workers) {
+                session.join();
+            }
+        } catch (InterruptedException e) {
+            merger.abort(e);
+            for (Session session : workers) {
+                session.interrupt();
+            }
+            throw e;
+        }
+        merger.rethrow();
+        if (!merger.isComplete()) {
+            throw new IOException("utPLSQL sessions ended before all packages were run");
+        }
+        return merger.getLines();
+    }
+
+    /**
+     * Takes packages from the queue until it is empty, all in one session
+     */
+    private final class Session extends Thread {
+        private final UtplsqlRunner.Mode mode;
+        private final List<String> names;
+        private final List<Integer> order;
+        private final AtomicInteger next;
+        private final Merger merger;
+
+        Session(UtplsqlRunner.Mode mode, List<String> names, List<Integer> order, AtomicInteger next,
+                Merger merger) {
+            this.mode = mode;
+            this.names = names;
+            this.order = order;
+            this.next = next;
+            this.merger = merger;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Connection connection = connections.connect();
+                try {
+                    UtplsqlRunner.enable(connection);
+                    int position;
+                    while (!merger.isAborted() && (position = next.getAndIncrement()) < order.size()) {
+                        int index = order.get(position);
+                        Output output = new Output();
+                        runner.run(connection, mode, names.get(index), output);
+                        merger.finished(index, output);
+                    }
+                } finally {
+                    connection.close();
+                }
+            } catch (Throwable e) {
+                // also errors, otherwise the run would end without the output of this package
+                merger.abort(e);
+            }
+        }
+    }
+
+    /**
+     * The dbms_output of one package, each line terminated by a line feed
+     */
+    static final class Output implements DbmsOutputReader.LineHandler {
+        private final StringBuilder text = new StringBuilder();
+        private int lines;
+
+        public void line(char[] chars, int offset, int length) {
+            text.append(chars, offset, length).append('\n');
+            lines++;
+        }
+
+        void replay(DbmsOutputReader.LineHandler handler) throws IOException {
+            char[] chars = new char[text.length()];
+            text.getChars(0, chars.length, chars, 0);
+            int start = 0;
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == '\n') {
+                    handler.line(chars, start, i - start);
+                    start = i + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the outputs on in the configured order. Only the outputs waiting for an
+     * earlier package are kept.
+     */
+    private static final class Merger {
+        private final Output[] outputs;
+        private final DbmsOutputReader.LineHandler handler;
+        private int next;
+        private long lines;
+        private Throwable failure;
+
+        Merger(int count, DbmsOutputReader.LineHandler handler) {
+            this.outputs = new Output[count];
+            this.handler = handler;
+        }
+
+        synchronized void finished(int index, Output output) throws IOException {
+            outputs[index] = output;
+            while (next < outputs.length && outputs[next] != null) {
+                outputs[next].replay(handler);
+                lines += outputs[next].lines;
+                outputs[next++] = null;
+            }
+        }
+
+        synchronized void abort(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        synchronized boolean isAborted() {
+            return failure != null;
+        }
+
+        /**
+         * @return true if the outputs of all packages were handed on
+         */
+        synchronized boolean isComplete() {
+            return next == outputs.length;
+        }
+
+        synchronized long getLines() {
+            return lines;
+        }
+
+        synchronized void rethrow() throws SQLException, IOException, InterruptedException {
+            if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof InterruptedException) {
+                throw (InterruptedException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new IOException("utPLSQL session failed: " + failure, failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packages parsed from dbms_output files, kept on the node of the workspace, so
+ * files published again unchanged, e.g. by rebuilds or promotions, are not parsed
+ * again. The key is the SHA-1 of the content of the file together with the
+ * {@link #PARSER_VERSION}, the version of the encoding and the settings of the
+ * parser. The packages are stored in the encoding of {@link ResultCodec}, one
+ * file per key.
+ * <p>
+ * When the files exceed the maximum size, the least recently used ones are
+ * deleted. A hit counts as use. Broken entries are deleted and parsed again.
+ * <p>
+ * The cache is only used, if the {@link UtplsqlRecorder} is configured with a size.
+ */
+final class ParseCache {
+
+    /**
+     * increment whenever the parser produces a different result for the same input
+     */
+    static final int PARSER_VERSION = 1;
+
+    static final String DIRECTORY_NAME = "utplsql-parse-cache";
+
+    private static final String SUFFIX = ".bin";
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory the directory of the cache, created on first use
+     * @param maxBytes maximum size of all entries
+     */
+    ParseCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param file the dbms_output file
+     * @param settings the settings of the parser, which change the result
+     * @return the key of the content of the file
+     */
+    String key(File file, String settings) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((PARSER_VERSION + "/" + ResultCodec.VERSION + "/" + settings + "/").getBytes("UTF-8"));
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        StringBuilder key = new StringBuilder(40);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the packages of the key, null if they are not in the cache
+     */
+    List<TestPackage> get(String key) {
+        File entry = new File(directory, key + SUFFIX);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[(int) entry.length()];
+            InputStream in = new FileInputStream(entry);
+            try {
+                int offset = 0;
+                while (offset < bytes.length) {
+                    int read = in.read(bytes, offset, bytes.length - offset);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of " + entry);
+                    }
+                    offset += read;
+                }
+            } finally {
+                in.close();
+            }
+            List<TestPackage> packages = ResultCodec.decode(bytes).getPackages();
+            entry.setLastModified(System.currentTimeMillis());
+            return packages;
+        } catch (IOException e) {
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Adds the packages of a file and evicts old entries, if the cache is full.
+     */
+    void put(String key, List<TestPackage> packages) throws IOException {
+        UtplsqlResult result = new UtplsqlResult();
+        for (TestPackage testPackage : packages) {
+            result.add(testPackage);
+        }
+        byte[] bytes = ResultCodec.encode(result, true);
+        if (bytes.length > maxBytes) {
+            return;
+        }
+
+        directory.mkdirs();
+        File entry = new File(directory, key + SUFFIX);
+        // unique per thread, concurrent builds may put the same key
+        File temp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(entry)) {
+            temp.delete();
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the entries fit into the maximum size
+     */
+    private synchronized void evict() {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+        long size = 0;
+        for (File entry : entries) {
+            size += entry.length();
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+        Arrays.sort(entries, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < entries.length && size > maxBytes; i++) {
+            long length = entries[i].length();
+            if (entries[i].getName().endsWith(SUFFIX) && entries[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+}
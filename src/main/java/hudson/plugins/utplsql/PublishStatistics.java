@@ -0,0 +1,238 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Where the time of publishing the results of a build went, and how much input
+ * there was. The phases on the node of the workspace are measured there and sent
+ * to the master with the {@link EncodedResult}, the master adds its own phases.
+ */
+@ExportedBean
+public final class PublishStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The phases of publishing in the order they happen
+     */
+    public enum Phase {
+        /** finding the files matching the pattern */
+        LIST,
+        /** reading and parsing the files */
+        PARSE,
+        /** writing the optional jUnit xml files */
+        JUNIT,
+        /** encoding the result for the transfer to the master */
+        ENCODE,
+        /** transfer between node and master, including the remoting overhead */
+        TRANSFER,
+        /** decoding the result on the master */
+        DECODE,
+        /** creating and attaching the actions of the build */
+        ACTION
+    }
+
+    private final long[] nanos = new long[Phase.values().length];
+    private int files;
+    private int cachedFiles;
+    private long bytesRead;
+    private long lines;
+    private int asserts;
+    private int packages;
+    private int largestPackage;
+    private int longestLine;
+
+    /**
+     * Adds the time of a phase
+     * @param phase the phase
+     * @param startNanos the start of the phase as of {@link System#nanoTime()}
+     */
+    synchronized void finished(Phase phase, long startNanos) {
+        add(phase, System.nanoTime() - startNanos);
+    }
+
+    synchronized void add(Phase phase, long elapsedNanos) {
+        nanos[phase.ordinal()] += elapsedNanos;
+    }
+
+    /**
+     * Adds the input of a file, which was just read
+     * @param reader the reader, which read the file
+     * @param testPackages the packages found in the file
+     */
+    synchronized void addFile(DbmsOutputReader reader, List<TestPackage> testPackages) {
+        files++;
+        bytesRead += reader.getBytesRead();
+        lines += reader.getLineCount();
+        longestLine = Math.max(longestLine, reader.getLongestLine());
+        addPackages(testPackages);
+    }
+
+    private void addPackages(List<TestPackage> testPackages) {
+        for (TestPackage testPackage : testPackages) {
+            packages++;
+            asserts += testPackage.getTotalCount();
+            largestPackage = Math.max(largestPackage, testPackage.getTotalCount());
+        }
+    }
+
+    /**
+     * Adds a file, whose packages were taken from the {@link ParseCache}
+     * @param length the length of the file in bytes
+     * @param testPackages the packages of the file
+     */
+    synchronized void addCachedFile(long length, List<TestPackage> testPackages) {
+        cachedFiles++;
+        files++;
+        bytesRead += length;
+        addPackages(testPackages);
+    }
+
+    public synchronized long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return the milliseconds per phase, in the order of the phases
+     */
+    @Exported
+    public synchronized Map<String, Double> getPhaseMillis() {
+        Map<String, Double> millis = new LinkedHashMap<String, Double>();
+        for (Phase phase : Phase.values()) {
+            millis.put(phase.name().toLowerCase(Locale.ENGLISH), toMillis(nanos[phase.ordinal()]));
+        }
+        return millis;
+    }
+
+    /**
+     * @return the sum of all phases in milliseconds
+     */
+    @Exported
+    public synchronized double getTotalMillis() {
+        long total = 0;
+        for (long phase : nanos) {
+            total += phase;
+        }
+        return toMillis(total);
+    }
+
+    @Exported
+    public synchronized int getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the number of files taken from the {@link ParseCache}, they are
+     * part of {@link #getFiles()}
+     */
+    @Exported
+    public synchronized int getCachedFiles() {
+        return cachedFiles;
+    }
+
+    @Exported
+    public synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Exported
+    public synchronized long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return lines per second of the parse phase, 0 if nothing was parsed
+     */
+    @Exported
+    public synchronized long getLinesPerSecond() {
+        long parse = nanos[Phase.PARSE.ordinal()];
+        return parse <= 0 ? 0 : (long) (lines * 1e9 / parse);
+    }
+
+    @Exported
+    public synchronized int getAsserts() {
+        return asserts;
+    }
+
+    @Exported
+    public synchronized int getPackages() {
+        return packages;
+    }
+
+    /**
+     * @return the most testcases held in a single package
+     */
+    @Exported
+    public synchronized int getLargestPackage() {
+        return largestPackage;
+    }
+
+    /**
+     * @return the length of the longest line in chars
+     */
+    @Exported
+    public synchronized int getLongestLine() {
+        return longestLine;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    /**
+     * @return the summary for the build log
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder summary = new StringBuilder("utPLSQL results published in ");
+        summary.append(format(getTotalMillis())).append(" ms (");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                summary.append(", ");
+            }
+            summary.append(phase.name().toLowerCase(Locale.ENGLISH)).append(' ')
+                    .append(format(toMillis(nanos[phase.ordinal()]))).append(" ms");
+        }
+        summary.append("): ").append(files).append(" files (").append(cachedFiles).append(" cached), ")
+                .append(bytesRead).append(" bytes, ")
+                .append(lines).append(" lines (").append(getLinesPerSecond()).append(" lines/s), ")
+                .append(asserts).append(" asserts in ").append(packages).append(" packages, ")
+                .append("largest package ").append(largestPackage).append(" asserts, ")
+                .append("longest line ").append(longestLine).append(" chars");
+        return summary.toString();
+    }
+
+    private static String format(double millis) {
+        return String.format(Locale.ENGLISH, "%.1f", millis);
+    }
+}
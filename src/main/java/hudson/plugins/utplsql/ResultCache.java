@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Packages loaded from {@link ResultStore result files}, shared by all builds on
+ * the master. The cache holds at most {@link #getMaxCases()} testcases, the least
+ * recently used packages are evicted first. The packages are only softly
+ * referenced, so the garbage collector may clear them before.
+ * <p>
+ * The limit is set with the system property
+ * <code>hudson.plugins.utplsql.ResultCache.maxCases</code>.
+ */
+final class ResultCache {
+
+    static final ResultCache INSTANCE = new ResultCache(
+            Integer.getInteger(ResultCache.class.getName() + ".maxCases", 200000));
+
+    private final int maxCases;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * sum of the testcases of all cached packages
+     */
+    private int cachedCases;
+
+    ResultCache(int maxCases) {
+        this.maxCases = maxCases;
+    }
+
+    int getMaxCases() {
+        return maxCases;
+    }
+
+    synchronized int getCachedCases() {
+        return cachedCases;
+    }
+
+    /**
+     * Returns the package from the cache or loads it from the file
+     * @param file the result file
+     * @param entry the entry of the package in the directory of the file
+     * @return the package with all its testcases
+     */
+    TestPackage get(File file, PackageEntry entry) throws IOException {
+        // a file replaced by a new build with the same path has a new modification time
+        String key = file.getPath() + '#' + file.lastModified() + '#' + entry.getIndex();
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                TestPackage testPackage = cached.reference.get();
+                if (testPackage != null) {
+                    return testPackage;
+                }
+                remove(key);
+            }
+        }
+
+        // loaded without holding the lock, so other pages are not blocked
+        TestPackage testPackage = ResultStore.readPackage(file, entry);
+        synchronized (this) {
+            if (!entries.containsKey(key)) {
+                entries.put(key, new Entry(testPackage));
+                cachedCases += testPackage.getTotalCount();
+                evict();
+            }
+        }
+        return testPackage;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            cachedCases -= removed.cases;
+        }
+    }
+
+    /**
+     * Drops the packages cleared by the garbage collector, then the least
+     * recently used ones until the limit is kept. The package just loaded is
+     * kept even if it is larger than the limit.
+     */
+    private void evict() {
+        for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); i.hasNext();) {
+            Entry entry = i.next().getValue();
+            if (entry.reference.get() == null) {
+                cachedCases -= entry.cases;
+                i.remove();
+            }
+        }
+        for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+                cachedCases > maxCases && entries.size() > 1;) {
+            cachedCases -= i.next().getValue().cases;
+            i.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final SoftReference<TestPackage> reference;
+        private final int cases;
+
+        Entry(TestPackage testPackage) {
+            this.reference = new SoftReference<TestPackage>(testPackage);
+            this.cases = testPackage.getTotalCount();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary encoding of an {@link UtplsqlResult}, which is much smaller and
+ * faster to read than java serialization of the whole object graph.
+ * <p>
+ * Layout: the magic bytes "UTPL", a version byte, a flags byte and the total,
+ * failure and package counts as varints. The rest, which may be deflated, is a
+ * table of all package, class and procedure names followed by the packages with
+ * their testcases. All numbers are unsigned varints.
+ * <p>
+ * The name of a testcase is the procedure with the {@link TestPackage#getCounter()
+ * counter} of its package in front. The table only holds the procedure, which is
+ * the same for all asserts of a procedure, and the name is numbered again when it
+ * is decoded. Names without the expected counter, e.g. of parsing errors, are kept
+ * in the table as they are.
+ */
+final class ResultCodec {
+
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = { 'U', 'T', 'P', 'L' };
+    private static final int FLAG_DEFLATED = 1;
+
+    /**
+     * results with more testcases than this are deflated
+     */
+    private static final int DEFLATE_THRESHOLD = 1000;
+
+    private static final String UTF8 = "UTF-8";
+
+    private ResultCodec() {
+    }
+
+    /**
+     * The counts in the header of an encoded result
+     */
+    static final class Header {
+        final int totalCount;
+        final int failCount;
+        final int packageCount;
+        final boolean deflated;
+
+        Header(int totalCount, int failCount, int packageCount, boolean deflated) {
+            this.totalCount = totalCount;
+            this.failCount = failCount;
+            this.packageCount = packageCount;
+            this.deflated = deflated;
+        }
+    }
+
+    static byte[] encode(UtplsqlResult result) throws IOException {
+        return encode(result, result.getTotalCount() > DEFLATE_THRESHOLD);
+    }
+
+    static byte[] encode(UtplsqlResult result, boolean deflate) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(MAGIC);
+        bytes.write(VERSION);
+        bytes.write(deflate ? FLAG_DEFLATED : 0);
+        writeVarint(bytes, result.getTotalCount());
+        writeVarint(bytes, result.getFailCount());
+        writeVarint(bytes, result.getPackages().size());
+
+        // the testcases are written field by field, which the deflater should not see one by one
+        OutputStream body = deflate ? new BufferedOutputStream(new DeflaterOutputStream(bytes), 64 * 1024) : bytes;
+        StringTable names = new StringTable();
+        for (TestPackage testPackage : result.getPackages()) {
+            names.add(testPackage.getName());
+            if (testPackage.getSuite() != null) {
+                names.add(testPackage.getSuite());
+            }
+            if (testPackage.getSchema() != null) {
+                names.add(testPackage.getSchema());
+            }
+            long counter = 1;
+            for (Testcase testcase : testPackage.getTestCases()) {
+                names.add(testcase.getClassName());
+                if (isCounted(testcase, counter)) {
+                    names.add(testcase.getProcedure());
+                    counter++;
+                } else {
+                    names.add(testcase.getName());
+                }
+            }
+        }
+        writeVarint(body, names.strings.size());
+        for (String name : names.strings) {
+            writeString(body, name);
+        }
+
+        for (TestPackage testPackage : result.getPackages()) {
+            writeVarint(body, names.indexOf(testPackage.getName()));
+            // 0 for none, otherwise the index + 1
+            writeVarint(body, testPackage.getSuite() == null ? 0 : names.indexOf(testPackage.getSuite()) + 1);
+            writeVarint(body, testPackage.getSchema() == null ? 0 : names.indexOf(testPackage.getSchema()) + 1);
+            writeVarint(body, testPackage.getTotalCount());
+            long counter = 1;
+            for (Testcase testcase : testPackage.getTestCases()) {
+                body.write(testcase.getResult().ordinal());
+                writeVarint(body, names.indexOf(testcase.getClassName()));
+                // the lowest bit tells a procedure to be numbered from a name kept as it is
+                if (isCounted(testcase, counter)) {
+                    writeVarint(body, (long) names.indexOf(testcase.getProcedure()) << 1);
+                    counter++;
+                } else {
+                    writeVarint(body, (long) names.indexOf(testcase.getName()) << 1 | 1);
+                }
+                writeVarint(body, testcase.getElapsedMicros());
+                String message = testcase.getMessage();
+                if (message == null) {
+                    writeVarint(body, 0);
+                } else {
+                    byte[] utf8 = message.getBytes(UTF8);
+                    writeVarint(body, utf8.length + 1);
+                    body.write(utf8);
+                }
+            }
+        }
+        body.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param counter the next counter of the package, as the decoder numbers the names
+     * @return true if the name is the procedure with the counter in front
+     */
+    private static boolean isCounted(Testcase testcase, long counter) {
+        String name = testcase.getName();
+        String prefix = Long.toString(counter);
+        return name != null && name.startsWith(prefix)
+                && name.length() - prefix.length() == testcase.getProcedure().length();
+    }
+
+    static Header readHeader(byte[] encoded) throws IOException {
+        return readHeader(new ByteArrayInputStream(encoded));
+    }
+
+    private static Header readHeader(InputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        new DataInputStream(in).readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not an encoded utPLSQL result");
+            }
+        }
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of encoded utPLSQL result");
+        }
+        int flags = in.read();
+        int totalCount = (int) readVarint(in);
+        int failCount = (int) readVarint(in);
+        int packageCount = (int) readVarint(in);
+        return new Header(totalCount, failCount, packageCount, (flags & FLAG_DEFLATED) != 0);
+    }
+
+    static UtplsqlResult decode(byte[] encoded) throws IOException {
+        InputStream in = new ByteArrayInputStream(encoded);
+        Header header = readHeader(in);
+        if (header.deflated) {
+            in = new InflaterInputStream(in);
+        }
+        DataInputStream data = new DataInputStream(in);
+
+        String[] names = new String[(int) readVarint(data)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = readString(data);
+        }
+
+        UtplsqlResult result = new UtplsqlResult();
+        for (int p = 0; p < header.packageCount; p++) {
+            String packageName = names[(int) readVarint(data)];
+            int suiteIndex = (int) readVarint(data);
+            int schemaIndex = (int) readVarint(data);
+            String suite = suiteIndex == 0 ? null : names[suiteIndex - 1];
+            String schema = schemaIndex == 0 ? null : names[schemaIndex - 1];
+            TestPackage testPackage = new TestPackage(suite, schema, packageName);
+            int caseCount = (int) readVarint(data);
+            for (int c = 0; c < caseCount; c++) {
+                Testcase.Status status = Testcase.Status.values()[data.readUnsignedByte()];
+                String className = names[(int) readVarint(data)];
+                long nameIndex = readVarint(data);
+                String name = (nameIndex & 1) == 0
+                        ? testPackage.getCounter() + names[(int) (nameIndex >>> 1)]
+                        : names[(int) (nameIndex >>> 1)];
+                long elapsedMicros = readVarint(data);
+                int messageLength = (int) readVarint(data);
+                String message = null;
+                if (messageLength > 0) {
+                    byte[] utf8 = new byte[messageLength - 1];
+                    data.readFully(utf8);
+                    message = new String(utf8, UTF8);
+                }
+                testPackage.add(new Testcase(status, className, name, elapsedMicros, message));
+            }
+            result.add(testPackage);
+        }
+        return result;
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(UTF8);
+        writeVarint(out, utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[(int) readVarint(in)];
+        in.readFully(utf8);
+        return new String(utf8, UTF8);
+    }
+
+    /**
+     * Assigns each distinct name an index in the order of appearance
+     */
+    private static final class StringTable {
+        private final List<String> strings = new ArrayList<String>();
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        void add(String value) {
+            if (!indexes.containsKey(value)) {
+                indexes.put(value, strings.size());
+                strings.add(value);
+            }
+        }
+
+        int indexOf(String value) {
+            return indexes.get(value);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * What changed between a reference build and a build: new failures, fixed asserts,
+ * asserts which got much slower and the number of added and removed asserts. The
+ * asserts of the build are joined on their {@link Testcase#getId() identity} with the
+ * status and time of the reference build in the {@link HistoryIndex}, so the results
+ * of the reference build are not loaded. All changes are counted, only the first
+ * {@value #LISTED} of each kind are kept, the slowest by their increase.
+ */
+@ExportedBean
+public final class ResultDiff implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * name of the file in the build directory
+     */
+    static final String FILE_NAME = "utplsql-diff.ser";
+
+    /**
+     * number of changes of each kind kept
+     */
+    static final int LISTED = 100;
+
+    /**
+     * number of changes of each kind listed in the build log
+     */
+    static final int LOGGED = 10;
+
+    /**
+     * an assert got slower, if its time more than doubled ...
+     */
+    static final double SLOWER_PERCENT = 100;
+
+    /**
+     * ... and grew by more than 10 ms, unless the {@link TimingGate} has other thresholds
+     */
+    static final double SLOWER_MILLIS = 10;
+
+    /**
+     * messages of new failures are cut to this length
+     */
+    static final int MESSAGE_LENGTH = 500;
+
+    private final int referenceBuild;
+    private final int newFailureCount;
+    private final int fixedCount;
+    private final int slowerCount;
+    private final int addedCount;
+    private final int removedCount;
+    private final List<Change> newFailures;
+    private final List<Change> fixed;
+    private final List<Change> slower;
+
+    private ResultDiff(int referenceBuild, int newFailureCount, int fixedCount, int slowerCount,
+                       int addedCount, int removedCount, List<Change> newFailures, List<Change> fixed,
+                       List<Change> slower) {
+        this.referenceBuild = referenceBuild;
+        this.newFailureCount = newFailureCount;
+        this.fixedCount = fixedCount;
+        this.slowerCount = slowerCount;
+        this.addedCount = addedCount;
+        this.removedCount = removedCount;
+        this.newFailures = newFailures;
+        this.fixed = fixed;
+        this.slower = slower;
+    }
+
+    /**
+     * @param history the history of the job
+     * @param referenceBuild the number of the reference build
+     * @param referenceCount the number of asserts of the reference build
+     * @param current the result of the build
+     * @param relativeThreshold an assert got slower, if its time grew by more percent, 0 to ignore
+     * @param absoluteThresholdMillis ... and by more milliseconds, 0 to ignore
+     */
+    static ResultDiff of(HistoryIndex history, int referenceBuild, int referenceCount, UtplsqlResult current,
+                         double relativeThreshold, double absoluteThresholdMillis) throws IOException {
+        List<String> ids = new ArrayList<String>(current.getTotalCount());
+        for (TestPackage testPackage : current.getPackages()) {
+            for (Testcase testcase : testPackage.getTestCases()) {
+                ids.add(testcase.getId());
+            }
+        }
+        Map<String, HistoryEntry> reference = history.entries(ids, Collections.singleton(referenceBuild))
+                .get(referenceBuild);
+        return of(referenceBuild, referenceCount,
+                reference == null ? Collections.<String, HistoryEntry>emptyMap() : reference,
+                current, relativeThreshold, absoluteThresholdMillis);
+    }
+
+    /**
+     * @param referenceBuild the number of the reference build
+     * @param referenceCount the number of asserts of the reference build
+     * @param reference the asserts of the reference build, which are also in the build, by identity
+     * @param current the result of the build
+     * @param relativeThreshold an assert got slower, if its time grew by more percent, 0 to ignore
+     * @param absoluteThresholdMillis ... and by more milliseconds, 0 to ignore
+     */
+    static ResultDiff of(int referenceBuild, int referenceCount, Map<String, HistoryEntry> reference,
+                         UtplsqlResult current, double relativeThreshold, double absoluteThresholdMillis) {
+
+        int newFailureCount = 0;
+        int fixedCount = 0;
+        int slowerCount = 0;
+        int addedCount = 0;
+        int keptCount = 0;
+        List<Change> newFailures = new ArrayList<Change>();
+        List<Change> fixed = new ArrayList<Change>();
+        TopList<Change> slower = new TopList<Change>(LISTED, BY_INCREASE);
+        for (TestPackage testPackage : current.getPackages()) {
+            for (Testcase testcase : testPackage.getTestCases()) {
+                HistoryEntry previous = reference.get(testcase.getId());
+                if (previous == null) {
+                    addedCount++;
+                } else {
+                    keptCount++;
+                }
+                if (testcase.isFailed() && (previous == null || previous.getResult() != Testcase.FAILURE)) {
+                    if (++newFailureCount <= LISTED) {
+                        newFailures.add(new Change(previous, testcase));
+                    }
+                } else if (!testcase.isFailed() && previous != null && previous.getResult() == Testcase.FAILURE) {
+                    if (++fixedCount <= LISTED) {
+                        fixed.add(new Change(previous, testcase));
+                    }
+                }
+                if (previous != null && TimingGate.isRegression(previous.getElapsedMicros(),
+                        testcase.getElapsedMicros(), relativeThreshold, absoluteThresholdMillis)) {
+                    slowerCount++;
+                    slower.offer(new Change(previous, testcase));
+                }
+            }
+        }
+        return new ResultDiff(referenceBuild, newFailureCount, fixedCount, slowerCount, addedCount,
+                Math.max(0, referenceCount - keptCount), newFailures, fixed, slower.toList());
+    }
+
+    private static final Comparator<Change> BY_INCREASE = new Comparator<Change>() {
+        public int compare(Change a, Change b) {
+            long difference = a.getIncreaseMicros() - b.getIncreaseMicros();
+            return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+        }
+    };
+
+    @Exported
+    public int getReferenceBuild() {
+        return referenceBuild;
+    }
+
+    @Exported
+    public int getNewFailureCount() {
+        return newFailureCount;
+    }
+
+    @Exported
+    public int getFixedCount() {
+        return fixedCount;
+    }
+
+    @Exported
+    public int getSlowerCount() {
+        return slowerCount;
+    }
+
+    /**
+     * @return the number of asserts, which are not in the reference build
+     */
+    @Exported
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    /**
+     * @return the number of asserts of the reference build, which are gone
+     */
+    @Exported
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * @return failed asserts, which passed in the reference build or were not in it, in the order of the result
+     */
+    @Exported
+    public List<Change> getNewFailures() {
+        return Collections.unmodifiableList(newFailures);
+    }
+
+    /**
+     * @return passed asserts, which failed in the reference build, in the order of the result
+     */
+    @Exported
+    public List<Change> getFixed() {
+        return Collections.unmodifiableList(fixed);
+    }
+
+    /**
+     * @return asserts, which got much slower, the greatest increase first
+     */
+    @Exported
+    public List<Change> getSlower() {
+        return Collections.unmodifiableList(slower);
+    }
+
+    public boolean isEmpty() {
+        return newFailureCount == 0 && fixedCount == 0 && slowerCount == 0 && addedCount == 0 && removedCount == 0;
+    }
+
+    /**
+     * @return the counts in a single line
+     */
+    public String getSummary() {
+        return newFailureCount + " new failures, " + fixedCount + " fixed, " + slowerCount + " slower, "
+                + addedCount + " added, " + removedCount + " removed";
+    }
+
+    /**
+     * @return the counts and the first changes of each kind for the build log
+     */
+    String describe() {
+        StringBuilder text = new StringBuilder("utPLSQL changes against build #").append(referenceBuild)
+                .append(": ").append(getSummary());
+        describe(text, "new failure", newFailures, newFailureCount);
+        describe(text, "fixed", fixed, fixedCount);
+        describe(text, "slower", slower, slowerCount);
+        return text.toString();
+    }
+
+    private static void describe(StringBuilder text, String kind, List<Change> changes, int count) {
+        for (Change change : changes.subList(0, Math.min(LOGGED, changes.size()))) {
+            text.append("\n  ").append(kind).append(' ').append(change);
+        }
+        if (count > LOGGED) {
+            text.append("\n  ... and ").append(count - LOGGED).append(" more");
+        }
+    }
+
+    void save(File file) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeObject(this);
+        } finally {
+            out.close();
+        }
+    }
+
+    static ResultDiff load(File file) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return (ResultDiff) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Failed to load " + file + ": " + e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * An assert, which changed
+     */
+    @ExportedBean
+    public static final class Change implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final String packageName;
+        private final String name;
+        /**
+         * -1 if the assert is not in the reference build
+         */
+        private final long referenceMicros;
+        private final long currentMicros;
+        private final String message;
+
+        Change(HistoryEntry reference, Testcase current) {
+            this.id = current.getId();
+            this.packageName = current.getClassName();
+            this.name = current.getStableName();
+            this.referenceMicros = reference == null ? -1 : reference.getElapsedMicros();
+            this.currentMicros = current.getElapsedMicros();
+            String text = current.isFailed() ? current.getMessage() : null;
+            this.message = text != null && text.length() > MESSAGE_LENGTH
+                    ? text.substring(0, MESSAGE_LENGTH) + "..." : text;
+        }
+
+        @Exported
+        public String getId() {
+            return id;
+        }
+
+        @Exported
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * @return the {@link Testcase#getStableName() name}, which is the same in both builds
+         */
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return false if the assert is not in the reference build
+         */
+        @Exported
+        public boolean isInReference() {
+            return referenceMicros >= 0;
+        }
+
+        @Exported
+        public double getReferenceMillis() {
+            return referenceMicros / 1e3;
+        }
+
+        @Exported
+        public double getCurrentMillis() {
+            return currentMicros / 1e3;
+        }
+
+        long getIncreaseMicros() {
+            return currentMicros - referenceMicros;
+        }
+
+        /**
+         * @return the message of a failed assert, null if it passed
+         */
+        @Exported
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return packageName + "." + name + (isInReference()
+                    ? ": " + referenceMicros / 1e3 + " ms -> " + currentMicros / 1e3 + " ms"
+                    : " (new)");
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.model.Api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * A node of the hierarchy of a result: suite, schema, package and procedure below
+ * the root. Each node keeps the counts and the elapsed time of all asserts below it,
+ * which are aggregated while the packages are added, and its children by name. So
+ * a page or an API query of a node only touches the node and its children. The
+ * asserts of a procedure are loaded with their package.
+ * <p>
+ * Packages which did not run in a suite, or whose schema is not printed, are placed
+ * below a node named {@value #NONE}, which is no valid identifier.
+ */
+@ExportedBean
+public final class ResultNode implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * name of the file in the build directory
+     */
+    static final String FILE_NAME = "utplsql-tree.ser";
+
+    /**
+     * name of the suite or schema of packages without one
+     */
+    public static final String NONE = "-";
+
+    /**
+     * The level of a node
+     */
+    public enum Kind { ROOT, SUITE, SCHEMA, PACKAGE, PROCEDURE }
+
+    private final Kind kind;
+    private final String name;
+    private final ResultNode parent;
+    private final Map<String, ResultNode> children = new LinkedHashMap<String, ResultNode>();
+    private int totalCount;
+    private int failCount;
+    private long elapsedMicros;
+
+    /**
+     * the positions of the packages of a package node in the result, the same
+     * package may have been run more than once
+     */
+    private List<Integer> packageIndexes;
+
+    /**
+     * the result, whose packages are loaded for the asserts of a procedure; only set at the root
+     */
+    private transient StoredResult source;
+
+    private ResultNode(Kind kind, String name, ResultNode parent) {
+        this.kind = kind;
+        this.name = name;
+        this.parent = parent;
+    }
+
+    /**
+     * @return an empty hierarchy
+     */
+    static ResultNode root() {
+        return new ResultNode(Kind.ROOT, "", null);
+    }
+
+    /**
+     * Adds a package and its asserts below the root, O(depth) per assert
+     * @param testPackage the package
+     * @param index the position of the package in the result
+     */
+    void add(TestPackage testPackage, int index) {
+        ResultNode suite = child(Kind.SUITE, testPackage.getSuite() == null ? NONE : testPackage.getSuite());
+        ResultNode schema = suite.child(Kind.SCHEMA, testPackage.getSchema() == null ? NONE : testPackage.getSchema());
+        ResultNode packageNode = schema.child(Kind.PACKAGE, testPackage.getName());
+        if (packageNode.packageIndexes == null) {
+            packageNode.packageIndexes = new ArrayList<Integer>(1);
+        }
+        packageNode.packageIndexes.add(index);
+        for (Testcase testcase : testPackage.getTestCases()) {
+            packageNode.child(Kind.PROCEDURE, testcase.getProcedure())
+                    .count(testcase.isFailed() ? 1 : 0, testcase.getElapsedMicros());
+        }
+    }
+
+    private ResultNode child(Kind childKind, String childName) {
+        ResultNode child = children.get(childName);
+        if (child == null) {
+            child = new ResultNode(childKind, childName, this);
+            children.put(childName, child);
+        }
+        return child;
+    }
+
+    /**
+     * counts an assert in this node and all its ancestors
+     */
+    private void count(int failures, long micros) {
+        for (ResultNode node = this; node != null; node = node.parent) {
+            node.totalCount++;
+            node.failCount += failures;
+            node.elapsedMicros += micros;
+        }
+    }
+
+    @Exported
+    public Kind getKind() {
+        return kind;
+    }
+
+    @Exported
+    public String getName() {
+        return name;
+    }
+
+    public ResultNode getParent() {
+        return parent;
+    }
+
+    @Exported
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    @Exported
+    public int getFailCount() {
+        return failCount;
+    }
+
+    public int getPassCount() {
+        return totalCount - failCount;
+    }
+
+    /**
+     * @return the sum of the elapsed times of all asserts below in seconds
+     */
+    @Exported
+    public double getDuration() {
+        return elapsedMicros / 1e6;
+    }
+
+    public long getElapsedMicros() {
+        return elapsedMicros;
+    }
+
+    /**
+     * @return the children in the order they were found, no asserts
+     */
+    @Exported
+    public Collection<ResultNode> getChildren() {
+        return Collections.unmodifiableCollection(children.values());
+    }
+
+    /**
+     * @param childName the name of a child
+     * @return the child, null if there is none
+     */
+    public ResultNode getChild(String childName) {
+        return children.get(childName);
+    }
+
+    /**
+     * @return the nodes from the first below the root to this one
+     */
+    public List<ResultNode> getPath() {
+        List<ResultNode> path = new ArrayList<ResultNode>();
+        for (ResultNode node = this; node.parent != null; node = node.parent) {
+            path.add(0, node);
+        }
+        return path;
+    }
+
+    /**
+     * Loads the asserts of a procedure or package. Only these load their package.
+     * @return the asserts, empty for other nodes or if the result is not available
+     */
+    public List<Testcase> getTestCases() throws IOException {
+        ResultNode packageNode = kind == Kind.PROCEDURE ? parent : this;
+        StoredResult result = getRoot().source;
+        List<Testcase> testcases = new ArrayList<Testcase>();
+        if (packageNode.kind != Kind.PACKAGE || result == null) {
+            return testcases;
+        }
+        for (int index : packageNode.packageIndexes) {
+            TestPackage testPackage = result.getPackage(result.getPackages().get(index));
+            for (Testcase testcase : testPackage.getTestCases()) {
+                if (kind == Kind.PACKAGE || testcase.getProcedure().equals(name)) {
+                    testcases.add(testcase);
+                }
+            }
+        }
+        return testcases;
+    }
+
+    private ResultNode getRoot() {
+        ResultNode node = this;
+        while (node.parent != null) {
+            node = node.parent;
+        }
+        return node;
+    }
+
+    /**
+     * @param result the result, whose packages are loaded for the asserts
+     */
+    void setSource(StoredResult result) {
+        this.source = result;
+    }
+
+    /**
+     * Makes the children reachable by their name below the node.
+     */
+    public ResultNode getDynamic(String childName, StaplerRequest req, StaplerResponse rsp) {
+        return getChild(childName);
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    void save(File file) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeObject(this);
+        } finally {
+            out.close();
+        }
+    }
+
+    static ResultNode load(File file) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return (ResultNode) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Failed to load " + file + ": " + e);
+        } finally {
+            in.close();
+        }
+    }
+}
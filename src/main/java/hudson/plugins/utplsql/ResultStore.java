@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File format of the results of a build, which allows to load single packages.
+ * <p>
+ * Layout: magic, version, total and fail count and the number of packages,
+ * followed by the package directory with schema (empty if unknown), name, counts,
+ * elapsed time, offset in the file and length of each package. After the directory come the blocks of the packages,
+ * each one a single package result in the encoding of {@link ResultCodec}.
+ */
+final class ResultStore {
+
+    static final String FILE_NAME = "utplsql-result.dat";
+
+    private static final int MAGIC = 0x55545053; // "UTPS"
+    private static final int VERSION = 1;
+
+    private ResultStore() {
+    }
+
+    /**
+     * Writes a result. The file is replaced at once, so readers never see a
+     * partially written file.
+     */
+    static void write(File file, UtplsqlResult result) throws IOException {
+        List<TestPackage> packages = result.getPackages();
+        List<byte[]> blocks = new ArrayList<byte[]>(packages.size());
+        for (TestPackage testPackage : packages) {
+            UtplsqlResult single = new UtplsqlResult();
+            single.add(testPackage);
+            blocks.add(ResultCodec.encode(single));
+        }
+
+        // the offsets are fixed size, so the first pass yields the size of the directory
+        byte[] directory = directory(result, blocks, 0);
+        directory = directory(result, blocks, directory.length);
+
+        File temp = new File(file.getPath() + ".tmp");
+        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024);
+        try {
+            out.write(directory);
+            for (byte[] block : blocks) {
+                out.write(block);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename " + temp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads only the package directory of a result
+     */
+    static StoredResult open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a utPLSQL result");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of utPLSQL result " + file);
+            }
+            int totalCount = in.readInt();
+            int failCount = in.readInt();
+            int packageCount = in.readInt();
+            List<PackageEntry> entries = new ArrayList<PackageEntry>(packageCount);
+            for (int i = 0; i < packageCount; i++) {
+                String schema = in.readUTF();
+                String name = in.readUTF();
+                int total = in.readInt();
+                int failures = in.readInt();
+                long elapsedMicros = in.readLong();
+                long offset = in.readLong();
+                int length = in.readInt();
+                entries.add(new PackageEntry(i, schema.length() == 0 ? null : schema, name, total, failures,
+                        elapsedMicros, offset, length));
+            }
+            return new StoredResult(file, totalCount, failCount, entries);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads the testcases of a single package
+     */
+    static TestPackage readPackage(File file, PackageEntry entry) throws IOException {
+        byte[] block = new byte[entry.getLength()];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.seek(entry.getOffset());
+            in.readFully(block);
+        } finally {
+            in.close();
+        }
+        return ResultCodec.decode(block).getPackages().get(0);
+    }
+
+    private static byte[] directory(UtplsqlResult result, List<byte[]> blocks, long offset)
+            throws IOException {
+        List<TestPackage> packages = result.getPackages();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream directory = new DataOutputStream(bytes);
+        directory.writeInt(MAGIC);
+        directory.writeInt(VERSION);
+        directory.writeInt(result.getTotalCount());
+        directory.writeInt(result.getFailCount());
+        directory.writeInt(packages.size());
+        for (int i = 0; i < packages.size(); i++) {
+            TestPackage testPackage = packages.get(i);
+            directory.writeUTF(testPackage.getSchema() == null ? "" : testPackage.getSchema());
+            directory.writeUTF(testPackage.getName());
+            directory.writeInt(testPackage.getTotalCount());
+            directory.writeInt(testPackage.getFailures());
+            directory.writeLong(testPackage.getElapsedMicros());
+            directory.writeLong(offset);
+            directory.writeInt(blocks.get(i).length);
+            offset += blocks.get(i).length;
+        }
+        directory.close();
+        return bytes.toByteArray();
+    }
+}
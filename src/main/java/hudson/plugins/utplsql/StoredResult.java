@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * The result of a build as shown on its pages. Only the package directory is
+ * held in memory, the testcases of a package are loaded on demand through the
+ * {@link ResultCache}.
+ */
+public final class StoredResult {
+
+    private final File file;
+    private final int totalCount;
+    private final int failCount;
+    private final List<PackageEntry> packages;
+    private ResultNode tree;
+
+    StoredResult(File file, int totalCount, int failCount, List<PackageEntry> packages) {
+        this.file = file;
+        this.totalCount = totalCount;
+        this.failCount = failCount;
+        this.packages = Collections.unmodifiableList(packages);
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getFailCount() {
+        return failCount;
+    }
+
+    public int getPassCount() {
+        return totalCount - failCount;
+    }
+
+    /**
+     * @return the sum of the elapsed times of all testcases in seconds
+     */
+    public double getDuration() {
+        long micros = 0;
+        for (PackageEntry entry : packages) {
+            micros += entry.getElapsedMicros();
+        }
+        return micros / 1e6;
+    }
+
+    /**
+     * @return the directory of the packages in the order they were found
+     */
+    public List<PackageEntry> getPackages() {
+        return packages;
+    }
+
+    /**
+     * Loads a single package
+     * @param qualifiedName <code>SCHEMA.NAME</code> of the package, only the name if the log names no schema
+     * @return the package, or null if there is none
+     */
+    public TestPackage getPackage(String qualifiedName) throws IOException {
+        for (PackageEntry entry : packages) {
+            if (entry.getQualifiedName().equals(qualifiedName)) {
+                return getPackage(entry);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads a single package
+     * @param entry an entry of {@link #getPackages()}
+     */
+    public TestPackage getPackage(PackageEntry entry) throws IOException {
+        return ResultCache.INSTANCE.get(file, entry);
+    }
+
+    /**
+     * Loads all packages. The packages are not cached, so this is meant for
+     * processing a result once, not for showing it.
+     */
+    public UtplsqlResult getResult() throws IOException {
+        UtplsqlResult loaded = new UtplsqlResult();
+        for (PackageEntry entry : packages) {
+            loaded.add(ResultStore.readPackage(file, entry));
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the root of the hierarchy of suites, schemas, packages and procedures.
+     * Without a saved hierarchy all packages are loaded once to build it.
+     */
+    public synchronized ResultNode getTree() throws IOException {
+        if (tree == null) {
+            ResultNode loaded;
+            File treeFile = file == null ? null : new File(file.getParentFile(), ResultNode.FILE_NAME);
+            if (treeFile != null && treeFile.exists()) {
+                loaded = ResultNode.load(treeFile);
+            } else {
+                loaded = getResult().getTree();
+            }
+            loaded.setSource(this);
+            tree = loaded;
+        }
+        return tree;
+    }
+
+    /**
+     * Makes the packages reachable by their qualified name below the result page.
+     */
+    public TestPackage getDynamic(String name, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        return getPackage(name);
+    }
+}
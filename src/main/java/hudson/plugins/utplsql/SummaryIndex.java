@@ -0,0 +1,389 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only index of the {@link BuildSummary summaries} of all builds of a job,
+ * kept in the directory of the job. The trend graph reads it instead of loading
+ * the builds and their full results.
+ * <p>
+ * {@value #RECORDS} starts with a header of {@value #HEADER_SIZE} bytes, followed by
+ * one record of {@value #RECORD_SIZE} bytes per build: build number, total count,
+ * fail count, duration in microseconds and the offset of the package failures in
+ * {@value #PACKAGES}. The package failures of a build start with its number, and are
+ * written first, so a record never points behind the end of that file. An
+ * incomplete record at the end, e.g. after a crash, is ignored. If a build was
+ * recorded more than once, the last record wins. The records of deleted builds
+ * stay in the index until they outnumber the records of the builds still there,
+ * then the index is {@link #compact compacted}.
+ * <p>
+ * The records read so far are cached for all jobs on the master, so the project
+ * page and the trend graph only read what was appended since. They are softly
+ * referenced, and the {@link UtplsqlItemListener} drops the records of deleted
+ * and renamed jobs.
+ */
+final class SummaryIndex {
+
+    static final String RECORDS = "utplsql-summary.idx";
+    static final String PACKAGES = "utplsql-summary.pkg";
+
+    private static final int MAGIC = 0x5554504c; // "UTPL"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 4 + 4 + 4 + 8 + 8;
+
+    /**
+     * serializes the appends of concurrent builds and the reads against the
+     * compaction, the index is only written on the master
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * the records read so far, by the path of the records file. Guarded by {@link #LOCK}.
+     */
+    private static final Map<String, SoftReference<Records>> CACHE = new HashMap<String, SoftReference<Records>>();
+
+    private final File records;
+    private final File packages;
+
+    /**
+     * @param directory the directory of the job
+     */
+    SummaryIndex(File directory) {
+        this.records = new File(directory, RECORDS);
+        this.packages = new File(directory, PACKAGES);
+    }
+
+    /**
+     * @return the time of the last change, 0 if the index does not exist
+     */
+    long lastModified() {
+        return records.lastModified();
+    }
+
+    /**
+     * Appends the summary of a build
+     */
+    void append(BuildSummary summary) throws IOException {
+        ByteArrayOutputStream failureBytes = new ByteArrayOutputStream();
+        DataOutputStream failures = new DataOutputStream(failureBytes);
+        failures.writeInt(summary.getBuildNumber());
+        failures.writeInt(summary.getPackageFailures().size());
+        for (Map.Entry<String, Integer> entry : summary.getPackageFailures().entrySet()) {
+            failures.writeUTF(entry.getKey());
+            failures.writeInt(entry.getValue());
+        }
+        failures.close();
+
+        synchronized (LOCK) {
+            long offset;
+            RandomAccessFile out = new RandomAccessFile(packages, "rw");
+            try {
+                offset = out.length();
+                out.seek(offset);
+                out.write(failureBytes.toByteArray());
+            } finally {
+                out.close();
+            }
+
+            out = new RandomAccessFile(records, "rw");
+            try {
+                long length = out.length();
+                if (length < HEADER_SIZE) {
+                    out.setLength(0);
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    length = HEADER_SIZE;
+                }
+                // overwrites an incomplete record
+                out.seek(length - (length - HEADER_SIZE) % RECORD_SIZE);
+                writeRecord(out, summary, offset);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the index with only the last record of each build still there, once
+     * the other records outnumber them. The package failures are replaced first, so
+     * after a crash before the records are replaced, the failures found at their
+     * offsets belong to other builds and are skipped.
+     * @param retained the numbers of the builds of the job
+     * @return true if the index was rewritten
+     */
+    boolean compact(Collection<Integer> retained) throws IOException {
+        synchronized (LOCK) {
+            List<Record> all = readRecords();
+            TreeMap<Integer, Record> kept = new TreeMap<Integer, Record>();
+            for (Record record : all) {
+                if (retained.contains(record.summary.getBuildNumber())) {
+                    kept.put(record.summary.getBuildNumber(), record);
+                }
+            }
+            if (all.size() - kept.size() <= kept.size()) {
+                return false;
+            }
+
+            File recordsTemp = new File(records.getPath() + ".tmp");
+            File packagesTemp = new File(packages.getPath() + ".tmp");
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            DataOutputStream newRecords = new DataOutputStream(recordBytes);
+            newRecords.writeInt(MAGIC);
+            newRecords.writeInt(VERSION);
+            DataOutputStream newPackages = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(packagesTemp), 64 * 1024));
+            try {
+                RandomAccessFile failures = new RandomAccessFile(packages, "r");
+                try {
+                    for (Record record : kept.values()) {
+                        long offset = newPackages.size();
+                        int count = seekFailures(failures, record) ? failures.readInt() : 0;
+                        newPackages.writeInt(record.summary.getBuildNumber());
+                        newPackages.writeInt(count);
+                        for (int i = 0; i < count; i++) {
+                            newPackages.writeUTF(failures.readUTF());
+                            newPackages.writeInt(failures.readInt());
+                        }
+                        writeRecord(newRecords, record.summary, offset);
+                    }
+                } finally {
+                    failures.close();
+                }
+            } finally {
+                newPackages.close();
+            }
+            newRecords.close();
+            FileOutputStream out = new FileOutputStream(recordsTemp);
+            try {
+                out.write(recordBytes.toByteArray());
+            } finally {
+                out.close();
+            }
+
+            CACHE.remove(records.getPath());
+            rename(packagesTemp, packages);
+            rename(recordsTemp, records);
+            return true;
+        }
+    }
+
+    /**
+     * Reads the summaries without the package failures, only the fixed size
+     * records are read.
+     * @param max the maximum number of summaries, the latest are returned
+     * @return the summaries ordered by ascending build number
+     */
+    List<BuildSummary> readTrend(int max) throws IOException {
+        TreeMap<Integer, BuildSummary> summaries = new TreeMap<Integer, BuildSummary>();
+        synchronized (LOCK) {
+            for (Record record : readRecords()) {
+                summaries.put(record.summary.getBuildNumber(), record.summary);
+            }
+        }
+        while (summaries.size() > max) {
+            summaries.remove(summaries.firstKey());
+        }
+        return new ArrayList<BuildSummary>(summaries.values());
+    }
+
+    /**
+     * Sums up the package failures of some builds
+     * @param buildNumbers the numbers of the builds, e.g. of the summaries of {@link #readTrend(int)}
+     * @return the number of failures by qualified package name, packages without failures are missing
+     */
+    Map<String, Integer> readPackageFailures(Collection<Integer> buildNumbers) throws IOException {
+        Map<String, Integer> packageFailures = new HashMap<String, Integer>();
+        synchronized (LOCK) {
+            Map<Integer, Record> wanted = new TreeMap<Integer, Record>();
+            for (Record record : readRecords()) {
+                if (buildNumbers.contains(record.summary.getBuildNumber())) {
+                    wanted.put(record.summary.getBuildNumber(), record);
+                }
+            }
+            if (wanted.isEmpty()) {
+                return packageFailures;
+            }
+            RandomAccessFile failures = new RandomAccessFile(packages, "r");
+            try {
+                for (Record record : wanted.values()) {
+                    if (!seekFailures(failures, record)) {
+                        continue;
+                    }
+                    int count = failures.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String name = failures.readUTF();
+                        Integer sum = packageFailures.get(name);
+                        packageFailures.put(name, failures.readInt() + (sum == null ? 0 : sum));
+                    }
+                }
+            } finally {
+                failures.close();
+            }
+        }
+        return packageFailures;
+    }
+
+    /**
+     * Drops the cached records of an index
+     * @param directory the directory of the job
+     */
+    static void invalidate(File directory) {
+        synchronized (LOCK) {
+            CACHE.remove(new File(directory, RECORDS).getPath());
+        }
+    }
+
+    /**
+     * A record of the index
+     */
+    private static final class Record {
+        /**
+         * the summary without the package failures
+         */
+        final BuildSummary summary;
+
+        /**
+         * offset of the package failures
+         */
+        final long offset;
+
+        Record(BuildSummary summary, long offset) {
+            this.summary = summary;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * The records read from a file
+     */
+    private static final class Records {
+        final List<Record> list = new ArrayList<Record>();
+
+        /**
+         * the number of bytes read, the header and the complete records
+         */
+        long length;
+    }
+
+    /**
+     * Moves to the package failures of a record, behind the build number
+     * @return false if they are not found, e.g. after an interrupted compaction
+     */
+    private static boolean seekFailures(RandomAccessFile failures, Record record) throws IOException {
+        if (record.offset + 8 > failures.length()) {
+            return false;
+        }
+        failures.seek(record.offset);
+        return failures.readInt() == record.summary.getBuildNumber();
+    }
+
+    private static void writeRecord(DataOutput out, BuildSummary summary, long offset) throws IOException {
+        out.writeInt(summary.getBuildNumber());
+        out.writeInt(summary.getTotalCount());
+        out.writeInt(summary.getFailCount());
+        out.writeLong(summary.getDurationMicros());
+        out.writeLong(offset);
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            to.delete();
+            if (!from.renameTo(to)) {
+                throw new IOException("Failed to rename " + from + " to " + to);
+            }
+        }
+    }
+
+    /**
+     * @return the complete records in the order they were appended, up to date with
+     *         the file. Called with the lock held.
+     */
+    private List<Record> readRecords() throws IOException {
+        long length = records.length();
+        if (length < HEADER_SIZE) {
+            return Collections.emptyList();
+        }
+        long complete = length - (length - HEADER_SIZE) % RECORD_SIZE;
+        SoftReference<Records> reference = CACHE.get(records.getPath());
+        Records cached = reference == null ? null : reference.get();
+        if (cached == null || complete < cached.length) {
+            // new, replaced or cleared by the garbage collector
+            cached = new Records();
+            CACHE.put(records.getPath(), new SoftReference<Records>(cached));
+        }
+        if (complete == cached.length) {
+            return cached.list;
+        }
+
+        byte[] bytes;
+        RandomAccessFile file = new RandomAccessFile(records, "r");
+        try {
+            if (cached.length == 0) {
+                if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+                    throw new IOException(records + " is not a utPLSQL summary index");
+                }
+                cached.length = HEADER_SIZE;
+            }
+            bytes = new byte[(int) (complete - cached.length)];
+            file.seek(cached.length);
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        Map<String, Integer> none = Collections.emptyMap();
+        while (in.available() > 0) {
+            int buildNumber = in.readInt();
+            int totalCount = in.readInt();
+            int failCount = in.readInt();
+            long durationMicros = in.readLong();
+            long offset = in.readLong();
+            cached.list.add(new Record(new BuildSummary(buildNumber, totalCount, failCount, durationMicros, none),
+                    offset));
+        }
+        cached.length = complete;
+        return cached.list;
+    }
+}
@@ -25,11 +25,13 @@ package hudson.plugins.utplsql;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Holds all information about one testpackage ({@link Testcase}s and number of errors etc.)
- * Currently just an intermediate solution for easy creation of the jUnit xml
- * files. Maybe this becomes obsolete later.
  * @see Testcase
  */
 public class TestPackage implements Serializable {
@@ -52,6 +54,26 @@ public class TestPackage implements Serializable {
 	 */
 	private String name;
 	
+	/**
+	 * the schema of the package, null if it is not printed
+	 */
+	private String schema;
+	
+	/**
+	 * the name of the suite, which ran the package, null if it did not run in a suite
+	 */
+	private String suite;
+	
+	/**
+	 * the sum of the elapsed times of all testcases in microseconds
+	 */
+	private long elapsedMicros;
+	
+	/**
+	 * true if the identities of the testcases are up to date
+	 */
+	private transient boolean identified;
+	
 	/**
 	 * workaround for jUnit behaviour.
 	 */
@@ -62,6 +84,65 @@ public class TestPackage implements Serializable {
 		return name;
 	}
 
+	public String getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @return <code>SCHEMA.NAME</code>, only the name if the schema is not known
+	 */
+	public String getQualifiedName() {
+		return schema == null ? name : schema + "." + name;
+	}
+
+	public String getSuite() {
+		return suite;
+	}
+
+	/**
+	 * @return the testcases, each with its identity: the schema, the {@link Testcase#getIdentityKey() key}
+	 * and the ordinal among the testcases of this package with the same key. The schema keeps
+	 * packages of the same name in different schemas apart.
+	 */
+	public List<Testcase> getTestCases() {
+		if (!identified) {
+			// the messages are complete by now
+			Map<String, Integer> ordinals = new HashMap<String, Integer>();
+			String prefix = schema == null ? "" : schema + ".";
+			for (Testcase testcase : testCases) {
+				String key = prefix + testcase.getIdentityKey();
+				Integer ordinal = ordinals.get(key);
+				ordinal = ordinal == null ? 1 : ordinal + 1;
+				ordinals.put(key, ordinal);
+				testcase.setId(key + ":" + ordinal);
+			}
+			identified = true;
+		}
+		return Collections.unmodifiableList(testCases);
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	public int getTotalCount() {
+		return testCases.size();
+	}
+
+	/**
+	 * @return the sum of the elapsed times of all testcases in seconds
+	 */
+	public double getDuration() {
+		return elapsedMicros / 1000000.0;
+	}
+
+	/**
+	 * @return the sum of the elapsed times of all testcases in microseconds
+	 */
+	public long getElapsedMicros() {
+		return elapsedMicros;
+	}
+
 	public long getCounter() {
 		return counter++;
 	}
@@ -78,6 +159,19 @@ public class TestPackage implements Serializable {
 		this.counter = 1;
 	}
 	
+	/**
+	 * Creates a new instance of this class
+	 * @param suite the name of the suite, null if the package did not run in a suite
+	 * @param schema the schema of the package, null if it is not known
+	 * @param name the name of the test package
+	 */
+	public TestPackage(String suite, String schema, String name)
+	{
+		this(name);
+		this.suite = suite;
+		this.schema = schema;
+	}
+	
 	/**
 	 * Add a Testcase to this package
 	 * @param testcase the Testcase to add
@@ -85,34 +179,25 @@ public class TestPackage implements Serializable {
 	public void add(Testcase testcase)
 	{
 		this.testCases.add(testcase);
-		if (testcase.getResult().equals(Testcase.FAILURE))
+		this.identified = false;
+		this.elapsedMicros += testcase.getElapsedMicros();
+		if (testcase.isFailed())
 		{
 			this.failures++;
 		}
 	}
 	
-    /**
-     * The result of this function should be written to one xml-file later representing
-     * The testresults for one Testpackage.
-     * @return the xml-code to be inserted into
-     */
-	public String getXmlSnippet()
-    {
-        StringBuffer sb = new StringBuffer("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>");
-        sb.append(System.getProperty("line.separator"));
-        sb.append("<testsuite errors=\"0\" failures=\"");
-        sb.append(this.failures);
-        sb.append("\" name=\"");
-        sb.append(this.name);
-        sb.append("\" tests=\"");
-        sb.append(testCases.size());
-        sb.append("\">");
-        sb.append(System.getProperty("line.separator"));
-        for (Testcase testcase : this.testCases)
-        {
-        	sb.append(testcase.getXmlSnippet());
-        }
-        sb.append("</testsuite>");
-        return sb.toString();
-    }
+	/**
+	 * Adds the testcases of another run of this package. The testcases are numbered on,
+	 * so their names stay unique within this package.
+	 * @param other the package, e.g. from another file
+	 */
+	void addAll(TestPackage other)
+	{
+		for (Testcase testcase : other.testCases)
+		{
+			testcase.renumber(getCounter());
+			add(testcase);
+		}
+	}
 }
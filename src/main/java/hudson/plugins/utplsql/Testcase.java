@@ -23,16 +23,13 @@
  */
 package hudson.plugins.utplsql;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang.StringEscapeUtils;
-
 /**
  * Holds all information given by a single testcase (assert) of utplsql
- * Currently just an intermediate solution for easy creation of the jUnit xml
- * files. Maybe this becomes obsolete later.
  */
 public class Testcase implements Serializable
 {
@@ -41,15 +38,24 @@ public class Testcase implements Serializable
 	// Parsing line with RexExp - Tested on http://www.debuggex.com/
 	private static final Pattern pattern = Pattern.compile("(.{1,8}) - ([^\\.]{0,30})\\.([^\" :]{0,30})(?:(?: ?\\[)([\\d\\.,]+)(?: ms\\] ?))? ?: ?(.*)$");
 	
-	public static final String SUCCESS = "SUCCESS";
-	public static final String FAILURE = "FAILURE";
+	/**
+	 * The outcome of an assert
+	 */
+	public enum Status { SUCCESS, FAILURE }
+
+	public static final Status SUCCESS = Status.SUCCESS;
+	public static final Status FAILURE = Status.FAILURE;
 	
-    private String result;
+    private Status result;
     
     private void setResult(String result) {
-		if (result.equals(Testcase.SUCCESS) || result.equals(Testcase.FAILURE))
+		if (result.equals(Testcase.SUCCESS.name()))
 		{
-			this.result = result;
+			this.result = Testcase.SUCCESS;
+		}
+		else if (result.equals(Testcase.FAILURE.name()))
+		{
+			this.result = Testcase.FAILURE;
 		}
 		else
 		{
@@ -57,10 +63,14 @@ public class Testcase implements Serializable
 		}
 	}
 
-	public String getResult() {
+	public Status getResult() {
 		return result;
 	}
 
+	public boolean isFailed() {
+		return result == Testcase.FAILURE;
+	}
+
     /**
      * the Classname is the package name in utplsql
      */
@@ -79,6 +89,76 @@ public class Testcase implements Serializable
         return name;
     }
 
+    /**
+     * identity of the assert, which does not change when other asserts are added,
+     * see {@link TestPackage#getTestCases()}
+     */
+    private transient String id;
+
+    /**
+     * @return the identity, <code>SCHEMA.PACKAGE.PROCEDURE:description hash:ordinal</code>,
+     * without schema if the log names none
+     */
+    public String getId() {
+        return id != null ? id : getIdentityKey() + ":1";
+    }
+
+    /**
+     * @return the identity without schema and package, unique within the package
+     */
+    public String getStableName() {
+        String identity = getId();
+        // neither the procedure nor the hash contain a dot
+        return identity.substring(identity.lastIndexOf('.', identity.indexOf(':')) + 1);
+    }
+
+    void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Replaces the counter in the name, when the testcase is moved to another package
+     * @param counter the next value of {@link TestPackage#getCounter()} of that package
+     */
+    void renumber(long counter) {
+        if (name != null && name.length() > 0 && Character.isDigit(name.charAt(0))) {
+            name = counter + getProcedure();
+        }
+    }
+
+    /**
+     * @return the name of the procedure without the counter of {@link TestPackage#getCounter()}
+     */
+    public String getProcedure() {
+        String procedure = name == null ? "" : name;
+        int digits = 0;
+        while (digits < procedure.length() && Character.isDigit(procedure.charAt(digits))) {
+            digits++;
+        }
+        return procedure.substring(digits);
+    }
+
+    /**
+     * @return the identity without schema and ordinal: package, {@link #getProcedure() procedure}
+     * and the hash of the description of the assert. The description is the message up
+     * to the end of its first quoted part, which is the same whether the assert succeeds
+     * or fails, or the first line of the message if it has no quoted part.
+     */
+    String getIdentityKey() {
+        String description = getMessage() == null ? "" : getMessage();
+        int lineEnd = description.indexOf('\n');
+        if (lineEnd >= 0) {
+            description = description.substring(0, lineEnd);
+        }
+        int open = description.indexOf('"');
+        int close = open < 0 ? -1 : description.indexOf('"', open + 1);
+        if (close >= 0) {
+            description = description.substring(0, close + 1);
+        }
+        String hash = Integer.toHexString(description.trim().hashCode());
+        return className + "." + getProcedure() + ":" + "00000000".substring(hash.length()) + hash;
+    }
+
     /**
      * message is the custom message of the assert
      */
@@ -88,29 +168,73 @@ public class Testcase implements Serializable
      * @return Message value (surrounded with quotation marks)
      */
     public String getMessage() {
+        if (continuation != null) {
+            this.message = continuation.toString();
+            continuation = null;
+        }
         return message;
     }
 
     /**
-     * elapsed time stored in String to skip conversions errors
+     * the lines appended to the message, until the message is finished
      */
-    private String elapsedTime;
+    private transient MessageBuffer continuation;
+
+    /**
+     * elapsed time in microseconds, converted once while parsing
+     */
+    private long elapsedMicros;
 
     private void setElapsedTime(String elapsedTime){
         if(elapsedTime == null || elapsedTime.isEmpty()) {
-            this.elapsedTime = "0";
+            this.elapsedMicros = 0;
         } else {
-            this.elapsedTime = elapsedTime;
+            char[] chars = elapsedTime.toCharArray();
+            this.elapsedMicros = toMicros(chars, 0, chars.length);
         }
     }
 
+    public long getElapsedMicros() {
+        return elapsedMicros;
+    }
+
     public double getElapsedTimeInSeconds() {
-        double valueInMilliSeconds = 0.0;
+        return elapsedMicros / 1000000.0;
+    }
 
-        if(this.elapsedTime != null) {
-            valueInMilliSeconds = Double.valueOf(this.elapsedTime.replace(',', '.'))/1000;
+    /**
+     * Converts an elapsed time like utPLSQL prints it, e.g. "0,903" or "12.5",
+     * from milliseconds to microseconds. Both ',' and '.' are accepted as decimal
+     * separator, fractions of microseconds are rounded.
+     * @return the microseconds, 0 if the value can't be read
+     */
+    static long toMicros(char[] chars, int start, int end) {
+        long micros = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                if (fractionDigits < 0) {
+                    micros = micros * 10 + (c - '0');
+                } else if (fractionDigits < 3) {
+                    micros = micros * 10 + (c - '0');
+                    fractionDigits++;
+                } else {
+                    if (fractionDigits == 3 && c >= '5') {
+                        micros++;
+                    }
+                    fractionDigits = 4;
+                }
+            } else if ((c == ',' || c == '.') && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return 0;
+            }
         }
-        return valueInMilliSeconds;
+        for (int i = Math.max(fractionDigits, 0); i < 3; i++) {
+            micros *= 10;
+        }
+        return micros;
     }
     
     /**
@@ -118,6 +242,43 @@ public class Testcase implements Serializable
      * @param line one line of dbms_output indicating success or failure of a single assert
      */
     public Testcase(TestPackage testPackage, String line)
+    {
+        this(testPackage, UtplsqlLineLexer.forLine(line));
+    }
+
+    /**
+     * Constructor to restore a testcase, which has been parsed before
+     */
+    Testcase(Status result, String className, String name, long elapsedMicros, String message)
+    {
+        this.result = result;
+        this.className = className;
+        this.name = name;
+        this.elapsedMicros = elapsedMicros;
+        this.message = message;
+    }
+
+    /**
+     * Constructor to instanciate a testcase from a line, which has already been
+     * classified by the lexer. The regular expression is only used, if the lexer
+     * could not scan the line.
+     * @param lexer positioned on one line of dbms_output
+     */
+    Testcase(TestPackage testPackage, UtplsqlLineLexer lexer)
+    {
+        if (lexer.getType() == UtplsqlLineLexer.LineType.TESTCASE && lexer.isWellFormed()) {
+            this.result = lexer.getResult();
+            // no need to keep the same name once per assert
+            this.className = lexer.getPackageName(testPackage.getName());
+            this.name = testPackage.getCounter() + lexer.getProcedure();
+            this.elapsedMicros = lexer.getElapsedMicros();
+            this.message = lexer.getMessage();
+        } else {
+            parse(testPackage, lexer.getLine());
+        }
+    }
+
+    private void parse(TestPackage testPackage, String line)
     {
         // Attended lines look like :
         // SUCCESS - UT_FAKE.UT_FAKE: EQ "Description of testcase very long and multiline
@@ -141,18 +302,22 @@ public class Testcase implements Serializable
         // group(3) : this.name (UT Proc : 30 char MAX) (quotation marks and spaces forbidden)
         // group(4) : elapsed time in ms - /!\ : May be null !!!
         // group(5) : testFunction (EQ, THIS, ... : 30 char MAX) + assertion message (should be multiline) and rest of line - /!\ : May be null if message begin on next line !!!
-        Matcher m = pattern.matcher(line.trim());
+        Matcher m = pattern.matcher(line);
 
         if(!m.matches()){
             // Line doesn't match any expected form. Rather than raising exception, we
             // log unexpected line as failure test
-            setResult(Testcase.FAILURE);
+            this.result = Testcase.FAILURE;
             this.className = "UTPLSQL_PLUGIN";
             this.name = "PARSING_ERROR";
             this.message = line;
         } else {
             setResult(m.group(1));
             this.className = m.group(2);
+            if (testPackage.getName().equals(this.className)) {
+                // no need to keep the same name once per assert
+                this.className = testPackage.getName();
+            }
             this.name = testPackage.getCounter() + m.group(3);
             setElapsedTime(m.group(4));
             this.message =  m.group(5);
@@ -161,37 +326,55 @@ public class Testcase implements Serializable
         
     public void appendToMessage(String newLine)
     {
-        // If message is not yet significant, it's crush
-        if(this.message == null || this.message.trim().length()==0) {
-            this.message = newLine;
-        } else {
-            this.message = this.message + System.getProperty("line.separator") + newLine;
+        if (continuation == null) {
+            // If message is not yet significant, it's crush
+            if(this.message == null || this.message.trim().length()==0) {
+                this.message = newLine;
+                return;
+            }
+            continuation = new MessageBuffer(this.message);
         }
+        continuation.append(newLine);
      }
-    
+
     /**
-     * Returns an xml-snippet to be inserted into the jUnit-file
-     * @return some text, ready to be inserted into a jUnit-file
+     * Joins the lines appended to the message. Messages longer than the limit
+     * are truncated; their full text is written to the spill, if there is one.
+     * @param maxLength maximum length of the message, 0 for no limit
+     * @param spill receives the full text of truncated messages, may be null
+     * @return true if the message was truncated
      */
-    public String getXmlSnippet()
+    boolean finishMessage(int maxLength, MessageSpill spill) throws IOException
     {
-        StringBuffer sb = new StringBuffer("<testcase classname=\"");
-        sb.append(this.className);
-        sb.append("\" name=\"");
-        sb.append(StringEscapeUtils.escapeXml(this.name));
-        sb.append("\" time=\"");
-        sb.append(getElapsedTimeInSeconds());
-        sb.append("\">");
-        if (this.result.equals(Testcase.FAILURE))
-        {
-            sb.append(System.getProperty("line.separator"));
-            sb.append("<failure message=\"");
-            sb.append(StringEscapeUtils.escapeXml(getMessage()));
-            sb.append("\" />");
-            sb.append(System.getProperty("line.separator"));
+        long length;
+        if (continuation != null) {
+            length = continuation.length();
+        } else if (this.message != null) {
+            length = this.message.length();
+        } else {
+            return false;
+        }
+        if (maxLength <= 0 || length <= maxLength) {
+            if (continuation != null) {
+                this.message = continuation.toString();
+                continuation = null;
+            }
+            return false;
         }
-        sb.append("</testcase>");
-        sb.append(System.getProperty("line.separator"));
-        return sb.toString();
+        String full = continuation != null ? continuation.toString() : this.message;
+        String marker = spill == null
+                ? "... [truncated]"
+                : "... [truncated, see message #" + spill.spill(this, full) + " in " + MessageSpill.FILE_NAME + "]";
+        this.message = full.substring(0, maxLength) + marker;
+        continuation = null;
+        return true;
+    }
+
+    /**
+     * An unfinished message is joined before serialization.
+     */
+    private Object writeReplace() {
+        getMessage();
+        return this;
     }
 }
@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Where the database time of a build went: the slowest asserts and packages,
+ * the total time and a {@link LatencyHistogram} per package. It is computed in a
+ * single pass over the testcases; only the slowest asserts are kept.
+ */
+public final class TimingAnalysis implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * name of the file in the build directory
+     */
+    static final String FILE_NAME = "utplsql-timing.ser";
+
+    /**
+     * number of slowest asserts and packages kept
+     */
+    static final int TOP_COUNT = 25;
+
+    private final List<PackageTiming> packages;
+    private final List<AssertTiming> slowestAsserts;
+    private final List<PackageTiming> slowestPackages;
+    private final LatencyHistogram histogram;
+
+    private TimingAnalysis(List<PackageTiming> packages, List<AssertTiming> slowestAsserts,
+                           List<PackageTiming> slowestPackages, LatencyHistogram histogram) {
+        this.packages = packages;
+        this.slowestAsserts = slowestAsserts;
+        this.slowestPackages = slowestPackages;
+        this.histogram = histogram;
+    }
+
+    /**
+     * @param result the result to analyse
+     * @param topCount the number of slowest asserts and packages to keep
+     */
+    static TimingAnalysis of(UtplsqlResult result, int topCount) {
+        TopList<AssertTiming> slowestAsserts = new TopList<AssertTiming>(topCount, new Comparator<AssertTiming>() {
+            public int compare(AssertTiming a, AssertTiming b) {
+                return compareMicros(a.getElapsedMicros(), b.getElapsedMicros());
+            }
+        });
+        TopList<PackageTiming> slowestPackages = new TopList<PackageTiming>(topCount, BY_TOTAL);
+        List<PackageTiming> packages = new ArrayList<PackageTiming>(result.getPackages().size());
+        LatencyHistogram total = new LatencyHistogram();
+
+        for (TestPackage testPackage : result.getPackages()) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (Testcase testcase : testPackage.getTestCases()) {
+                histogram.record(testcase.getElapsedMicros());
+                slowestAsserts.offer(new AssertTiming(testPackage.getName(), testcase.getStableName(),
+                        testcase.getElapsedMicros(), testcase.isFailed()));
+            }
+            PackageTiming timing = new PackageTiming(testPackage.getName(), histogram);
+            packages.add(timing);
+            slowestPackages.offer(timing);
+            total.merge(histogram);
+        }
+        return new TimingAnalysis(packages, slowestAsserts.toList(), slowestPackages.toList(), total);
+    }
+
+    private static final Comparator<PackageTiming> BY_TOTAL = new Comparator<PackageTiming>() {
+        public int compare(PackageTiming a, PackageTiming b) {
+            return compareMicros(a.getTotalMicros(), b.getTotalMicros());
+        }
+    };
+
+    private static int compareMicros(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * @return the timings of all packages in the order of the result
+     */
+    public List<PackageTiming> getPackages() {
+        return Collections.unmodifiableList(packages);
+    }
+
+    /**
+     * @return the slowest asserts, slowest first
+     */
+    public List<AssertTiming> getSlowestAsserts() {
+        return Collections.unmodifiableList(slowestAsserts);
+    }
+
+    /**
+     * @return the packages with the most database time, slowest first
+     */
+    public List<PackageTiming> getSlowestPackages() {
+        return Collections.unmodifiableList(slowestPackages);
+    }
+
+    /**
+     * @return the histogram of all asserts of the build
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    void save(File file) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeObject(this);
+        } finally {
+            out.close();
+        }
+    }
+
+    static TimingAnalysis load(File file) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return (TimingAnalysis) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Failed to load " + file + ": " + e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The elapsed time of one assert
+     */
+    public static final class AssertTiming implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String packageName;
+        private final String name;
+        private final long elapsedMicros;
+        private final boolean failed;
+
+        AssertTiming(String packageName, String name, long elapsedMicros, boolean failed) {
+            this.packageName = packageName;
+            this.name = name;
+            this.elapsedMicros = elapsedMicros;
+            this.failed = failed;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * @return the name of the assert without the counter of its package, see
+         *         {@link Testcase#getStableName()}
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getElapsedMicros() {
+            return elapsedMicros;
+        }
+
+        public double getElapsedMillis() {
+            return elapsedMicros / 1e3;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+
+    /**
+     * The database time of one package
+     */
+    public static final class PackageTiming implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final LatencyHistogram histogram;
+
+        PackageTiming(String name, LatencyHistogram histogram) {
+            this.name = name;
+            this.histogram = histogram;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        public long getTotalMicros() {
+            return histogram.getTotalMicros();
+        }
+
+        public double getTotalMillis() {
+            return histogram.getTotalMicros() / 1e3;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Optional gate of the {@link UtplsqlRecorder}, which compares the elapsed times
+ * of all asserts and packages with a baseline and worsens the build result, if
+ * they regressed. The baseline is either the last stable build or the median of
+ * the last builds with utPLSQL results, which the gate did not find regressed, so
+ * a slow build does not become the baseline of the next one.
+ * The times of the asserts are read from the {@link HistoryIndex} of the job, the
+ * times of the packages from the package directory of the {@link StoredResult}.
+ * <p>
+ * A time regressed, if it exceeds the baseline by more than the relative
+ * threshold and by more than the absolute threshold. A threshold of 0 is not
+ * checked, so the absolute threshold alone catches large regressions of fast
+ * asserts and both together ignore noise of very fast asserts.
+ */
+public class TimingGate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * number of regressions listed in the build log
+     */
+    static final int LOGGED_REGRESSIONS = 50;
+
+    /**
+     * How the baseline is determined
+     */
+    public enum Baseline {
+        /** the times of the last stable build */
+        LAST_STABLE,
+        /** the median times of the last builds, which were not regressed */
+        ROLLING_MEDIAN
+    }
+
+    private final Baseline baseline;
+    private final int baselineBuilds;
+    private final double relativeThreshold;
+    private final double absoluteThresholdMillis;
+    private final Result result;
+
+    /**
+     * @param baseline name of a {@link Baseline}, the last stable build if unknown
+     * @param baselineBuilds number of builds of the rolling median
+     * @param relativeThreshold allowed increase in percent of the baseline, 0 to ignore
+     * @param absoluteThresholdMillis allowed increase in milliseconds, 0 to ignore
+     * @param result UNSTABLE or FAILURE, the result of a build with regressions
+     */
+    @DataBoundConstructor
+    public TimingGate(String baseline, int baselineBuilds, double relativeThreshold,
+                      double absoluteThresholdMillis, String result) {
+        this.baseline = Baseline.ROLLING_MEDIAN.name().equals(baseline)
+                ? Baseline.ROLLING_MEDIAN : Baseline.LAST_STABLE;
+        this.baselineBuilds = Math.max(1, baselineBuilds);
+        this.relativeThreshold = relativeThreshold;
+        this.absoluteThresholdMillis = absoluteThresholdMillis;
+        this.result = "FAILURE".equals(result) ? Result.FAILURE : Result.UNSTABLE;
+    }
+
+    public String getBaseline() {
+        return baseline.name();
+    }
+
+    public int getBaselineBuilds() {
+        return baselineBuilds;
+    }
+
+    public double getRelativeThreshold() {
+        return relativeThreshold;
+    }
+
+    public double getAbsoluteThresholdMillis() {
+        return absoluteThresholdMillis;
+    }
+
+    public String getResult() {
+        return result.toString();
+    }
+
+    /**
+     * Compares the times of a build with the baseline and lists the regressions in the log
+     * @param build the build, which is recorded
+     * @param current the result of the build
+     * @param logger the build log
+     * @return the result for the build, null if nothing regressed
+     */
+    Result check(AbstractBuild<?, ?> build, UtplsqlResult current, PrintStream logger) throws IOException {
+        List<AbstractBuild<?, ?>> baselines = findBaselines(build);
+        if (baselines.isEmpty()) {
+            logger.println("utPLSQL timing gate: no baseline build, timings are not checked");
+            return null;
+        }
+
+        Set<Integer> buildNumbers = new HashSet<Integer>();
+        for (AbstractBuild<?, ?> baselineBuild : baselines) {
+            buildNumbers.add(baselineBuild.getNumber());
+        }
+        Map<Integer, Map<String, Long>> history = new HistoryIndex(build.getProject().getRootDir())
+                .times(assertTimes(current).keySet(), buildNumbers);
+        List<Map<String, Long>> assertTimes = new ArrayList<Map<String, Long>>(baselines.size());
+        List<Map<String, Long>> packageTimes = new ArrayList<Map<String, Long>>(baselines.size());
+        for (AbstractBuild<?, ?> baselineBuild : baselines) {
+            Map<String, Long> times = history.get(baselineBuild.getNumber());
+            assertTimes.add(times == null ? Collections.<String, Long>emptyMap() : times);
+            StoredResult stored = baselineBuild.getAction(UtplsqlResultAction.class).getResult();
+            packageTimes.add(packageTimes(stored.getPackages()));
+        }
+        List<Regression> regressions = compare(current, medians(assertTimes), medians(packageTimes));
+
+        if (regressions.isEmpty()) {
+            logger.println("utPLSQL timing gate: no regressions against " + describeBaseline(baselines.size()));
+            return null;
+        }
+        logger.println("utPLSQL timing gate: " + regressions.size() + " regressions against "
+                + describeBaseline(baselines.size()) + ", build is " + result);
+        for (Regression regression : regressions.subList(0, Math.min(LOGGED_REGRESSIONS, regressions.size()))) {
+            logger.println("  " + regression);
+        }
+        if (regressions.size() > LOGGED_REGRESSIONS) {
+            logger.println("  ... and " + (regressions.size() - LOGGED_REGRESSIONS) + " more");
+        }
+        return result;
+    }
+
+    private String describeBaseline(int builds) {
+        return baseline == Baseline.LAST_STABLE
+                ? "the last stable build"
+                : "the median of " + builds + " builds";
+    }
+
+    /**
+     * @return the baseline builds, latest first: builds with utPLSQL results, whose times
+     * were not regressed, and for {@link Baseline#LAST_STABLE} only successful builds
+     */
+    private List<AbstractBuild<?, ?>> findBaselines(AbstractBuild<?, ?> build) {
+        int wanted = baseline == Baseline.LAST_STABLE ? 1 : baselineBuilds;
+        List<AbstractBuild<?, ?>> baselines = new ArrayList<AbstractBuild<?, ?>>(wanted);
+        for (AbstractBuild<?, ?> previous = build.getPreviousBuild();
+                previous != null && baselines.size() < wanted;
+                previous = previous.getPreviousBuild()) {
+            UtplsqlResultAction action = previous.getAction(UtplsqlResultAction.class);
+            if (action == null || action.isTimingRegressed()) {
+                continue;
+            }
+            if (baseline == Baseline.LAST_STABLE
+                    && (previous.getResult() == null || !previous.getResult().isBetterOrEqualTo(Result.SUCCESS))) {
+                continue;
+            }
+            baselines.add(previous);
+        }
+        return baselines;
+    }
+
+    /**
+     * @return all regressions, the greatest increase first
+     */
+    List<Regression> compare(UtplsqlResult current, Map<String, Long> assertBaseline,
+                             Map<String, Long> packageBaseline) {
+        List<Regression> regressions = new ArrayList<Regression>();
+        for (Map.Entry<String, Long> entry : assertTimes(current).entrySet()) {
+            Long before = assertBaseline.get(entry.getKey());
+            if (before != null && isRegression(before, entry.getValue())) {
+                regressions.add(new Regression("assert", entry.getKey(), before, entry.getValue()));
+            }
+        }
+        Map<String, Long> currentPackages = new HashMap<String, Long>();
+        for (TestPackage testPackage : current.getPackages()) {
+            add(currentPackages, testPackage.getQualifiedName(), testPackage.getElapsedMicros());
+        }
+        for (Map.Entry<String, Long> entry : currentPackages.entrySet()) {
+            Long before = packageBaseline.get(entry.getKey());
+            if (before != null && isRegression(before, entry.getValue())) {
+                regressions.add(new Regression("package", entry.getKey(), before, entry.getValue()));
+            }
+        }
+        Collections.sort(regressions, new Comparator<Regression>() {
+            public int compare(Regression a, Regression b) {
+                long difference = b.getIncreaseMicros() - a.getIncreaseMicros();
+                return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+            }
+        });
+        return regressions;
+    }
+
+    boolean isRegression(long baselineMicros, long currentMicros) {
+        return isRegression(baselineMicros, currentMicros, relativeThreshold, absoluteThresholdMillis);
+    }
+
+    /**
+     * @param relativeThreshold allowed increase in percent of the baseline, 0 to ignore
+     * @param absoluteThresholdMillis allowed increase in milliseconds, 0 to ignore
+     * @return true if the current time exceeds both thresholds, false if both are 0
+     */
+    static boolean isRegression(long baselineMicros, long currentMicros, double relativeThreshold,
+                                double absoluteThresholdMillis) {
+        if (relativeThreshold <= 0 && absoluteThresholdMillis <= 0) {
+            return false;
+        }
+        long increase = currentMicros - baselineMicros;
+        if (increase <= 0) {
+            return false;
+        }
+        boolean relative = relativeThreshold <= 0 || increase * 100.0 > baselineMicros * relativeThreshold;
+        boolean absolute = absoluteThresholdMillis <= 0 || increase > absoluteThresholdMillis * 1000.0;
+        return relative && absolute;
+    }
+
+    /**
+     * @return the elapsed time per assert, the key is the {@link Testcase#getId() identity}
+     * of the assert
+     */
+    static Map<String, Long> assertTimes(UtplsqlResult result) {
+        Map<String, Long> times = new HashMap<String, Long>();
+        for (TestPackage testPackage : result.getPackages()) {
+            for (Testcase testcase : testPackage.getTestCases()) {
+                times.put(testcase.getId(), testcase.getElapsedMicros());
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @return the elapsed time per package, the key is the {@link PackageEntry#getQualifiedName()
+     * qualified name} of the package
+     */
+    static Map<String, Long> packageTimes(List<PackageEntry> packages) {
+        Map<String, Long> times = new HashMap<String, Long>();
+        for (PackageEntry entry : packages) {
+            add(times, entry.getQualifiedName(), entry.getElapsedMicros());
+        }
+        return times;
+    }
+
+    /**
+     * the same package may be run more than once, its times are added up
+     */
+    private static void add(Map<String, Long> times, String key, long micros) {
+        Long time = times.get(key);
+        times.put(key, time == null ? micros : time + micros);
+    }
+
+    /**
+     * @param builds the times of several builds
+     * @return the median per key of the builds containing the key, the lower
+     * median for an even number of builds
+     */
+    static Map<String, Long> medians(List<Map<String, Long>> builds) {
+        if (builds.size() == 1) {
+            return builds.get(0);
+        }
+        Map<String, long[]> values = new HashMap<String, long[]>();
+        for (Map<String, Long> build : builds) {
+            for (Map.Entry<String, Long> entry : build.entrySet()) {
+                long[] times = values.get(entry.getKey());
+                if (times == null) {
+                    // the first element counts the times
+                    times = new long[builds.size() + 1];
+                    values.put(entry.getKey(), times);
+                }
+                times[(int) ++times[0]] = entry.getValue();
+            }
+        }
+        Map<String, Long> medians = new HashMap<String, Long>(values.size() * 4 / 3 + 1);
+        for (Map.Entry<String, long[]> entry : values.entrySet()) {
+            long[] times = entry.getValue();
+            int count = (int) times[0];
+            Arrays.sort(times, 1, count + 1);
+            medians.put(entry.getKey(), times[1 + (count - 1) / 2]);
+        }
+        return medians;
+    }
+
+    /**
+     * An assert or package, which got slower than the baseline
+     */
+    static final class Regression {
+        private final String kind;
+        private final String name;
+        private final long baselineMicros;
+        private final long currentMicros;
+
+        Regression(String kind, String name, long baselineMicros, long currentMicros) {
+            this.kind = kind;
+            this.name = name;
+            this.baselineMicros = baselineMicros;
+            this.currentMicros = currentMicros;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getIncreaseMicros() {
+            return currentMicros - baselineMicros;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + ": " + baselineMicros / 1e3 + " ms -> " + currentMicros / 1e3 + " ms";
+        }
+    }
+}
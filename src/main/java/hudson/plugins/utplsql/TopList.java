@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the greatest elements offered, without keeping or sorting the others.
+ * The smallest of the kept elements is at the head of a heap, so each offer
+ * costs at most O(log capacity).
+ */
+final class TopList<T> {
+
+    private final int capacity;
+    private final Comparator<? super T> comparator;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param capacity the number of elements kept
+     * @param comparator orders the elements, the greatest are kept
+     */
+    TopList(int capacity, Comparator<? super T> comparator) {
+        this.capacity = capacity;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<T>(Math.max(1, capacity + 1), comparator);
+    }
+
+    void offer(T element) {
+        if (heap.size() < capacity) {
+            heap.add(element);
+        } else if (capacity > 0 && comparator.compare(element, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    /**
+     * @return the kept elements, greatest first
+     */
+    List<T> toList() {
+        List<T> list = new ArrayList<T>(heap);
+        Collections.sort(list, Collections.reverseOrder(comparator));
+        return list;
+    }
+}
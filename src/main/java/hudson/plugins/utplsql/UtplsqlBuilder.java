@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath.FileCallable;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import hudson.util.Secret;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Runs utPLSQL tests over JDBC on the node of the workspace and writes their
+ * dbms_output to a file in the workspace, where the {@link UtplsqlRecorder}
+ * picks it up. This replaces spooling the output with SQL*Plus.
+ * <p>
+ * The JDBC driver has to be on the classpath of the node.
+ */
+public class UtplsqlBuilder extends Builder {
+
+    private final String jdbcUrl;
+    private final String user;
+    private final Secret password;
+
+    /**
+     * name of a {@link UtplsqlRunner.Mode}
+     */
+    private final String mode;
+
+    /**
+     * the packages or suites, one per line or separated by commas; packages may be
+     * LIKE patterns, e.g. UT_%
+     */
+    private final String names;
+
+    /**
+     * number of lines of dbms_output fetched at once
+     */
+    private final int batchSize;
+
+    /**
+     * file relative to the workspace, which receives the dbms_output
+     */
+    private final String outputFile;
+
+    /**
+     * number of sessions running packages at the same time
+     */
+    private final int sessions;
+
+    @DataBoundConstructor
+    public UtplsqlBuilder(String jdbcUrl, String user, String password, String mode, String names,
+                          int batchSize, String outputFile, int sessions) {
+        this.jdbcUrl = Util.fixEmptyAndTrim(jdbcUrl);
+        this.user = Util.fixEmptyAndTrim(user);
+        this.password = Secret.fromString(password);
+        this.mode = UtplsqlRunner.Mode.TESTSUITE.name().equals(mode)
+                ? UtplsqlRunner.Mode.TESTSUITE.name() : UtplsqlRunner.Mode.TEST.name();
+        this.names = names;
+        this.batchSize = batchSize > 0 ? batchSize : UtplsqlRunner.DEFAULT_BATCH_SIZE;
+        this.outputFile = Util.fixEmptyAndTrim(outputFile) == null ? "utplsql-output.log" : outputFile.trim();
+        this.sessions = Math.max(1, sessions);
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return the password, the configuration page only shows it encrypted
+     */
+    public Secret getPassword() {
+        return password;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public String getNames() {
+        return names;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return the packages or suites in the configured order
+     */
+    List<String> getNameList() {
+        List<String> list = new ArrayList<String>();
+        if (names != null) {
+            for (String name : names.split("[,\\s]+")) {
+                if (name.length() > 0) {
+                    list.add(name);
+                }
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws InterruptedException, IOException {
+        List<String> nameList = getNameList();
+        if (nameList.isEmpty()) {
+            throw new AbortException("No utPLSQL packages or suites to run. Configuration error?");
+        }
+        UtplsqlRunner.ConnectionFactory connections = new UtplsqlRunner.JdbcConnectionFactory(
+                jdbcUrl, user, password);
+        listener.getLogger().println("Running " + nameList.size() + " utPLSQL "
+                + (UtplsqlRunner.Mode.TESTSUITE.name().equals(mode) ? "suites" : "packages")
+                + " on " + jdbcUrl + (getSessions() > 1 ? " in " + getSessions() + " sessions" : ""));
+        long lines = build.getWorkspace().act(new RunTestsCallable(connections,
+                UtplsqlRunner.Mode.valueOf(mode), nameList, batchSize, outputFile, getSessions(),
+                expectedMicros(build), listener));
+        listener.getLogger().println("Wrote " + lines + " lines of dbms_output to " + outputFile);
+        return true;
+    }
+
+    /**
+     * @return the duration of each package in the last build with utPLSQL results, see
+     *         {@link ParallelRunner#expected}
+     */
+    static HashMap<String, Long> expectedMicros(AbstractBuild<?, ?> build) {
+        for (AbstractBuild<?, ?> previous = build.getPreviousBuild(); previous != null;
+                previous = previous.getPreviousBuild()) {
+            UtplsqlResultAction action = previous.getAction(UtplsqlResultAction.class);
+            if (action != null) {
+                return expectedMicros(action.getResult().getPackages());
+            }
+        }
+        return new HashMap<String, Long>();
+    }
+
+    /**
+     * A package run more than once is expected to take the sum of its runs. The names
+     * are configured with or without schema, so each package is found by both. Of the
+     * packages of the same name in several schemas, the name alone finds the longest.
+     * @return the duration by upper case <code>SCHEMA.NAME</code> and by name alone
+     */
+    static HashMap<String, Long> expectedMicros(List<PackageEntry> packages) {
+        HashMap<String, Long> qualified = new HashMap<String, Long>();
+        for (PackageEntry entry : packages) {
+            String key = entry.getQualifiedName().toUpperCase(Locale.ENGLISH);
+            Long micros = qualified.get(key);
+            qualified.put(key, micros == null ? entry.getElapsedMicros() : micros + entry.getElapsedMicros());
+        }
+        HashMap<String, Long> expected = new HashMap<String, Long>(qualified);
+        for (Map.Entry<String, Long> entry : qualified.entrySet()) {
+            String name = entry.getKey().substring(entry.getKey().lastIndexOf('.') + 1);
+            Long micros = expected.get(name);
+            if (micros == null || micros < entry.getValue()) {
+                expected.put(name, entry.getValue());
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Runs the tests on the node of the workspace and writes the output file
+     */
+    static final class RunTestsCallable implements FileCallable<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final UtplsqlRunner.ConnectionFactory connections;
+        private final UtplsqlRunner.Mode mode;
+        private final List<String> names;
+        private final int batchSize;
+        private final String outputFile;
+        private final int sessions;
+        private final HashMap<String, Long> expectedMicros;
+        private final TaskListener listener;
+
+        RunTestsCallable(UtplsqlRunner.ConnectionFactory connections, UtplsqlRunner.Mode mode,
+                         List<String> names, int batchSize, String outputFile, int sessions,
+                         HashMap<String, Long> expectedMicros, TaskListener listener) {
+            this.connections = connections;
+            this.mode = mode;
+            this.names = names;
+            this.batchSize = batchSize;
+            this.outputFile = outputFile;
+            this.sessions = sessions;
+            this.expectedMicros = expectedMicros;
+            this.listener = listener;
+        }
+
+        public Long invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+            File file = new File(workspace, outputFile);
+            File parent = file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"),
+                    64 * 1024);
+            // the output is parsed while the tests run, to report failures right away
+            ProgressReport report = new ProgressReport(listener.getLogger());
+            final IncrementalParser parser = new IncrementalParser(0, null, report);
+            try {
+                ParallelRunner runner = new ParallelRunner(connections, batchSize, sessions);
+                List<String> packages = mode == UtplsqlRunner.Mode.TEST ? runner.discover(names) : names;
+                long lines = runner.run(mode, packages, expectedMicros,
+                        new DbmsOutputReader.LineHandler() {
+                            public void line(char[] chars, int offset, int length) throws IOException {
+                                out.write(chars, offset, length);
+                                out.write('\n');
+                                parser.line(chars, offset, length);
+                            }
+                        });
+                parser.finish();
+                report.summary();
+                return lines;
+            } catch (SQLException e) {
+                throw new AbortException("utPLSQL run failed: " + e.getMessage());
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Logs each package and the first failed asserts as soon as they are parsed
+     */
+    static final class ProgressReport implements IncrementalParser.Listener {
+        static final int LOGGED_FAILURES = 50;
+
+        private final PrintStream logger;
+        private int packages;
+        private int total;
+        private int failures;
+
+        ProgressReport(PrintStream logger) {
+            this.logger = logger;
+        }
+
+        public void testcase(Testcase testcase) {
+            total++;
+            if (testcase.isFailed() && ++failures <= LOGGED_FAILURES) {
+                logger.println("  FAILURE " + testcase.getClassName() + "." + testcase.getName());
+            }
+        }
+
+        public void testPackage(TestPackage testPackage) {
+            packages++;
+            logger.println(testPackage.getName() + ": " + testPackage.getTotalCount() + " asserts, "
+                    + testPackage.getFailures() + " failed");
+        }
+
+        void summary() {
+            logger.println("utPLSQL ran " + total + " asserts in " + packages + " packages, "
+                    + failures + " failed");
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BuildStepDescriptor<Builder> {
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.UtplsqlBuilder_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.Api;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Shows the {@link ResultDiff} of a build against the previous build with utPLSQL
+ * results, and on request against any other build. The diff against the previous
+ * build is computed when the results are recorded and kept in a file of the build;
+ * it is also available through the remote API for notifications.
+ */
+@ExportedBean
+public class UtplsqlDiffAction implements Action {
+
+    private static final Logger LOGGER = Logger.getLogger(UtplsqlDiffAction.class.getName());
+
+    private final AbstractBuild<?, ?> owner;
+    private final double relativeThreshold;
+    private final double absoluteThresholdMillis;
+
+    private transient SoftReference<ResultDiff> diff;
+
+    /**
+     * @param owner the build, whose directory contains the diff
+     * @param diff the diff, which was saved in the directory of the build
+     * @param relativeThreshold the thresholds of slower asserts, see {@link ResultDiff#of}
+     * @param absoluteThresholdMillis the thresholds of slower asserts, see {@link ResultDiff#of}
+     */
+    public UtplsqlDiffAction(AbstractBuild<?, ?> owner, ResultDiff diff, double relativeThreshold,
+                             double absoluteThresholdMillis) {
+        this.owner = owner;
+        this.diff = new SoftReference<ResultDiff>(diff);
+        this.relativeThreshold = relativeThreshold;
+        this.absoluteThresholdMillis = absoluteThresholdMillis;
+    }
+
+    public AbstractBuild<?, ?> getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the diff against the previous build, null if it cannot be loaded
+     */
+    @Exported(inline = true)
+    public synchronized ResultDiff getDiff() {
+        ResultDiff loaded = diff == null ? null : diff.get();
+        if (loaded == null) {
+            File file = new File(owner.getRootDir(), ResultDiff.FILE_NAME);
+            try {
+                loaded = ResultDiff.load(file);
+                diff = new SoftReference<ResultDiff>(loaded);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @param reference the number of the reference build, the previous build if empty
+     * @return the diff against the reference build, null if it has no utPLSQL results
+     */
+    public ResultDiff getDiff(String reference) throws IOException {
+        if (reference == null || reference.trim().length() == 0) {
+            return getDiff();
+        }
+        int number;
+        try {
+            number = Integer.parseInt(reference.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        AbstractBuild<?, ?> build = owner.getProject().getBuildByNumber(number);
+        UtplsqlResultAction referenceAction = build == null ? null : build.getAction(UtplsqlResultAction.class);
+        UtplsqlResultAction action = owner.getAction(UtplsqlResultAction.class);
+        if (referenceAction == null || action == null) {
+            return null;
+        }
+        return ResultDiff.of(new HistoryIndex(owner.getProject().getRootDir()), number,
+                referenceAction.getTotalCount(), action.getResult().getResult(), relativeThreshold,
+                absoluteThresholdMillis);
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    public String getIconFileName() {
+        return "document.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.UtplsqlDiffAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "utplsqlDiff";
+    }
+}
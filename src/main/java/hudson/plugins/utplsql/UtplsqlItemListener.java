@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+
+import java.io.File;
+
+/**
+ * Drops what is cached for the directory of a job, when the job is deleted or
+ * renamed, so the caches do not keep jobs, which no longer exist.
+ */
+@Extension
+public final class UtplsqlItemListener extends ItemListener {
+
+    @Override
+    public void onDeleted(Item item) {
+        HistoryIndex.invalidate(item.getRootDir());
+        SummaryIndex.invalidate(item.getRootDir());
+    }
+
+    @Override
+    public void onRenamed(Item item, String oldName, String newName) {
+        // the directory of a job is named like the job
+        File oldDirectory = new File(item.getRootDir().getParentFile(), oldName);
+        HistoryIndex.invalidate(oldDirectory);
+        SummaryIndex.invalidate(oldDirectory);
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+/**
+ * Classifies single lines of the utPLSQL dbms_output by their leading characters
+ * and extracts the fields of package headers and testcase lines by scanning over
+ * a reused char buffer. No regular expressions are involved; lines which don't have
+ * the expected form are reported as not well formed, so that {@link Testcase} can
+ * fall back to its regular expression.
+ * <p>
+ * One instance is meant to be used by one parser thread only.
+ */
+final class UtplsqlLineLexer {
+
+    enum LineType {
+        /** <code>SUCCESS: "SCHEMA.PACKAGE"</code> or <code>FAILURE: "SCHEMA.PACKAGE"</code> */
+        PACKAGE,
+        /** <code>SUCCESS - PACKAGE.PROCEDURE ...</code> or <code>FAILURE - PACKAGE.PROCEDURE ...</code> */
+        TESTCASE,
+        /** lines starting with "&gt;", e.g. the ascii art banners */
+        OUTPUT,
+        /** <code>Ran setup</code> or <code>Ran teardown</code> */
+        FIXTURE,
+        /** <code>SUITE SUCCESS: "NAME"</code>, <code>SUITE FAILURE: "NAME"</code> or <code>SUITE STATS: ...</code> */
+        SUITE,
+        /** anything else, e.g. continuation lines of a message */
+        OTHER
+    }
+
+    private static final char[] SUCCESS = Testcase.SUCCESS.name().toCharArray();
+    private static final char[] FAILURE = Testcase.FAILURE.name().toCharArray();
+    private static final char[] ELAPSED_SUFFIX = " ms]".toCharArray();
+    private static final char[] SETUP = "Ran setup".toCharArray();
+    private static final char[] TEARDOWN = "Ran teardown".toCharArray();
+    private static final char[] SUITE = "SUITE ".toCharArray();
+
+    /**
+     * maximum length of an oracle identifier
+     */
+    private static final int MAX_IDENTIFIER_LENGTH = 30;
+
+    private char[] buffer = new char[512];
+
+    /**
+     * bounds of the current line without leading and trailing whitespace
+     */
+    private int start;
+    private int end;
+
+    private LineType type;
+    private boolean wellFormed;
+    private Testcase.Status result;
+
+    // bounds of the extracted fields within the buffer, -1 if absent
+    private int schemaStart;
+    private int schemaEnd;
+    private int nameStart;
+    private int nameEnd;
+    private int procedureStart;
+    private int procedureEnd;
+    private int elapsedStart;
+    private int elapsedEnd;
+    private int messageStart;
+
+    /**
+     * Creates a lexer, which has already classified the given line.
+     * @param line a single line of dbms_output
+     * @return the lexer positioned on the line
+     */
+    static UtplsqlLineLexer forLine(CharSequence line) {
+        UtplsqlLineLexer lexer = new UtplsqlLineLexer();
+        lexer.lex(line);
+        return lexer;
+    }
+
+    /**
+     * Classifies a line.
+     * @param line a single line of dbms_output, without line terminator
+     * @return the type of the line
+     */
+    LineType lex(CharSequence line) {
+        int length = line.length();
+        ensureCapacity(length);
+        if (line instanceof String) {
+            ((String) line).getChars(0, length, buffer, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buffer[i] = line.charAt(i);
+            }
+        }
+        return classify(length);
+    }
+
+    /**
+     * Classifies a line, which is given as a range of a char array.
+     * @param chars the characters
+     * @param offset the start of the line
+     * @param length the length of the line, without line terminator
+     * @return the type of the line
+     */
+    LineType lex(char[] chars, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(chars, offset, buffer, 0, length);
+        return classify(length);
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+    }
+
+    private LineType classify(int length) {
+        // same as String.trim()
+        start = 0;
+        end = length;
+        while (start < end && buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buffer[end - 1] <= ' ') {
+            end--;
+        }
+
+        wellFormed = false;
+        result = null;
+        schemaStart = schemaEnd = nameStart = nameEnd = procedureStart = procedureEnd = -1;
+        elapsedStart = elapsedEnd = messageStart = -1;
+
+        if (start == end) {
+            type = LineType.OTHER;
+        } else if (buffer[start] == '>') {
+            type = LineType.OUTPUT;
+        } else if (isLine(SETUP) || isLine(TEARDOWN)) {
+            type = LineType.FIXTURE;
+        } else if (startsWith(start, SUITE)) {
+            type = LineType.SUITE;
+            scanSuite(start + SUITE.length);
+        } else {
+            int afterResult = -1;
+            if (startsWith(start, SUCCESS)) {
+                result = Testcase.SUCCESS;
+                afterResult = start + SUCCESS.length;
+            } else if (startsWith(start, FAILURE)) {
+                result = Testcase.FAILURE;
+                afterResult = start + FAILURE.length;
+            }
+            if (afterResult < 0) {
+                type = LineType.OTHER;
+            } else if (afterResult + 2 < end && buffer[afterResult] == ':'
+                    && buffer[afterResult + 1] == ' ' && buffer[afterResult + 2] == '"'
+                    && scanPackageName(afterResult + 3)) {
+                type = LineType.PACKAGE;
+            } else if (afterResult + 2 < end && buffer[afterResult] == ' '
+                    && buffer[afterResult + 1] == '-' && buffer[afterResult + 2] == ' ') {
+                type = LineType.TESTCASE;
+                wellFormed = scanTestcase(afterResult + 3);
+            } else {
+                result = null;
+                type = LineType.OTHER;
+            }
+        }
+        return type;
+    }
+
+    private boolean startsWith(int position, char[] prefix) {
+        if (end - position < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[position + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the rest of a suite line, <code>SUCCESS: "NAME"</code> or <code>FAILURE: "NAME"</code>.
+     * Other suite lines, e.g. the statistics, have no name.
+     */
+    private void scanSuite(int position) {
+        int afterResult;
+        if (startsWith(position, SUCCESS)) {
+            result = Testcase.SUCCESS;
+            afterResult = position + SUCCESS.length;
+        } else if (startsWith(position, FAILURE)) {
+            result = Testcase.FAILURE;
+            afterResult = position + FAILURE.length;
+        } else {
+            return;
+        }
+        if (afterResult + 2 < end && buffer[afterResult] == ':' && buffer[afterResult + 1] == ' '
+                && buffer[afterResult + 2] == '"') {
+            int quote = afterResult + 3;
+            while (quote < end && buffer[quote] != '"') {
+                quote++;
+            }
+            if (quote < end) {
+                nameStart = afterResult + 3;
+                nameEnd = quote;
+                wellFormed = true;
+                return;
+            }
+        }
+        result = null;
+    }
+
+    /**
+     * Scans <code>SCHEMA.PACKAGE" anything</code>, the schema is optional.
+     */
+    private boolean scanPackageName(int position) {
+        int quote = -1;
+        int lastDot = -1;
+        for (int i = position; i < end; i++) {
+            if (buffer[i] == '"') {
+                quote = i;
+                break;
+            } else if (buffer[i] == '.') {
+                lastDot = i;
+            }
+        }
+        if (quote < 0) {
+            return false;
+        }
+        if (lastDot >= 0) {
+            schemaStart = position;
+            schemaEnd = lastDot;
+        }
+        nameStart = lastDot < 0 ? position : lastDot + 1;
+        nameEnd = quote;
+        wellFormed = true;
+        return true;
+    }
+
+    /**
+     * @return true if the line is exactly the given text
+     */
+    private boolean isLine(char[] text) {
+        return end - start == text.length && startsWith(start, text);
+    }
+
+    /**
+     * Scans <code>1,101 ms]</code>
+     * @return the position after the closing bracket, -1 if there is no elapsed time
+     */
+    private int scanElapsed(int position) {
+        int i = position;
+        elapsedStart = i;
+        while (i < end && (Character.isDigit(buffer[i]) || buffer[i] == ',' || buffer[i] == '.')) {
+            i++;
+        }
+        if (i == elapsedStart || !startsWith(i, ELAPSED_SUFFIX)) {
+            elapsedStart = -1;
+            return -1;
+        }
+        elapsedEnd = i;
+        return i + ELAPSED_SUFFIX.length;
+    }
+
+    /**
+     * Scans <code>PACKAGE.PROCEDURE [1,101 ms] : message</code>, where the
+     * elapsed time is optional and the spaces around the colon are optional.
+     */
+    private boolean scanTestcase(int position) {
+        int i = position;
+        while (i < end && buffer[i] != '.') {
+            i++;
+        }
+        if (i == end || i - position > MAX_IDENTIFIER_LENGTH) {
+            return false;
+        }
+        nameStart = position;
+        nameEnd = i;
+
+        procedureStart = ++i;
+        while (i < end && buffer[i] != ' ' && buffer[i] != ':' && buffer[i] != '"' && buffer[i] != '[') {
+            i++;
+        }
+        if (i - procedureStart > MAX_IDENTIFIER_LENGTH) {
+            return false;
+        }
+        procedureEnd = i;
+
+        // optional " [1,101 ms] "
+        int elapsed = (i < end && buffer[i] == ' ') ? i + 1 : i;
+        if (elapsed < end && buffer[elapsed] == '[') {
+            i = scanElapsed(elapsed + 1);
+            if (i < 0) {
+                return false;
+            }
+            if (i < end && buffer[i] == ' ') {
+                i++;
+            }
+        }
+
+        // " ?: ?"
+        if (i < end && buffer[i] == ' ') {
+            i++;
+        }
+        if (i == end || buffer[i] != ':') {
+            return false;
+        }
+        i++;
+        if (i < end && buffer[i] == ' ') {
+            i++;
+        }
+        messageStart = i;
+        return true;
+    }
+
+    LineType getType() {
+        return type;
+    }
+
+    /**
+     * @return false if the current line is a testcase, but could not be scanned
+     */
+    boolean isWellFormed() {
+        return wellFormed;
+    }
+
+    /**
+     * @return {@link Testcase#SUCCESS} or {@link Testcase#FAILURE} for suites, packages and testcases
+     */
+    Testcase.Status getResult() {
+        return result;
+    }
+
+    /**
+     * @return the schema of a package line, null if there is none
+     */
+    String getSchema() {
+        return schemaStart < 0 ? null : new String(buffer, schemaStart, schemaEnd - schemaStart);
+    }
+
+    /**
+     * @return the name of a suite line with a result, null for other suite lines
+     */
+    String getSuiteName() {
+        return type == LineType.SUITE ? getPackageName() : null;
+    }
+
+    /**
+     * @return the package name of a package or testcase line
+     */
+    String getPackageName() {
+        return nameStart < 0 ? null : new String(buffer, nameStart, nameEnd - nameStart);
+    }
+
+    /**
+     * @param known a name, which is returned instead of a new String if it is equal
+     * @return the package name of a package or testcase line
+     */
+    String getPackageName(String known) {
+        if (nameStart < 0) {
+            return null;
+        }
+        int length = nameEnd - nameStart;
+        if (known == null || known.length() != length) {
+            return getPackageName();
+        }
+        for (int i = 0; i < length; i++) {
+            if (known.charAt(i) != buffer[nameStart + i]) {
+                return getPackageName();
+            }
+        }
+        return known;
+    }
+
+    String getProcedure() {
+        return procedureStart < 0 ? null : new String(buffer, procedureStart, procedureEnd - procedureStart);
+    }
+
+    /**
+     * @return the elapsed time in ms like it is printed, or null if there is none
+     */
+    String getElapsedTime() {
+        return elapsedStart < 0 ? null : new String(buffer, elapsedStart, elapsedEnd - elapsedStart);
+    }
+
+    /**
+     * @return the elapsed time in microseconds, 0 if there is none
+     */
+    long getElapsedMicros() {
+        return elapsedStart < 0 ? 0 : Testcase.toMicros(buffer, elapsedStart, elapsedEnd);
+    }
+
+    String getMessage() {
+        return messageStart < 0 ? null : new String(buffer, messageStart, end - messageStart);
+    }
+
+    /**
+     * @return the current line without leading and trailing whitespace
+     */
+    String getLine() {
+        return new String(buffer, start, end - start);
+    }
+}
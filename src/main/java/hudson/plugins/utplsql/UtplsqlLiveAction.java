@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.Api;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * The results of a running build so far, parsed while the utPLSQL tests are still
+ * running. It only lives while the build step runs; the results of the finished
+ * build are published by the {@link UtplsqlRecorder}.
+ */
+@ExportedBean
+public class UtplsqlLiveAction implements Action, IncrementalParser.Listener {
+
+    /**
+     * number of failed asserts shown, the latest ones
+     */
+    static final int SHOWN_FAILURES = 100;
+
+    /**
+     * messages of failed asserts are cut to this length
+     */
+    static final int MESSAGE_LENGTH = 500;
+
+    private final transient AbstractBuild<?, ?> owner;
+    private transient int total;
+    private transient int failCount;
+    private transient int packages;
+    private transient long bytesRead;
+    private transient long lastUpdate;
+    private transient LinkedList<Failure> failures = new LinkedList<Failure>();
+
+    public UtplsqlLiveAction(AbstractBuild<?, ?> owner) {
+        this.owner = owner;
+    }
+
+    public AbstractBuild<?, ?> getOwner() {
+        return owner;
+    }
+
+    public synchronized void testcase(Testcase testcase) {
+        total++;
+        if (testcase.isFailed()) {
+            failCount++;
+            failures.addFirst(new Failure(testcase));
+            if (failures.size() > SHOWN_FAILURES) {
+                failures.removeLast();
+            }
+        }
+    }
+
+    public synchronized void testPackage(TestPackage testPackage) {
+        packages++;
+    }
+
+    /**
+     * @param bytes the number of bytes read by a poll
+     */
+    synchronized void polled(long bytes) {
+        bytesRead += bytes;
+        lastUpdate = System.currentTimeMillis();
+    }
+
+    @Exported
+    public synchronized int getTotalCount() {
+        return total;
+    }
+
+    @Exported
+    public synchronized int getFailCount() {
+        return failCount;
+    }
+
+    /**
+     * @return the number of completed packages
+     */
+    @Exported
+    public synchronized int getPackageCount() {
+        return packages;
+    }
+
+    @Exported
+    public synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the time of the last poll in milliseconds, 0 before the first poll
+     */
+    @Exported
+    public synchronized long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * @return the latest failed asserts, the latest first
+     */
+    @Exported
+    public synchronized List<Failure> getFailures() {
+        return new ArrayList<Failure>(failures);
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.UtplsqlLiveAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "utplsqlLive";
+    }
+
+    /**
+     * A failed assert
+     */
+    @ExportedBean
+    public static final class Failure {
+        private final String packageName;
+        private final String name;
+        private final String message;
+
+        Failure(Testcase testcase) {
+            this.packageName = testcase.getClassName();
+            this.name = testcase.getStableName();
+            String text = testcase.getMessage();
+            this.message = text != null && text.length() > MESSAGE_LENGTH
+                    ? text.substring(0, MESSAGE_LENGTH) + "..." : text;
+        }
+
+        @Exported
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * @return the name of the assert without the counter of its package, see
+         *         {@link Testcase#getStableName()}
+         */
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        @Exported
+        public String getMessage() {
+            return message;
+        }
+    }
+}
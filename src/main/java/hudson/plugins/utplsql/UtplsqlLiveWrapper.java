@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.tasks.BuildWrapper;
+import hudson.tasks.BuildWrapperDescriptor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Shows the utPLSQL results of a build while it is still running. The files of the
+ * {@link UtplsqlRecorder} of the project are followed during the build steps and
+ * parsed as they grow, see {@link LiveFollower}. The results so far are shown by a
+ * {@link UtplsqlLiveAction}, until the build steps are done and the recorder
+ * publishes the complete results.
+ */
+public class UtplsqlLiveWrapper extends BuildWrapper {
+
+    static final int DEFAULT_POLL_SECONDS = 10;
+
+    /**
+     * seconds between two polls of the files
+     */
+    private final int pollSeconds;
+
+    @DataBoundConstructor
+    public UtplsqlLiveWrapper(int pollSeconds) {
+        this.pollSeconds = pollSeconds > 0 ? pollSeconds : DEFAULT_POLL_SECONDS;
+    }
+
+    public int getPollSeconds() {
+        return pollSeconds;
+    }
+
+    @Override
+    public Environment setUp(AbstractBuild build, Launcher launcher, BuildListener listener)
+            throws IOException, InterruptedException {
+        UtplsqlRecorder recorder = (UtplsqlRecorder) build.getProject().getPublishersList()
+                .get(UtplsqlRecorder.class);
+        if (recorder == null) {
+            listener.getLogger().println("No utPLSQL test result report is published, no live results");
+            return new Environment() {
+            };
+        }
+        final UtplsqlLiveAction action = new UtplsqlLiveAction(build);
+        final Poller poller = new Poller(build.getWorkspace(),
+                new LiveFollower(recorder.getTestResults(), recorder.getCharset(), action),
+                action, pollSeconds * 1000L, listener.getLogger());
+        build.getActions().add(action);
+        poller.start();
+        return new Environment() {
+            @Override
+            public boolean tearDown(AbstractBuild build, BuildListener listener)
+                    throws IOException, InterruptedException {
+                try {
+                    poller.finish();
+                } finally {
+                    // the recorder publishes the complete results
+                    build.getActions().remove(action);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Polls the files until the build steps are done
+     */
+    private static final class Poller extends Thread {
+        private final FilePath workspace;
+        private final LiveFollower follower;
+        private final UtplsqlLiveAction action;
+        private final long pollMillis;
+        private final PrintStream logger;
+        private boolean finished;
+        private boolean failed;
+
+        Poller(FilePath workspace, LiveFollower follower, UtplsqlLiveAction action, long pollMillis,
+               PrintStream logger) {
+            super("utPLSQL live results of " + workspace);
+            setDaemon(true);
+            this.workspace = workspace;
+            this.follower = follower;
+            this.action = action;
+            this.pollMillis = pollMillis;
+            this.logger = logger;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (waitForNextPoll()) {
+                    poll();
+                }
+            } catch (InterruptedException e) {
+                // the build is aborted
+            }
+        }
+
+        private synchronized boolean waitForNextPoll() throws InterruptedException {
+            if (!finished) {
+                wait(pollMillis);
+            }
+            return !finished;
+        }
+
+        private synchronized boolean isFinished() {
+            return finished;
+        }
+
+        private void poll() throws InterruptedException {
+            try {
+                action.polled(follower.poll(workspace));
+            } catch (IOException e) {
+                report(e);
+            } catch (RuntimeException e) {
+                // e.g. of the parser, must not end the polling silently
+                report(e);
+            }
+        }
+
+        /**
+         * reported once, the next polls may succeed. Failures of a poll interrupted
+         * by {@link #finish()} are not reported.
+         */
+        private void report(Exception e) {
+            if (!failed && !isFinished()) {
+                failed = true;
+                e.printStackTrace(logger);
+            }
+        }
+
+        /**
+         * Stops polling. The rest of the files is not read, the recorder parses the
+         * complete files right after and replaces the live results.
+         */
+        void finish() throws InterruptedException {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+            // a poll still running is not waited for
+            interrupt();
+            join();
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BuildWrapperDescriptor {
+
+        @Override
+        public boolean isApplicable(AbstractProject<?, ?> item) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.UtplsqlLiveWrapper_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.util.ColorPalette;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import hudson.util.ShiftedCategoryAxis;
+import hudson.util.StackedAreaRenderer2;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Shows the trend of the utPLSQL results on the project page. The graph and the
+ * packages failing most often are drawn from the {@link SummaryIndex} of the job,
+ * so no build has to be loaded for them.
+ */
+public class UtplsqlProjectAction implements Action {
+
+    /**
+     * number of builds shown in the graph
+     */
+    static final int MAX_BUILDS = 100;
+
+    /**
+     * number of packages shown in the list of the packages failing most often
+     */
+    static final int MAX_FAILING_PACKAGES = 10;
+
+    /**
+     * number of builds shown in the history of an assert
+     */
+    static final int MAX_HISTORY = 500;
+
+    private final AbstractProject<?, ?> project;
+
+    public UtplsqlProjectAction(AbstractProject<?, ?> project) {
+        this.project = project;
+    }
+
+    public AbstractProject<?, ?> getProject() {
+        return project;
+    }
+
+    SummaryIndex getIndex() {
+        return new SummaryIndex(project.getRootDir());
+    }
+
+    /**
+     * @return the summaries of the latest builds, which still exist, ordered by build number
+     */
+    public List<BuildSummary> getSummaries() throws IOException {
+        // the index keeps the summaries of deleted and rotated builds
+        List<BuildSummary> indexed = getIndex().readTrend(Integer.MAX_VALUE);
+        LinkedList<BuildSummary> summaries = new LinkedList<BuildSummary>();
+        for (int i = indexed.size() - 1; i >= 0 && summaries.size() < MAX_BUILDS; i--) {
+            if (project.getBuildByNumber(indexed.get(i).getBuildNumber()) != null) {
+                summaries.addFirst(indexed.get(i));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * @return the packages with the most failures in the builds of the trend, with
+     * their number of failures, most failures first
+     */
+    public List<Map.Entry<String, Integer>> getFailingPackages() throws IOException {
+        Set<Integer> buildNumbers = new HashSet<Integer>();
+        for (BuildSummary summary : getSummaries()) {
+            buildNumbers.add(summary.getBuildNumber());
+        }
+        List<Map.Entry<String, Integer>> failing = new ArrayList<Map.Entry<String, Integer>>(
+                getIndex().readPackageFailures(buildNumbers).entrySet());
+        Collections.sort(failing, new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                int difference = b.getValue() - a.getValue();
+                return difference != 0 ? difference : a.getKey().compareTo(b.getKey());
+            }
+        });
+        return failing.subList(0, Math.min(MAX_FAILING_PACKAGES, failing.size()));
+    }
+
+    /**
+     * @param id the {@link Testcase#getId() identity} of an assert
+     * @return the status and elapsed time of the assert in the latest builds, newest first
+     */
+    public List<HistoryEntry> getHistory(String id) throws IOException {
+        return new HistoryIndex(project.getRootDir()).history(id, MAX_HISTORY);
+    }
+
+    /**
+     * A trend needs at least two builds.
+     */
+    public boolean isTrendVisible() throws IOException {
+        return getSummaries().size() >= 2;
+    }
+
+    /**
+     * Renders the trend graph
+     */
+    public void doTrend(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        final List<BuildSummary> summaries = getSummaries();
+        Calendar timestamp = Calendar.getInstance();
+        timestamp.setTimeInMillis(getIndex().lastModified());
+        new Graph(timestamp, 500, 200) {
+            @Override
+            protected JFreeChart createGraph() {
+                return createChart(summaries);
+            }
+        }.doPng(req, rsp);
+    }
+
+    /**
+     * Stacks the failed and the passed tests of each build, like the test trend of Jenkins.
+     */
+    static JFreeChart createChart(List<BuildSummary> summaries) {
+        DataSetBuilder<String, BuildLabel> data = new DataSetBuilder<String, BuildLabel>();
+        for (BuildSummary summary : summaries) {
+            BuildLabel label = new BuildLabel(summary.getBuildNumber());
+            data.add(summary.getFailCount(), "failed", label);
+            data.add(summary.getPassCount(), "passed", label);
+        }
+
+        JFreeChart chart = ChartFactory.createStackedAreaChart(null, null, "count", data.build(),
+                PlotOrientation.VERTICAL, false, true, false);
+        chart.setBackgroundPaint(Color.white);
+
+        CategoryPlot plot = chart.getCategoryPlot();
+        plot.setBackgroundPaint(Color.WHITE);
+        plot.setOutlinePaint(null);
+        plot.setForegroundAlpha(0.8f);
+        plot.setRangeGridlinesVisible(true);
+        plot.setRangeGridlinePaint(Color.black);
+
+        CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+        plot.setDomainAxis(domainAxis);
+        domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+        domainAxis.setLowerMargin(0.0);
+        domainAxis.setUpperMargin(0.0);
+        domainAxis.setCategoryMargin(0.0);
+
+        NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+        rangeAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+
+        StackedAreaRenderer2 renderer = new StackedAreaRenderer2();
+        plot.setRenderer(renderer);
+        renderer.setSeriesPaint(0, ColorPalette.RED);
+        renderer.setSeriesPaint(1, ColorPalette.BLUE);
+        return chart;
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "utplsqlTrend";
+    }
+
+    /**
+     * Column of the graph. Only the build number is known, the build is not loaded.
+     */
+    static final class BuildLabel implements Comparable<BuildLabel> {
+        private final int number;
+
+        BuildLabel(int number) {
+            this.number = number;
+        }
+
+        public int compareTo(BuildLabel that) {
+            return number < that.number ? -1 : (number == that.number ? 0 : 1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BuildLabel && ((BuildLabel) o).number == number;
+        }
+
+        @Override
+        public int hashCode() {
+            return number;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + number;
+        }
+    }
+}
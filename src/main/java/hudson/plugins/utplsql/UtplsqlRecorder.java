@@ -23,14 +23,19 @@
  */
 package hudson.plugins.utplsql;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 
 import hudson.AbortException;
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
@@ -40,13 +45,10 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Recorder;
 import hudson.tasks.Publisher;
-import hudson.tasks.junit.TestResultAction;
-import hudson.tasks.junit.TestResult;
-import hudson.tasks.test.TestResultProjectAction;
+import hudson.util.FormValidation;
 
 /**
- * A recorder for Testresults from utPLSQL. Currently, the Testresult-classes from JUnit
- * are use, but it is planned to write some more suited to utPLSQL
+ * A recorder for Testresults from utPLSQL.
  */
 public class UtplsqlRecorder extends Recorder implements Serializable{
 
@@ -56,11 +58,67 @@ public class UtplsqlRecorder extends Recorder implements Serializable{
      * {@link FileSet} "includes" string, like "foo/bar/*.log"
      */
     private final String testResults;
-    
-	@DataBoundConstructor
+
+    /**
+     * number of files parsed concurrently, values below 2 parse one file after the other
+     */
+    private final int parallelism;
+
+    /**
+     * name of the charset of the dbms_output files, empty for the default of the node
+     */
+    private final String charset;
+
+    /**
+     * directory relative to the workspace, where the results are written as jUnit
+     * xml files, null to write none
+     */
+    private final String junitOutputDirectory;
+
+    /**
+     * maximum length of a message, longer messages are truncated and written to a
+     * side file of the build. 0 for no limit
+     */
+    private final int maxMessageLength;
+
+    /**
+     * checks the elapsed times against a baseline, null to not check them
+     */
+    private final TimingGate timingGate;
+
+    /**
+     * maximum size of the {@link ParseCache} on each node in megabytes, 0 for no cache
+     */
+    private final int parseCacheMegabytes;
+
     public UtplsqlRecorder(String testResults)
+    {
+    	this(testResults, 1, null, null, 0);
+    }
+
+    public UtplsqlRecorder(String testResults, int parallelism, String charset,
+    		String junitOutputDirectory, int maxMessageLength)
+    {
+    	this(testResults, parallelism, charset, junitOutputDirectory, maxMessageLength, null);
+    }
+
+    public UtplsqlRecorder(String testResults, int parallelism, String charset,
+    		String junitOutputDirectory, int maxMessageLength, TimingGate timingGate)
+    {
+    	this(testResults, parallelism, charset, junitOutputDirectory, maxMessageLength, timingGate, 0);
+    }
+
+	@DataBoundConstructor
+    public UtplsqlRecorder(String testResults, int parallelism, String charset,
+    		String junitOutputDirectory, int maxMessageLength, TimingGate timingGate, int parseCacheMegabytes)
     {
     	this.testResults = testResults;
+    	this.parallelism = parallelism;
+    	this.charset = Util.fixEmptyAndTrim(charset);
+    	this.junitOutputDirectory = Util.fixEmptyAndTrim(junitOutputDirectory);
+    	this.maxMessageLength = maxMessageLength;
+    	this.timingGate = timingGate;
+    	this.parseCacheMegabytes = Math.max(0, parseCacheMegabytes);
     }
     /**
      * necessary for displaying the current configuration in the Job configuration
@@ -70,6 +128,30 @@ public class UtplsqlRecorder extends Recorder implements Serializable{
 		return testResults;
 	}
 
+    public int getParallelism() {
+		return parallelism;
+	}
+
+    public String getCharset() {
+		return charset;
+	}
+
+    public String getJunitOutputDirectory() {
+		return junitOutputDirectory;
+	}
+
+    public int getMaxMessageLength() {
+		return maxMessageLength;
+	}
+
+    public TimingGate getTimingGate() {
+		return timingGate;
+	}
+
+    public int getParseCacheMegabytes() {
+		return parseCacheMegabytes;
+	}
+
 
     // Copied from from HelloWorldBuilder. don't really know what it means, but it seems not to harm. 
     // overrided for better type safety.
@@ -86,12 +168,13 @@ public class UtplsqlRecorder extends Recorder implements Serializable{
 
 	/**
 	 * This is necessary, to display the test results on the Project page already, not only for a single build.
+	 * The trend is drawn from the {@link SummaryIndex} of the job instead of the results of all builds.
 	 */
     @Override
     public Action getProjectAction(AbstractProject<?,?> project) {
-        TestResultProjectAction action = project.getAction(TestResultProjectAction.class);
+        UtplsqlProjectAction action = project.getAction(UtplsqlProjectAction.class);
         if (action == null) {
-            return new TestResultProjectAction(project);
+            return new UtplsqlProjectAction(project);
         } else {
             return action;
         }
@@ -100,36 +183,95 @@ public class UtplsqlRecorder extends Recorder implements Serializable{
     @Override
 	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
 			BuildListener listener) throws InterruptedException, IOException {
-    	//a rough copy from the jUnit Recorder and NUnit recorder, since we just want to use that one first,
-    	//before developing our own.
+    	UtplsqlTestResultParser parser = new UtplsqlTestResultParser(parallelism, charset, junitOutputDirectory,
+    			maxMessageLength, parseCacheMegabytes * 1024L * 1024);
+    	long start = System.nanoTime();
+    	EncodedResult result = parser.parse(testResults, build, listener);
+    	PublishStatistics statistics = result.getStatistics();
+    	// whatever was not measured on the node is the overhead of the transfer
+    	statistics.add(PublishStatistics.Phase.TRANSFER, System.nanoTime() - start
+    			- statistics.getNanos(PublishStatistics.Phase.LIST)
+    			- statistics.getNanos(PublishStatistics.Phase.PARSE)
+    			- statistics.getNanos(PublishStatistics.Phase.JUNIT)
+    			- statistics.getNanos(PublishStatistics.Phase.ENCODE));
 
-    	UtplsqlTestResultParser parser = new UtplsqlTestResultParser();
-    	TestResult testResult = parser.parse(testResults, build, launcher, listener);
-    	
-        TestResultAction action;
-        
-    	try {
-			action = new TestResultAction(build, testResult, listener);
-		} catch (NullPointerException npe) {
-			throw new AbortException("Bad XML");
-		}
-		testResult.freeze(action);
-		if (testResult.getPassCount() == 0 && testResult.getFailCount() == 0)
+		if (result.getTotalCount() == 0)
 			throw new AbortException("Result is empty");
 
+		start = System.nanoTime();
+		UtplsqlResult decoded = result.getResult();
+		statistics.finished(PublishStatistics.Phase.DECODE, start);
+
+		start = System.nanoTime();
+		ResultStore.write(new File(build.getRootDir(), ResultStore.FILE_NAME), decoded);
+		decoded.getTree().save(new File(build.getRootDir(), ResultNode.FILE_NAME));
+		UtplsqlResultAction action = new UtplsqlResultAction(build, decoded);
 		build.getActions().add(action);
+		build.getActions().add(new UtplsqlStatisticsAction(statistics));
+		TimingAnalysis timing = TimingAnalysis.of(decoded, TimingAnalysis.TOP_COUNT);
+		timing.save(new File(build.getRootDir(), TimingAnalysis.FILE_NAME));
+		build.getActions().add(new UtplsqlTimingAction(build, timing));
+		SummaryIndex summaryIndex = new SummaryIndex(build.getProject().getRootDir());
+		summaryIndex.append(BuildSummary.of(build.getNumber(), decoded));
+		summaryIndex.compact(buildNumbers(build.getProject()));
+		new HistoryIndex(build.getProject().getRootDir()).append(build.getNumber(), decoded);
+		UtplsqlDiffAction diffAction = diff(build, decoded);
+		if (diffAction != null)
+			build.getActions().add(diffAction);
+		statistics.finished(PublishStatistics.Phase.ACTION, start);
+		listener.getLogger().println(statistics);
 
-		if (action.getResult().getFailCount() > 0)
+		if (diffAction != null)
+			listener.getLogger().println(diffAction.getDiff().describe());
+
+		if (action.getFailCount() > 0)
 			build.setResult(Result.UNSTABLE);
 
-		//Not realy nice, to hardcode the path, but will be removed anyway, as soon
-		//as the jUnit-part is skipped
-    	build.getWorkspace().child("utPlsql-temporary").deleteRecursive();
-		
+		if (timingGate != null) {
+			Result timingResult = timingGate.check(build, decoded, listener.getLogger());
+			if (timingResult != null) {
+				action.setTimingRegressed(true);
+				build.setResult(timingResult);
+			}
+		}
+
     	return true;
     }
 
 
+	/**
+	 * Compares the result with the previous build with utPLSQL results. Asserts got slower
+	 * by the thresholds of the {@link TimingGate}, if there is one.
+	 * @return the action with the diff, which is saved in the build directory, null if no
+	 * previous build has utPLSQL results
+	 */
+	private UtplsqlDiffAction diff(AbstractBuild<?, ?> build, UtplsqlResult decoded) throws IOException {
+		for (AbstractBuild<?, ?> previous = build.getPreviousBuild(); previous != null;
+				previous = previous.getPreviousBuild()) {
+			UtplsqlResultAction previousAction = previous.getAction(UtplsqlResultAction.class);
+			if (previousAction != null) {
+				double relative = timingGate != null ? timingGate.getRelativeThreshold() : ResultDiff.SLOWER_PERCENT;
+				double absolute = timingGate != null ? timingGate.getAbsoluteThresholdMillis() : ResultDiff.SLOWER_MILLIS;
+				ResultDiff diff = ResultDiff.of(new HistoryIndex(build.getProject().getRootDir()),
+						previous.getNumber(), previousAction.getTotalCount(), decoded, relative, absolute);
+				diff.save(new File(build.getRootDir(), ResultDiff.FILE_NAME));
+				return new UtplsqlDiffAction(build, diff, relative, absolute);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the numbers of the builds the project still has, the others are dropped from the {@link SummaryIndex}
+	 */
+	private static Set<Integer> buildNumbers(AbstractProject<?, ?> project) {
+		Set<Integer> numbers = new HashSet<Integer>();
+		for (AbstractBuild<?, ?> build : project.getBuilds()) {
+			numbers.add(build.getNumber());
+		}
+		return numbers;
+	}
+
 	@Extension
     public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
 
@@ -142,6 +284,19 @@ public class UtplsqlRecorder extends Recorder implements Serializable{
 		public String getDisplayName() {
 			return Messages.UtplsqlRecorder_DisplayName();
 		}
+
+		/**
+		 * Checks, whether the charset is available on the master. Since the files
+		 * are read on the node of the workspace, this is just a hint.
+		 */
+		public FormValidation doCheckCharset(@QueryParameter String value) {
+			try {
+				DbmsOutputReader.toCharset(value);
+				return FormValidation.ok();
+			} catch (IllegalArgumentException e) {
+				return FormValidation.error(Messages.UtplsqlRecorder_UnknownCharset(value));
+			}
+		}
     	
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The complete result of one utPLSQL run, built directly from the parsed
+ * {@link TestPackage}s. Replaces the fake jUnit files, which were written to the
+ * workspace and parsed again just to get a jUnit TestResult.
+ * @see TestPackage
+ */
+public class UtplsqlResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the packages in the order they were found in the dbms_output files
+     */
+    private final List<TestPackage> packages = new ArrayList<TestPackage>();
+
+    /**
+     * the hierarchy of the packages, which grows with each package added.
+     * Null after deserialization until it is needed.
+     */
+    private transient ResultNode tree = ResultNode.root();
+
+    /**
+     * Add a package to this result
+     * @param testPackage the package to add
+     */
+    public void add(TestPackage testPackage) {
+        this.packages.add(testPackage);
+        if (tree != null) {
+            tree.add(testPackage, packages.size() - 1);
+        }
+    }
+
+    /**
+     * @return the root of the hierarchy of suites, schemas, packages and procedures
+     */
+    public ResultNode getTree() {
+        if (tree == null) {
+            ResultNode root = ResultNode.root();
+            for (int i = 0; i < packages.size(); i++) {
+                root.add(packages.get(i), i);
+            }
+            tree = root;
+        }
+        return tree;
+    }
+
+    public List<TestPackage> getPackages() {
+        return Collections.unmodifiableList(packages);
+    }
+
+    /**
+     * @param qualifiedName <code>SCHEMA.NAME</code> of the package, only the name if the log names no schema
+     * @return the package, or null if there is none
+     */
+    public TestPackage getPackage(String qualifiedName) {
+        for (TestPackage testPackage : packages) {
+            if (testPackage.getQualifiedName().equals(qualifiedName)) {
+                return testPackage;
+            }
+        }
+        return null;
+    }
+
+    public int getTotalCount() {
+        int count = 0;
+        for (TestPackage testPackage : packages) {
+            count += testPackage.getTotalCount();
+        }
+        return count;
+    }
+
+    public int getFailCount() {
+        int count = 0;
+        for (TestPackage testPackage : packages) {
+            count += testPackage.getFailures();
+        }
+        return count;
+    }
+
+    public int getPassCount() {
+        return getTotalCount() - getFailCount();
+    }
+
+    /**
+     * @return the sum of the elapsed times of all testcases in seconds
+     */
+    public double getDuration() {
+        double duration = 0.0;
+        for (TestPackage testPackage : packages) {
+            duration += testPackage.getDuration();
+        }
+        return duration;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.model.AbstractBuild;
+import hudson.tasks.test.AbstractTestResultAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.StaplerProxy;
+
+/**
+ * Attaches an {@link UtplsqlResult} to a build. Since this is an
+ * {@link AbstractTestResultAction}, the test trend on the project page
+ * keeps working like it did with the jUnit results.
+ * <p>
+ * The action itself only keeps the counts, the result is stored in the
+ * {@link ResultStore#FILE_NAME file} of the build and loaded on demand, so
+ * loading a build does not load its testcases.
+ */
+public class UtplsqlResultAction extends AbstractTestResultAction<UtplsqlResultAction>
+        implements StaplerProxy {
+
+    private static final Logger LOGGER = Logger.getLogger(UtplsqlResultAction.class.getName());
+
+    private int totalCount;
+    private int failCount;
+
+    /**
+     * true if the {@link TimingGate} found times, which regressed
+     */
+    private boolean timingRegressed;
+
+    private transient StoredResult stored;
+
+    /**
+     * @param owner the build, whose directory contains the result file
+     * @param result the result, which was written to the result file
+     */
+    public UtplsqlResultAction(AbstractBuild<?, ?> owner, UtplsqlResult result) {
+        super(owner);
+        this.totalCount = result.getTotalCount();
+        this.failCount = result.getFailCount();
+    }
+
+    /**
+     * @return the result, only its package directory is loaded
+     */
+    @Override
+    public synchronized StoredResult getResult() {
+        if (stored == null) {
+            File file = new File(owner.getRootDir(), ResultStore.FILE_NAME);
+            try {
+                stored = ResultStore.open(file);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+                stored = new StoredResult(null, 0, 0, Collections.<PackageEntry>emptyList());
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * @return true if the {@link TimingGate} found times, which regressed, so the build
+     * is no baseline of the gate
+     */
+    public boolean isTimingRegressed() {
+        return timingRegressed;
+    }
+
+    void setTimingRegressed(boolean timingRegressed) {
+        this.timingRegressed = timingRegressed;
+    }
+
+    @Override
+    public int getFailCount() {
+        return failCount;
+    }
+
+    @Override
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * The result renders the test report pages.
+     */
+    public Object getTarget() {
+        return getResult();
+    }
+}
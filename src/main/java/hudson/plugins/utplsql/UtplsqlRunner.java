@@ -0,0 +1,250 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.util.Secret;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Runs utPLSQL tests over JDBC and drains their dbms_output. The output is fetched
+ * in batches of lines, each batch as one CLOB from {@link #GET_LINES}, so the
+ * number of round trips does not depend on the number of lines. The lines are
+ * handed to a {@link DbmsOutputReader.LineHandler}, just like the lines of a spool
+ * file.
+ */
+final class UtplsqlRunner {
+
+    /**
+     * How the tests are started
+     */
+    enum Mode {
+        /** utplsql.test for each package */
+        TEST("begin utplsql.test(?, recompile_in => false); end;"),
+        /** utplsql.testsuite for each suite */
+        TESTSUITE("begin utplsql.testsuite(?, recompile_in => false); end;");
+
+        private final String call;
+
+        private Mode(String call) {
+            this.call = call;
+        }
+
+        String getCall() {
+            return call;
+        }
+    }
+
+    /**
+     * Opens the connections, one per session
+     */
+    interface ConnectionFactory extends Serializable {
+        Connection connect() throws SQLException;
+    }
+
+    /**
+     * Connects through the {@link DriverManager}. The password stays a {@link Secret}
+     * until the connection is opened on the node.
+     */
+    static final class JdbcConnectionFactory implements ConnectionFactory {
+        private static final long serialVersionUID = 1L;
+
+        private final String url;
+        private final String user;
+        private final Secret password;
+
+        JdbcConnectionFactory(String url, String user, Secret password) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+        }
+
+        public Connection connect() throws SQLException {
+            return DriverManager.getConnection(url, user, Secret.toString(password));
+        }
+    }
+
+    static final String ENABLE = "begin dbms_output.enable(null); end;";
+
+    /**
+     * Fetches up to the given number of lines as one CLOB, each line terminated by
+     * a line feed, and returns the number of lines fetched.
+     */
+    static final String GET_LINES =
+            "declare\n"
+            + "  l_lines dbms_output.chararr;\n"
+            + "  l_count integer := ?;\n"
+            + "  l_clob clob;\n"
+            + "begin\n"
+            + "  dbms_output.get_lines(l_lines, l_count);\n"
+            + "  dbms_lob.createtemporary(l_clob, true);\n"
+            + "  for i in 1 .. l_count loop\n"
+            + "    dbms_lob.writeappend(l_clob, nvl(length(l_lines(i)), 0) + 1, l_lines(i) || chr(10));\n"
+            + "  end loop;\n"
+            + "  ? := l_count;\n"
+            + "  ? := l_clob;\n"
+            + "end;";
+
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final ConnectionFactory connections;
+    private final int batchSize;
+
+    /**
+     * @param connections opens the connection
+     * @param batchSize number of lines fetched at once
+     */
+    UtplsqlRunner(ConnectionFactory connections, int batchSize) {
+        this.connections = connections;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Runs the tests one after the other in a single session
+     * @param mode how the tests are started
+     * @param names the packages or suites
+     * @param handler receives the dbms_output of all tests
+     * @return the number of lines of dbms_output
+     */
+    long run(Mode mode, List<String> names, DbmsOutputReader.LineHandler handler)
+            throws SQLException, IOException {
+        Connection connection = connections.connect();
+        try {
+            enable(connection);
+            long lines = 0;
+            for (String name : names) {
+                lines += run(connection, mode, name, handler);
+            }
+            return lines;
+        } finally {
+            connection.close();
+        }
+    }
+
+    static void enable(Connection connection) throws SQLException {
+        CallableStatement enable = connection.prepareCall(ENABLE);
+        try {
+            enable.execute();
+        } finally {
+            enable.close();
+        }
+    }
+
+    /**
+     * Runs the tests of one package or suite in a session with enabled dbms_output
+     * @return the number of lines of dbms_output
+     */
+    long run(Connection connection, Mode mode, String name, DbmsOutputReader.LineHandler handler)
+            throws SQLException, IOException {
+        CallableStatement call = connection.prepareCall(mode.getCall());
+        try {
+            call.setString(1, name);
+            call.execute();
+        } finally {
+            call.close();
+        }
+        return drain(connection, handler);
+    }
+
+    /**
+     * Fetches the dbms_output of the session until it is empty
+     * @return the number of lines
+     */
+    long drain(Connection connection, DbmsOutputReader.LineHandler handler)
+            throws SQLException, IOException {
+        LineSplitter splitter = new LineSplitter(handler);
+        CallableStatement getLines = connection.prepareCall(GET_LINES);
+        try {
+            long lines = 0;
+            int fetched;
+            do {
+                getLines.setInt(1, batchSize);
+                getLines.registerOutParameter(2, Types.INTEGER);
+                getLines.registerOutParameter(3, Types.CLOB);
+                getLines.execute();
+                fetched = getLines.getInt(2);
+                if (fetched > 0) {
+                    Clob clob = getLines.getClob(3);
+                    Reader reader = clob.getCharacterStream();
+                    try {
+                        splitter.split(reader);
+                    } finally {
+                        reader.close();
+                    }
+                    clob.free();
+                    lines += fetched;
+                }
+            } while (fetched >= batchSize);
+            return lines;
+        } finally {
+            getLines.close();
+        }
+    }
+
+    /**
+     * Splits the text of a batch at the line feeds terminating each line
+     */
+    private static final class LineSplitter {
+        private final DbmsOutputReader.LineHandler handler;
+        private char[] line = new char[256];
+        private final char[] buffer = new char[8192];
+
+        LineSplitter(DbmsOutputReader.LineHandler handler) {
+            this.handler = handler;
+        }
+
+        void split(Reader reader) throws IOException {
+            int length = 0;
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == '\n') {
+                        handler.line(line, 0, length);
+                        length = 0;
+                    } else {
+                        if (length == line.length) {
+                            char[] bigger = new char[line.length * 2];
+                            System.arraycopy(line, 0, bigger, 0, length);
+                            line = bigger;
+                        }
+                        line[length++] = c;
+                    }
+                }
+            }
+            if (length > 0) {
+                handler.line(line, 0, length);
+            }
+        }
+    }
+}
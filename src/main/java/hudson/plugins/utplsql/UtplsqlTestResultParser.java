@@ -25,38 +25,90 @@ package hudson.plugins.utplsql;
 
 import hudson.AbortException;
 import hudson.FilePath;
-import hudson.Launcher;
-import hudson.Util;
 import hudson.FilePath.FileCallable;
 import hudson.model.AbstractBuild;
+import hudson.model.Node;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
-import hudson.tasks.junit.TestResult;
-import hudson.tasks.test.TestResultParser;
-import hudson.util.IOUtils;
+import hudson.util.IOException2;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.tools.ant.DirectoryScanner;
-import org.apache.tools.ant.types.FileSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * In the future, this class should create utPLSQL specific TestResults.
- * Currently it transforms the utPLSQL output to jUnit files and runs
- * creates a jUnit testresult.
+ * Parses the dbms_output of utPLSQL into an {@link UtplsqlResult}. The parsing
+ * is done on the node of the workspace, the result is sent to the master as
+ * {@link EncodedResult}.
  */
-public class UtplsqlTestResultParser extends TestResultParser implements
-        Serializable {
+public class UtplsqlTestResultParser implements Serializable {
+
+    /**
+     * number of files parsed concurrently on the node of the workspace
+     */
+    private final int parallelism;
+
+    /**
+     * name of the charset of the dbms_output files, empty for the default of the node
+     */
+    private final String charset;
+
+    /**
+     * directory relative to the workspace for jUnit xml files, null to write none
+     */
+    private final String junitOutputDirectory;
+
+    /**
+     * maximum length of a message, 0 for no limit
+     */
+    private final int maxMessageLength;
+
+    /**
+     * maximum size of the {@link ParseCache} on the node of the workspace, 0 for no cache
+     */
+    private final long cacheMaxBytes;
+
+    /**
+     * Creates a parser, which parses one file after the other with the default charset
+     */
+    public UtplsqlTestResultParser() {
+        this(1, null, null, 0);
+    }
+
+    /**
+     * @param parallelism number of files parsed concurrently, values below 2
+     * parse one file after the other
+     * @param charset name of the charset of the files, empty for the default of the node
+     * @param junitOutputDirectory directory relative to the workspace, where the
+     * results are written as jUnit xml files, null to write none
+     * @param maxMessageLength maximum length of a message, longer messages are
+     * truncated and written to a side file of the build. 0 for no limit
+     */
+    public UtplsqlTestResultParser(int parallelism, String charset, String junitOutputDirectory,
+                                   int maxMessageLength) {
+        this(parallelism, charset, junitOutputDirectory, maxMessageLength, 0);
+    }
+
+    /**
+     * @param cacheMaxBytes maximum size of the {@link ParseCache} on the node of the
+     * workspace, 0 parses all files without a cache
+     */
+    public UtplsqlTestResultParser(int parallelism, String charset, String junitOutputDirectory,
+                                   int maxMessageLength, long cacheMaxBytes) {
+        this.parallelism = parallelism;
+        this.charset = charset;
+        this.junitOutputDirectory = junitOutputDirectory;
+        this.maxMessageLength = maxMessageLength;
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
 
     /**
      * FileCallable, actually doing the work. In the DefaultTestResultParserImpl,
@@ -64,17 +116,85 @@ public class UtplsqlTestResultParser extends TestResultParser implements
      * which causes problems during Serialization, so that builds on a slave will
      * fail.
      */
-    private static final class ParseTestResultCallable implements
-            FileCallable<TestResult> {
+    static final class ParseTestResultCallable implements
+            FileCallable<EncodedResult> {
         private String testResultLocations;
 
-        public ParseTestResultCallable(String testResultLocations) {
+        /**
+         * number of files parsed concurrently
+         */
+        private int parallelism;
+
+        /**
+         * name of the charset of the files, empty for the default of the node
+         */
+        private String charset;
+
+        /**
+         * directory relative to the workspace for jUnit xml files, null to write none
+         */
+        private String junitOutputDirectory;
+
+        /**
+         * maximum length of a message, 0 for no limit
+         */
+        private int maxMessageLength;
+
+        /**
+         * side file of the build for the full text of truncated messages
+         */
+        private FilePath spillFile;
+
+        private transient MessageSpill spill;
+
+        /**
+         * directory of the {@link ParseCache} on the node of the workspace, null for no cache
+         */
+        private FilePath cacheDirectory;
+
+        /**
+         * maximum size of the {@link ParseCache}
+         */
+        private long cacheMaxBytes;
+
+        private transient PublishStatistics statistics;
+
+        private transient ParseCache cache;
+
+        /**
+         * the part of the cache key, which depends on the settings
+         */
+        private transient String cacheSettings;
+
+        public ParseTestResultCallable(String testResultLocations, int parallelism, String charset,
+                                       String junitOutputDirectory, int maxMessageLength,
+                                       FilePath spillFile) {
+            this(testResultLocations, parallelism, charset, junitOutputDirectory, maxMessageLength,
+                    spillFile, null, 0);
+        }
+
+        public ParseTestResultCallable(String testResultLocations, int parallelism, String charset,
+                                       String junitOutputDirectory, int maxMessageLength,
+                                       FilePath spillFile, FilePath cacheDirectory, long cacheMaxBytes) {
             this.testResultLocations = testResultLocations;
+            this.parallelism = parallelism;
+            this.charset = charset;
+            this.junitOutputDirectory = junitOutputDirectory;
+            this.maxMessageLength = maxMessageLength;
+            this.spillFile = spillFile;
+            this.cacheDirectory = cacheDirectory;
+            this.cacheMaxBytes = cacheMaxBytes;
         }
 
-        public TestResult invoke(File dir, VirtualChannel channel)
+        public EncodedResult invoke(File dir, VirtualChannel channel)
                 throws IOException, InterruptedException {
+            statistics = new PublishStatistics();
+            if (cacheDirectory != null && cacheMaxBytes > 0) {
+                // the directory is on this node
+                cache = new ParseCache(new File(cacheDirectory.getRemote()), cacheMaxBytes);
+            }
 
+            long start = System.nanoTime();
             FilePath[] paths = new FilePath(dir).list(testResultLocations);
             if (paths.length == 0)
                 throw new AbortException("No test reports that matches "
@@ -86,112 +206,178 @@ public class UtplsqlTestResultParser extends TestResultParser implements
                 File report = new File(path.getRemote());
                 files.add(report);
             }
+            statistics.finished(PublishStatistics.Phase.LIST, start);
+
+            start = System.nanoTime();
+            UtplsqlResult result;
+            spill = new MessageSpill(spillFile);
+            try {
+                result = parse(files);
+            } finally {
+                spill.close();
+            }
+            statistics.finished(PublishStatistics.Phase.PARSE, start);
+
+            if (junitOutputDirectory != null) {
+                start = System.nanoTime();
+                new JUnitXmlWriter().write(result, new File(dir, junitOutputDirectory));
+                statistics.finished(PublishStatistics.Phase.JUNIT, start);
+            }
 
-            return parse(files, dir);
+            // the compact encoding is much cheaper to transfer than the serialized objects
+            start = System.nanoTime();
+            EncodedResult encoded = new EncodedResult(result, statistics);
+            statistics.finished(PublishStatistics.Phase.ENCODE, start);
+            return encoded;
         }
 
-        private TestResult parse(List<File> files, File workSpace)
+        private UtplsqlResult parse(List<File> files)
                 throws InterruptedException, IOException {
-            TestResult testResult;
-            final String tmpDirectory = "utPlsql-temporary";
-            ArrayList<TestPackage> testPackages = new ArrayList<TestPackage>();
-            File junitOutputPath = new File(workSpace, tmpDirectory);
-            junitOutputPath.mkdirs();
-
-            for (File file : files) {
-                TestPackage currentPackage = null;
-                Testcase currentTestcase = null;
-                String currentLine;
-                BufferedReader fr = new BufferedReader(new FileReader(file));
-                do {
-                    currentLine = fr.readLine();
-                    if (currentLine == null) {
-                        // either a new package, or the end of the file will add
-                        // the package
-                        testPackages.add(currentPackage);
-                        break;
-                    }
-                    // For some reason there are a lot of trailing whitespaces.
-                    currentLine = currentLine.trim();
-                    Pattern packagePattern = Pattern.compile("^(SUCCESS|FAILURE): \"(?:.*\\.)?(.*)\"(?:.)*");
-                    Matcher packageMatcher = packagePattern.matcher(currentLine.trim());
-                    if (packageMatcher.matches()) {
-                        // new Package starting
-                        if (currentPackage != null) {
-                            testPackages.add(currentPackage);
+            final PackageIndex index = new PackageIndex();
+            final Charset fileCharset = resolveCharset();
+            cacheSettings = fileCharset.name() + "/" + maxMessageLength;
+            if (parallelism <= 1 || files.size() <= 1) {
+                DbmsOutputReader reader = new DbmsOutputReader(fileCharset);
+                for (int i = 0; i < files.size(); i++) {
+                    index.add(i, parseFile(files.get(i), reader));
+                }
+                return index.toResult();
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(parallelism, files.size()));
+            try {
+                List<Future<?>> futures = new ArrayList<Future<?>>(files.size());
+                for (int i = 0; i < files.size(); i++) {
+                    final int fileIndex = i;
+                    final File file = files.get(i);
+                    // each file is merged as soon as it is parsed, the index restores the order of the files
+                    futures.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws IOException {
+                            index.add(fileIndex, parseFile(file, new DbmsOutputReader(fileCharset)));
+                            return null;
                         }
-                        currentPackage = new TestPackage(packageMatcher.group(2));
-                        currentTestcase = null;
-                    } else if (Pattern.matches("^(SUCCESS|FAILURE) - .*",
-                            currentLine)) {
-                        currentTestcase = new Testcase(currentPackage, currentLine);
-                        currentPackage.add(currentTestcase);
-                    } else if (Pattern.matches("^>.*", currentLine)) {
-                        currentTestcase = null;
-                    } else if (currentTestcase != null) {
-                        //If we have a current testcase and the line does not start with ">",
-                        //we append the output to the current testcase.
-                        currentTestcase.appendToMessage(currentLine);
-                    }
-
-                } while (true);
-                IOUtils.closeQuietly(fr);
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IOException2(cause);
+                }
+            } finally {
+                executor.shutdownNow();
             }
+            return index.toResult();
+        }
 
-            // build fake jUnit-Files from Testcases
-            for (TestPackage testPackage : testPackages) {
-                OutputStreamWriter out = null;
-                try {
-                    File outFile = new File(junitOutputPath, testPackage
-                            .getName()
-                            + "fake-jUnit.xml");
-                    out = new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8");
-                    out.write(testPackage.getXmlSnippet());
-                } finally {
-                    IOUtils.closeQuietly(out);
+        /**
+         * Parses a single file of dbms_output, unless it is in the cache
+         * @param file the file to parse
+         * @param reader the reader, which must not be shared with other threads
+         * @return the packages in the order they appear in the file
+         */
+        private List<TestPackage> parseFile(File file, DbmsOutputReader reader)
+                throws IOException {
+            String key = null;
+            if (cache != null) {
+                key = cache.key(file, cacheSettings);
+                List<TestPackage> cached = cache.get(key);
+                if (cached != null) {
+                    statistics.addCachedFile(file.length(), cached);
+                    return cached;
                 }
             }
 
-            FileSet fs = Util.createFileSet(workSpace, tmpDirectory + "/*.xml");
-            DirectoryScanner ds = fs.getDirectoryScanner();
+            PackageCollector collector = new PackageCollector(maxMessageLength, spill);
+            reader.read(file, collector);
+            List<TestPackage> testPackages = collector.finish();
+            statistics.addFile(reader, testPackages);
+            // truncated messages refer to the side file of this build
+            if (cache != null && !collector.isTruncated()) {
+                cache.put(key, testPackages);
+            }
+            return testPackages;
+        }
 
-            String[] fileNames = ds.getIncludedFiles();
-            if (fileNames.length == 0) {
-                // no test result. Most likely a configuration error or fatal
-                // problem
-                throw new AbortException(
-                        "No test report files were found. Configuration error?");
+        private Charset resolveCharset() throws AbortException {
+            try {
+                return DbmsOutputReader.toCharset(charset);
+            } catch (IllegalArgumentException e) {
+                throw new AbortException("Charset " + charset
+                        + " is not supported. Configuration error?");
             }
+        }
+    }
 
-            //create the jUnit result from our fake files.
-            testResult = new TestResult(0, ds, false);
+    /**
+     * Collects the packages of one file from its lines.
+     */
+    static final class PackageCollector implements DbmsOutputReader.LineHandler, IncrementalParser.Listener {
+        private final IncrementalParser parser;
+        private final List<TestPackage> testPackages = new ArrayList<TestPackage>();
 
-            return testResult;
+        /**
+         * @param maxMessageLength maximum length of a message, 0 for no limit
+         * @param spill receives the full text of truncated messages
+         */
+        PackageCollector(int maxMessageLength, MessageSpill spill) {
+            this.parser = new IncrementalParser(maxMessageLength, spill, this);
         }
 
-    }
+        public void line(char[] chars, int offset, int length) throws IOException {
+            parser.line(chars, offset, length);
+        }
 
-    private static final long serialVersionUID = 1L;
+        public void testcase(Testcase testcase) {
+            // collected with its package
+        }
 
-    @Override
-    public String getDisplayName() {
-        return "ut/plsql parser";
-    }
+        public void testPackage(TestPackage testPackage) {
+            testPackages.add(testPackage);
+        }
+
+        /**
+         * the end of the file adds the last package
+         * @return all packages of the file
+         */
+        List<TestPackage> finish() throws IOException {
+            parser.finish();
+            return testPackages;
+        }
 
-    @Override
-    public String getTestResultLocationMessage() {
-        return "Paths to dbms_output files of ut/plsql:";
+        /**
+         * @return true if a message of the file was truncated
+         */
+        boolean isTruncated() {
+            return parser.isTruncated();
+        }
     }
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * Called by the Recorder.
      */
-    @Override
-    public TestResult parse(String testResultLocations, AbstractBuild build,
-                            Launcher launcher, TaskListener listener)
+    public EncodedResult parse(String testResultLocations, AbstractBuild build,
+                               TaskListener listener)
             throws InterruptedException, IOException {
-        TestResult testResult = build.getWorkspace().act(
-                new ParseTestResultCallable(testResultLocations));
-        return testResult;
+        FilePath cacheDirectory = null;
+        Node node = build.getBuiltOn();
+        if (cacheMaxBytes > 0 && node != null && node.getRootPath() != null) {
+            cacheDirectory = node.getRootPath().child(ParseCache.DIRECTORY_NAME);
+        }
+        EncodedResult result = build.getWorkspace().act(
+                new ParseTestResultCallable(testResultLocations, parallelism, charset,
+                        junitOutputDirectory, maxMessageLength,
+                        new FilePath(build.getRootDir()).child(MessageSpill.FILE_NAME),
+                        cacheDirectory, cacheMaxBytes));
+        return result;
     }
 }
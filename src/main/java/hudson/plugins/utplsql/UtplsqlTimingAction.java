@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shows the {@link TimingAnalysis} of a build. The analysis is kept in a file of
+ * the build and only loaded when the page is shown.
+ */
+public class UtplsqlTimingAction implements Action {
+
+    private static final Logger LOGGER = Logger.getLogger(UtplsqlTimingAction.class.getName());
+
+    private final AbstractBuild<?, ?> owner;
+
+    private transient SoftReference<TimingAnalysis> analysis;
+
+    /**
+     * @param owner the build, whose directory contains the analysis
+     * @param analysis the analysis, which was saved in the directory of the build
+     */
+    public UtplsqlTimingAction(AbstractBuild<?, ?> owner, TimingAnalysis analysis) {
+        this.owner = owner;
+        this.analysis = new SoftReference<TimingAnalysis>(analysis);
+    }
+
+    public AbstractBuild<?, ?> getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the analysis, null if it cannot be loaded
+     */
+    public synchronized TimingAnalysis getAnalysis() {
+        TimingAnalysis loaded = analysis == null ? null : analysis.get();
+        if (loaded == null) {
+            File file = new File(owner.getRootDir(), TimingAnalysis.FILE_NAME);
+            try {
+                loaded = TimingAnalysis.load(file);
+                analysis = new SoftReference<TimingAnalysis>(loaded);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+            }
+        }
+        return loaded;
+    }
+
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.UtplsqlTimingAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "utplsqlTiming";
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link DbmsOutputReader}
+ */
+public class DbmsOutputReaderTest {
+
+    private final Charset utf8 = Charset.forName("UTF-8");
+
+    @Test
+    public void lineTerminators() throws IOException {
+        // GIVEN
+        File file = write("first\nsecond\r\nthird\rfourth", utf8);
+
+        // WHEN
+        List<String> lines = read(new DbmsOutputReader(utf8), file);
+
+        // THEN
+        assertEquals("Number of lines", 4, lines.size());
+        assertEquals("Line with \\n", "first", lines.get(0));
+        assertEquals("Line with \\r\\n", "second", lines.get(1));
+        assertEquals("Line with \\r", "third", lines.get(2));
+        assertEquals("Last line without terminator", "fourth", lines.get(3));
+    }
+
+    @Test
+    public void emptyLinesAndTrailingTerminator() throws IOException {
+        // GIVEN
+        File file = write("first\n\n\nlast\n", utf8);
+
+        // WHEN
+        List<String> lines = read(new DbmsOutputReader(utf8), file);
+
+        // THEN
+        assertEquals("Number of lines", 4, lines.size());
+        assertEquals("Empty line", "", lines.get(1));
+        assertEquals("Last line", "last", lines.get(3));
+    }
+
+    @Test
+    public void linesLongerThanTheBuffers() throws IOException {
+        // GIVEN
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longLine.append("\u00e4\u00f6\u00fc").append(i);
+        }
+        File file = write("a\r\n" + longLine + "\r\nb\r\n" + longLine, utf8);
+
+        // WHEN
+        List<String> lines = read(new DbmsOutputReader(utf8, 7), file);
+
+        // THEN
+        assertEquals("Number of lines", 4, lines.size());
+        assertEquals("First line", "a", lines.get(0));
+        assertEquals("Long line, split multibyte characters", longLine.toString(), lines.get(1));
+        assertEquals("Line after long line", "b", lines.get(2));
+        assertEquals("Long last line", longLine.toString(), lines.get(3));
+    }
+
+    @Test
+    public void explicitCharset() throws IOException {
+        // GIVEN
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        File file = write("FAILURE - UT_NLS.UT_UMLAUT: EQ \"\u00c4rger\"", latin1);
+
+        // WHEN
+        List<String> lines = read(new DbmsOutputReader(latin1), file);
+
+        // THEN
+        assertEquals("Line is decoded with the given charset", "FAILURE - UT_NLS.UT_UMLAUT: EQ \"\u00c4rger\"", lines.get(0));
+    }
+
+    @Test
+    public void statisticsOfTheLastFile() throws IOException {
+        // GIVEN
+        DbmsOutputReader reader = new DbmsOutputReader(utf8, 7);
+        read(reader, write("a much longer first file\nwith two lines", utf8));
+        File file = write("\u00e4\r\nlonger\r\nb", utf8);
+        long length = file.length();
+
+        // WHEN
+        read(reader, file);
+
+        // THEN
+        assertEquals("Bytes of the last file", length, reader.getBytesRead());
+        assertEquals("Lines of the last file", 3, reader.getLineCount());
+        assertEquals("Longest line of the last file", 6, reader.getLongestLine());
+    }
+
+    @Test(timeout = 10000)
+    public void surrogatePairDoesNotFitIntoTheLastChar() throws IOException {
+        // GIVEN a line, which fills the buffer of 7 chars but one, followed by a surrogate pair
+        File file = write("abcdef\ud83d\ude00gh\nnext", utf8);
+
+        // WHEN
+        List<String> lines = read(new DbmsOutputReader(utf8, 7), file);
+
+        // THEN
+        assertEquals("Number of lines", 2, lines.size());
+        assertEquals("Line with the surrogate pair", "abcdef\ud83d\ude00gh", lines.get(0));
+        assertEquals("Next line", "next", lines.get(1));
+    }
+
+    private static List<String> read(DbmsOutputReader reader, File file) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        try {
+            reader.read(file, new DbmsOutputReader.LineHandler() {
+                public void line(char[] chars, int offset, int length) {
+                    lines.add(new String(chars, offset, length));
+                }
+            });
+        } finally {
+            file.delete();
+        }
+        return lines;
+    }
+
+    private static File write(String content, Charset charset) throws IOException {
+        File file = File.createTempFile("dbms_output", ".log");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(charset.name()));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
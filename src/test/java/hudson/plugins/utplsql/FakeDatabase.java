@@ -0,0 +1,287 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for a database with utPLSQL, which replays recorded dbms_output. Each
+ * connection is a session with its own dbms_output buffer, which is only filled
+ * after dbms_output.enable. Only the statements of {@link UtplsqlRunner} are
+ * understood.
+ */
+public class FakeDatabase implements UtplsqlRunner.ConnectionFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, List<String>> outputs = new HashMap<String, List<String>>();
+    private final Map<String, Long> delays = new HashMap<String, Long>();
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+    private int fetches;
+    private int openConnections;
+    private int maxOpenConnections;
+
+    /**
+     * @param name the package or suite
+     * @param lines the dbms_output of its run
+     */
+    public FakeDatabase output(String name, List<String> lines) {
+        outputs.put(name, lines);
+        return this;
+    }
+
+    /**
+     * @param name the package or suite
+     * @param resource a recorded spool file next to this class
+     */
+    public FakeDatabase outputOf(String name, String resource) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        InputStream in = getClass().getResourceAsStream(resource);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return output(name, lines);
+    }
+
+    /**
+     * @param name the package or suite
+     * @param millis time the run of the package or suite takes
+     */
+    public FakeDatabase delay(String name, long millis) {
+        delays.put(name, millis);
+        return this;
+    }
+
+    /**
+     * @return the calls of utPLSQL, e.g. "utplsql.test(UT_FAKE)", in the order they were made
+     */
+    public List<String> getCalls() {
+        return new ArrayList<String>(calls);
+    }
+
+    public synchronized int getFetches() {
+        return fetches;
+    }
+
+    public synchronized int getOpenConnections() {
+        return openConnections;
+    }
+
+    public synchronized int getMaxOpenConnections() {
+        return maxOpenConnections;
+    }
+
+    public synchronized Connection connect() throws SQLException {
+        openConnections++;
+        maxOpenConnections = Math.max(maxOpenConnections, openConnections);
+        return proxy(Connection.class, new Session());
+    }
+
+    private synchronized void closed() {
+        openConnections--;
+    }
+
+    private synchronized void fetched() {
+        fetches++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeDatabase.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private final class Session implements InvocationHandler {
+        private final LinkedList<String> buffer = new LinkedList<String>();
+        private boolean enabled;
+        private boolean closed;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("prepareCall")) {
+                return proxy(CallableStatement.class, new Statement((String) args[0]));
+            } else if (name.equals("prepareStatement") && args[0].equals(ParallelRunner.DISCOVER)) {
+                return proxy(PreparedStatement.class, new Discovery());
+            } else if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    closed();
+                }
+                return null;
+            } else if (name.equals("isClosed")) {
+                return closed;
+            }
+            throw new SQLException("Not supported by the fake database: " + method);
+        }
+
+        /**
+         * Finds the packages in {@link #outputs} matching a LIKE pattern with %
+         */
+        private final class Discovery implements InvocationHandler {
+            private String pattern;
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("setString")) {
+                    pattern = (String) args[1];
+                    return null;
+                } else if (name.equals("close")) {
+                    return null;
+                } else if (name.equals("executeQuery")) {
+                    Pattern regex = Pattern.compile(Pattern.quote(pattern).replace("%", "\\E.*\\Q"));
+                    final List<String> rows = new ArrayList<String>();
+                    for (String output : outputs.keySet()) {
+                        if (regex.matcher(output).matches()) {
+                            rows.add(output);
+                        }
+                    }
+                    Collections.sort(rows);
+                    return proxy(ResultSet.class, new InvocationHandler() {
+                        private int row = -1;
+
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getName().equals("next")) {
+                                return ++row < rows.size();
+                            } else if (method.getName().equals("getString")) {
+                                return rows.get(row);
+                            } else if (method.getName().equals("close")) {
+                                return null;
+                            }
+                            throw new SQLException("Not supported by the fake database: " + method);
+                        }
+                    });
+                }
+                throw new SQLException("Not supported by the fake database: " + method);
+            }
+        }
+
+        private final class Statement implements InvocationHandler {
+            private final String sql;
+            private final Map<Integer, Object> parameters = new HashMap<Integer, Object>();
+            private final Map<Integer, Object> results = new HashMap<Integer, Object>();
+
+            Statement(String sql) {
+                this.sql = sql;
+            }
+
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("setString") || name.equals("setInt")) {
+                    parameters.put((Integer) args[0], args[1]);
+                    return null;
+                } else if (name.equals("registerOutParameter") || name.equals("close")) {
+                    return null;
+                } else if (name.equals("execute")) {
+                    execute();
+                    return false;
+                } else if (name.equals("getInt")) {
+                    return results.get(args[0]);
+                } else if (name.equals("getClob")) {
+                    return results.get(args[0]);
+                }
+                throw new SQLException("Not supported by the fake database: " + method);
+            }
+
+            private void execute() throws SQLException, InterruptedException {
+                if (sql.equals(UtplsqlRunner.ENABLE)) {
+                    enabled = true;
+                } else if (sql.equals(UtplsqlRunner.GET_LINES)) {
+                    fetched();
+                    int batchSize = (Integer) parameters.get(1);
+                    StringBuilder text = new StringBuilder();
+                    int count = 0;
+                    while (count < batchSize && !buffer.isEmpty()) {
+                        text.append(buffer.removeFirst()).append('\n');
+                        count++;
+                    }
+                    results.put(2, count);
+                    results.put(3, clob(text.toString()));
+                } else {
+                    for (UtplsqlRunner.Mode mode : UtplsqlRunner.Mode.values()) {
+                        if (sql.equals(mode.getCall())) {
+                            run(mode, (String) parameters.get(1));
+                            return;
+                        }
+                    }
+                    throw new SQLException("Unknown statement " + sql);
+                }
+            }
+
+            private void run(UtplsqlRunner.Mode mode, String name) throws SQLException, InterruptedException {
+                calls.add((mode == UtplsqlRunner.Mode.TEST ? "utplsql.test(" : "utplsql.testsuite(") + name + ")");
+                List<String> output = outputs.get(name);
+                if (output == null) {
+                    throw new SQLException("ORA-06550: unknown package " + name);
+                }
+                Long delay = delays.get(name);
+                if (delay != null) {
+                    Thread.sleep(delay);
+                }
+                if (enabled) {
+                    buffer.addAll(output);
+                }
+            }
+        }
+    }
+
+    private static Clob clob(final String text) {
+        return proxy(Clob.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getCharacterStream")) {
+                    return new StringReader(text);
+                } else if (method.getName().equals("length")) {
+                    return (long) text.length();
+                } else if (method.getName().equals("free")) {
+                    return null;
+                }
+                throw new SQLException("Not supported by the fake database: " + method);
+            }
+        });
+    }
+}
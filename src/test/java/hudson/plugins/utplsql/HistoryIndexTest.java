@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link HistoryIndex}
+ */
+public class HistoryIndexTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("history-index", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File history = new File(directory, HistoryIndex.DIRECTORY);
+        if (history.isDirectory()) {
+            for (File file : history.listFiles()) {
+                file.delete();
+            }
+            history.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void historyOfAnAssert() throws IOException {
+        // GIVEN
+        HistoryIndex index = new HistoryIndex(directory);
+        index.append(1, result(false, 1000));
+        index.append(2, result(true, 2000));
+        index.append(3, result(false, 3000));
+        String id = result(false, 0).getPackages().get(0).getTestCases().get(1).getId();
+
+        // WHEN
+        List<HistoryEntry> history = index.history(id, 10);
+
+        // THEN
+        assertEquals("Number of builds", 3, history.size());
+        assertEquals("Newest build first", 3, history.get(0).getBuildNumber());
+        assertEquals("Status", Testcase.FAILURE, history.get(1).getResult());
+        assertEquals("Elapsed time", 3000, history.get(0).getElapsedMicros());
+        assertEquals("Latest builds only", 2, index.history(id, 2).size());
+        assertEquals("Unknown assert", 0, index.history("UT_NONE.UT_NONE:00000000:1", 10).size());
+    }
+
+    @Test
+    public void anotherIndexReadsTheIdentities() throws IOException {
+        // GIVEN
+        new HistoryIndex(directory).append(1, result(false, 1000));
+        String id = result(false, 0).getPackages().get(0).getTestCases().get(0).getId();
+
+        // WHEN
+        List<HistoryEntry> history = new HistoryIndex(directory).history(id, 10);
+
+        // THEN
+        assertEquals("Number of builds", 1, history.size());
+        assertEquals("Status", Testcase.SUCCESS, history.get(0).getResult());
+    }
+
+    @Test
+    public void incompleteRecordIsOverwritten() throws IOException {
+        // GIVEN
+        HistoryIndex index = new HistoryIndex(directory);
+        index.append(1, result(false, 1000));
+        String id = result(false, 0).getPackages().get(0).getTestCases().get(0).getId();
+        File bucket = null;
+        for (File file : new File(directory, HistoryIndex.DIRECTORY).listFiles()) {
+            if (file.length() > 0 && !file.getName().equals(HistoryIndex.IDENTITIES)) {
+                bucket = file;
+                RandomAccessFile out = new RandomAccessFile(file, "rw");
+                out.seek(out.length());
+                out.write(new byte[] { 0, 0, 0 });
+                out.close();
+            }
+        }
+
+        // WHEN
+        List<HistoryEntry> crashed = index.history(id, 10);
+        index.append(2, result(false, 2000));
+
+        // THEN
+        assertEquals("Incomplete record is ignored", 1, crashed.size());
+        assertEquals("Next build overwrites it", 2, index.history(id, 10).size());
+        assertEquals("No garbage left", 0, bucket.length() % HistoryIndex.RECORD_SIZE);
+    }
+
+    @Test
+    public void timesOfSomeBuilds() throws IOException {
+        // GIVEN
+        HistoryIndex index = new HistoryIndex(directory);
+        index.append(1, result(false, 1000));
+        index.append(3, result(false, 3000));
+        index.append(2, result(false, 2000));
+        index.append(3, result(false, 4000));
+        String id = result(false, 0).getPackages().get(0).getTestCases().get(0).getId();
+
+        // WHEN
+        Map<Integer, Map<String, Long>> times = index.times(Arrays.asList(id, "UT_NONE.UT_NONE:00000000:1"),
+                new HashSet<Integer>(Arrays.asList(2, 3, 4)));
+
+        // THEN
+        assertEquals("Builds with records", 2, times.size());
+        assertEquals("Build recorded out of order", Long.valueOf(2000), times.get(2).get(id));
+        assertEquals("Last record of a build wins", Long.valueOf(4000), times.get(3).get(id));
+        assertEquals("Unknown assert", 1, times.get(3).size());
+    }
+
+    @Test
+    public void entriesOfABuild() throws IOException {
+        // GIVEN
+        HistoryIndex index = new HistoryIndex(directory);
+        index.append(1, result(true, 1000));
+        index.append(2, result(false, 2000));
+        String id = result(false, 0).getPackages().get(0).getTestCases().get(1).getId();
+
+        // WHEN
+        Map<Integer, Map<String, HistoryEntry>> entries = index.entries(Arrays.asList(id),
+                Collections.singleton(1));
+
+        // THEN
+        assertEquals("Only the requested build", 1, entries.size());
+        assertEquals("Status of the build", Testcase.FAILURE, entries.get(1).get(id).getResult());
+        assertEquals("Time of the build", 1000, entries.get(1).get(id).getElapsedMicros());
+    }
+
+    @Test
+    public void invalidatedIdentitiesAreReadAgain() throws IOException {
+        // GIVEN
+        HistoryIndex index = new HistoryIndex(directory);
+        index.append(1, result(false, 1000));
+        String id = result(false, 0).getPackages().get(0).getTestCases().get(0).getId();
+        int cached = HistoryIndex.getCachedIdentities();
+
+        // WHEN
+        HistoryIndex.invalidate(directory);
+
+        // THEN
+        assertEquals("Identities dropped", cached - 2, HistoryIndex.getCachedIdentities());
+        assertEquals("History read again", 1, index.history(id, 10).size());
+    }
+
+    private static UtplsqlResult result(boolean failed, long micros) {
+        TestPackage testPackage = new TestPackage("UT_FAKE");
+        testPackage.add(new Testcase(Testcase.SUCCESS, "UT_FAKE", "1UT_ONE", micros, "EQ \"one\""));
+        testPackage.add(new Testcase(failed ? Testcase.FAILURE : Testcase.SUCCESS, "UT_FAKE", "2UT_TWO", micros,
+                "EQ \"two\" Expected \"1\" and got \"" + (failed ? 2 : 1) + "\""));
+        UtplsqlResult result = new UtplsqlResult();
+        result.add(testPackage);
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link IncrementalParser}
+ */
+public class IncrementalParserTest {
+
+    /**
+     * Records the events of the parser
+     */
+    private static final class Events implements IncrementalParser.Listener {
+        private final List<String> events = new ArrayList<String>();
+
+        public void testcase(Testcase testcase) {
+            events.add(testcase.getClassName() + "." + testcase.getName() + " " + testcase.getResult()
+                    + " " + testcase.getMessage());
+        }
+
+        public void testPackage(TestPackage testPackage) {
+            events.add(testPackage.getName() + " " + testPackage.getTotalCount() + "/" + testPackage.getFailures());
+        }
+    }
+
+    @Test
+    public void packageIsReportedWithTheNextHeader() throws IOException {
+        // GIVEN
+        Events events = new Events();
+        IncrementalParser parser = new IncrementalParser(0, null, events);
+
+        // WHEN
+        feed(parser, "SUCCESS: \"TESTER.UT_A\"\n"
+                + "SUCCESS - UT_A.UT_ONE: EQ \"one\" Expected \"1\" and got \"1\"\n");
+        int afterFirstAssert = events.events.size();
+        feed(parser, "FAILURE - UT_A.UT_TWO: EQ \"two\" Expected \"2\" and got \"3\"\n"
+                + "more of the message\n");
+        int afterContinuation = events.events.size();
+        feed(parser, "SUCCESS: \"TESTER.UT_B\"\n");
+
+        // THEN
+        assertEquals("An assert is complete with the next line", 0, afterFirstAssert);
+        assertEquals("The message may continue", 1, afterContinuation);
+        assertEquals("Both asserts and the package", 3, events.events.size());
+        assertEquals("Package of the next header", "UT_A 2/1", events.events.get(2));
+        assertTrue("Continued message", events.events.get(1).endsWith("more of the message"));
+    }
+
+    @Test
+    public void chunksOfAnySizeGiveTheSameEvents() throws IOException {
+        // GIVEN
+        String text = resource("OneFileOnePackage.log") + resource("OneFileOneTestSuiteOnePackage.log");
+        Events expected = new Events();
+        IncrementalParser lines = new IncrementalParser(0, null, expected);
+        for (String line : text.split("\r\n|\r|\n")) {
+            lines.line(line.toCharArray(), 0, line.length());
+        }
+        lines.finish();
+
+        for (int chunk = 1; chunk < 40; chunk++) {
+            // WHEN
+            Events events = new Events();
+            IncrementalParser parser = new IncrementalParser(0, null, events);
+            char[] chars = text.toCharArray();
+            for (int offset = 0; offset < chars.length; offset += chunk) {
+                parser.chars(chars, offset, Math.min(chunk, chars.length - offset));
+            }
+            parser.finish();
+
+            // THEN
+            assertEquals("Events for chunks of " + chunk, expected.events, events.events);
+        }
+        assertEquals("Events of both files", 3 + 1 + 3 + 1, expected.events.size());
+    }
+
+    @Test
+    public void lineTerminators() throws IOException {
+        // GIVEN
+        Events events = new Events();
+        IncrementalParser parser = new IncrementalParser(0, null, events);
+
+        // WHEN
+        feed(parser, "SUCCESS: \"TESTER.UT_A\"\r");
+        feed(parser, "\nSUCCESS - UT_A.UT_ONE: first\r");
+        feed(parser, "SUCCESS - UT_A.UT_TWO: second\r\nSUCCESS - UT_A.UT_THREE: no line terminator");
+        parser.finish();
+
+        // THEN
+        assertEquals("Asserts and package", 4, events.events.size());
+        assertEquals("Message of an assert ending with \\r", "UT_A.1UT_ONE SUCCESS first", events.events.get(0));
+        assertEquals("Last line without terminator", "UT_A.3UT_THREE SUCCESS no line terminator",
+                events.events.get(2));
+        assertEquals("Package", "UT_A 3/0", events.events.get(3));
+    }
+
+    @Test
+    public void fixturesEndTheMessage() throws IOException {
+        // GIVEN
+        final List<TestPackage> packages = new ArrayList<TestPackage>();
+        IncrementalParser parser = new IncrementalParser(0, null, new IncrementalParser.Listener() {
+            public void testcase(Testcase testcase) {
+            }
+
+            public void testPackage(TestPackage testPackage) {
+                packages.add(testPackage);
+            }
+        });
+
+        // WHEN
+        feed(parser, "Ran setup\nRan teardown\n"
+                + "SUCCESS: \"TESTER.UT_A\"\n"
+                + "SUCCESS - UT_A.UT_ONE [0,100 ms] : first\n"
+                + "Ran setup\nRan teardown\n"
+                + "SUCCESS: \"TESTER.UT_B\"\n"
+                + "SUCCESS - UT_B.UT_ONE [0,100 ms] : second\n"
+                + "Ran teardown\n");
+        parser.finish();
+
+        // THEN
+        assertEquals("Number of packages", 2, packages.size());
+        assertEquals("Message ends before the fixture", "first", packages.get(0).getTestCases().get(0).getMessage());
+        assertEquals("Fixture at the end of the output", "second",
+                packages.get(1).getTestCases().get(0).getMessage());
+    }
+
+    private static void feed(IncrementalParser parser, String text) throws IOException {
+        parser.chars(text.toCharArray(), 0, text.length());
+    }
+
+    private String resource(String name) {
+        InputStream in = getClass().getResourceAsStream(name);
+        Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+        try {
+            return scanner.next();
+        } finally {
+            scanner.close();
+        }
+    }
+}
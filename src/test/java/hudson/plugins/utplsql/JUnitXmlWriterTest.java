@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link JUnitXmlWriter}
+ */
+public class JUnitXmlWriterTest {
+
+    @Test
+    public void writesSuiteWithEscapedFailure() throws IOException {
+        // GIVEN
+        TestPackage testPackage = new TestPackage("UT_FAKE");
+        testPackage.add(new Testcase(testPackage, "SUCCESS - UT_FAKE.UT_FAKE1 [1,5 ms] : EQ \"ok\""));
+        Testcase failure = new Testcase(testPackage, "FAILURE - UT_FAKE.UT_FAKE2: EQ \"a < b & c\" Expected \"1\" and got \"2\"");
+        testPackage.add(failure);
+
+        // WHEN
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JUnitXmlWriter().write(testPackage, out);
+        String xml = out.toString("UTF-8");
+
+        // THEN
+        assertTrue("Suite with counts: " + xml, xml.contains("<testsuite errors=\"0\" failures=\"1\" name=\"UT_FAKE\" tests=\"2\""));
+        assertTrue("Successful case: " + xml, xml.contains("<testcase classname=\"UT_FAKE\" name=\""
+                + testPackage.getTestCases().get(0).getStableName() + "\" time=\"0.0015\"></testcase>"));
+        assertTrue("Stable name without counter: " + xml, xml.contains("name=\"UT_FAKE1:"));
+        assertTrue("Failure is escaped: " + xml, xml.contains("<failure message=\"EQ &quot;a &lt; b &amp; c&quot; Expected &quot;1&quot; and got &quot;2&quot;\""));
+        assertEquals("Document is complete", true, xml.trim().endsWith("</testsuite>"));
+    }
+}
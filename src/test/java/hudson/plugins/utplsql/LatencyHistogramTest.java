@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllTimes() {
+        for (long micros = 0; micros < 100000; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue("Upper bound of the bucket of " + micros, LatencyHistogram.upperBoundOf(bucket) >= micros);
+            assertTrue("Upper bound of the bucket before " + micros,
+                    bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < micros);
+        }
+    }
+
+    @Test
+    public void percentilesAreAtMostOneEighthTooHigh() {
+        // GIVEN
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        // WHEN
+        long p50 = histogram.getP50();
+        long p99 = histogram.getP99();
+
+        // THEN
+        assertTrue("p50 " + p50, p50 >= 500000 && p50 <= 500000 * 9 / 8);
+        assertTrue("p99 " + p99, p99 >= 990000 && p99 <= 1000000);
+        assertEquals("p100 is the maximum", 1000000, histogram.getPercentile(100));
+        assertEquals("Count", 1000, histogram.getCount());
+        assertEquals("Total", 500500000L, histogram.getTotalMicros());
+    }
+
+    @Test
+    public void mergedHistogramEqualsHistogramOfAllTimes() {
+        // GIVEN
+        Random random = new Random(42);
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        LatencyHistogram all = new LatencyHistogram();
+        for (int i = 0; i < 10000; i++) {
+            long micros = (long) Math.exp(random.nextDouble() * 15);
+            (i % 3 == 0 ? first : second).record(micros);
+            all.record(micros);
+        }
+
+        // WHEN
+        first.merge(second);
+
+        // THEN
+        assertEquals("Count", all.getCount(), first.getCount());
+        assertEquals("Maximum", all.getMaxMicros(), first.getMaxMicros());
+        assertEquals("p50", all.getP50(), first.getP50());
+        assertEquals("p95", all.getP95(), first.getP95());
+        assertEquals("p99", all.getP99(), first.getP99());
+    }
+
+    @Test
+    public void emptyHistogram() {
+        assertEquals("Percentile of an empty histogram", 0, new LatencyHistogram().getP99());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link LiveFollower}
+ */
+public class LiveFollowerTest {
+
+    /**
+     * Records the asserts and packages
+     */
+    private static final class Events implements IncrementalParser.Listener {
+        private final List<String> events = new ArrayList<String>();
+
+        public void testcase(Testcase testcase) {
+            events.add(testcase.getName() + " " + testcase.getMessage());
+        }
+
+        public void testPackage(TestPackage testPackage) {
+            events.add(testPackage.getName() + " " + testPackage.getTotalCount());
+        }
+    }
+
+    private static final String OUTPUT = "SUCCESS: \"TESTER.UT_A\"\n"
+            + "SUCCESS - UT_A.UT_ONE: Gr\u00fc\u00dfe \u20ac\n"
+            + "FAILURE - UT_A.UT_TWO: zwei\n";
+
+    @Test
+    public void tailsAreParsedAcrossCharactersAndLines() throws IOException {
+        // GIVEN
+        byte[] bytes = OUTPUT.getBytes("UTF-8");
+
+        for (int chunk = 1; chunk < 10; chunk++) {
+            Events events = new Events();
+            LiveFollower follower = new LiveFollower("*.log", "UTF-8", events);
+
+            // WHEN
+            for (int offset = 0; offset < bytes.length; offset += chunk) {
+                follower.parse(tail("result.log", bytes, offset, Math.min(chunk, bytes.length - offset)));
+            }
+            follower.finish();
+
+            // THEN
+            assertEquals("Events for tails of " + chunk + " bytes", 3, events.events.size());
+            assertEquals("Characters split across tails", "1UT_ONE Gr\u00fc\u00dfe \u20ac", events.events.get(0));
+            assertEquals("Package", "UT_A 2", events.events.get(2));
+        }
+    }
+
+    @Test
+    public void filesAreFollowedSeparately() throws IOException {
+        // GIVEN
+        byte[] bytes = OUTPUT.getBytes("UTF-8");
+        Events events = new Events();
+        LiveFollower follower = new LiveFollower("*.log", "UTF-8", events);
+
+        // WHEN
+        follower.parse(tail("a.log", bytes, 0, 30));
+        follower.parse(tail("b.log", bytes, 0, bytes.length));
+        follower.parse(tail("a.log", bytes, 30, bytes.length - 30));
+        follower.finish();
+
+        // THEN
+        assertEquals("Asserts and packages of both files", 6, events.events.size());
+    }
+
+    @Test
+    public void fileWrittenAnewIsParsedFromTheStart() throws IOException {
+        // GIVEN
+        byte[] bytes = OUTPUT.getBytes("UTF-8");
+        Events events = new Events();
+        LiveFollower follower = new LiveFollower("*.log", "UTF-8", events);
+        follower.parse(tail("a.log", bytes, 0, 40));
+
+        // WHEN
+        follower.parse(tail("a.log", bytes, 0, bytes.length));
+        follower.finish();
+
+        // THEN
+        assertEquals("Only the output of the new file", "[1UT_ONE Gr\u00fc\u00dfe \u20ac, 2UT_TWO zwei, UT_A 2]",
+                events.events.toString());
+    }
+
+    private static LiveFollower.Tail tail(String path, byte[] bytes, int offset, int length) {
+        byte[] part = new byte[length];
+        System.arraycopy(bytes, offset, part, 0, length);
+        return new LiveFollower.Tail(path, offset, part, "UTF-8");
+    }
+}
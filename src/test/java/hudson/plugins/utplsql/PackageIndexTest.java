@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link PackageIndex}
+ */
+public class PackageIndexTest {
+
+    @Test
+    public void samePackageOfSeveralFilesIsMerged() {
+        // GIVEN
+        PackageIndex index = new PackageIndex();
+        TestPackage other = testPackage("TESTER", "UT_OTHER", "UT_X", 1);
+
+        // WHEN the second file is added first
+        index.add(1, Arrays.asList(testPackage("TESTER", "UT_A", "UT_TWO", 2)));
+        index.add(0, Arrays.asList(testPackage("TESTER", "UT_A", "UT_ONE", 3), other));
+        UtplsqlResult result = index.toResult();
+
+        // THEN
+        assertEquals("Number of packages", 2, result.getPackages().size());
+        TestPackage merged = result.getPackages().get(0);
+        assertEquals("Package of the first file first", "UT_A", merged.getName());
+        assertEquals("Asserts of both files", 5, merged.getTotalCount());
+        assertEquals("Failures of both files", 2, merged.getFailures());
+        assertEquals("Asserts of the first file first", "UT_ONE", merged.getTestCases().get(0).getProcedure());
+        assertEquals("Asserts of the second file last", "UT_TWO", merged.getTestCases().get(4).getProcedure());
+        assertEquals("Asserts of the second file are numbered on", "4UT_TWO", merged.getTestCases().get(3).getName());
+        assertSame("A package of a single file is kept", other, result.getPackages().get(1));
+    }
+
+    @Test
+    public void packagesOfDifferentSchemasAreNotMerged() {
+        // GIVEN
+        PackageIndex index = new PackageIndex();
+
+        // WHEN
+        index.add(0, Arrays.asList(testPackage("USER1", "UT_A", "UT_ONE", 1)));
+        index.add(1, Arrays.asList(testPackage("USER2", "UT_A", "UT_ONE", 1)));
+        UtplsqlResult result = index.toResult();
+
+        // THEN
+        assertEquals("Number of packages", 2, result.getPackages().size());
+        assertEquals("Schema of the first package", "USER1", result.getPackages().get(0).getSchema());
+    }
+
+    @Test
+    public void filesAddedConcurrentlyKeepTheirOrder() throws InterruptedException {
+        // GIVEN
+        final int files = 500;
+        final PackageIndex index = new PackageIndex();
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < files; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+
+        // WHEN
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (final int file : order) {
+            executor.submit(new Runnable() {
+                public void run() {
+                    index.add(file, Arrays.asList(
+                            testPackage("TESTER", "UT_SHARDED", "UT_FILE_" + file, 2),
+                            testPackage("TESTER", "UT_FILE_" + file, "UT_ONE", 1)));
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        UtplsqlResult result = index.toResult();
+
+        // THEN
+        assertEquals("All packages", files + 1, result.getPackages().size());
+        assertEquals("No assert is lost", files * 3, result.getTotalCount());
+        TestPackage sharded = result.getPackages().get(0);
+        assertEquals("Asserts of the sharded package", files * 2, sharded.getTotalCount());
+        for (int i = 0; i < files; i++) {
+            assertEquals("Asserts in the order of the files", "UT_FILE_" + i,
+                    sharded.getTestCases().get(2 * i).getProcedure());
+            assertEquals("Packages in the order of their first appearance", "UT_FILE_" + i,
+                    result.getPackages().get(i + 1).getName());
+        }
+    }
+
+    private static TestPackage testPackage(String schema, String name, String procedure, int asserts) {
+        TestPackage testPackage = new TestPackage(null, schema, name);
+        for (int i = 0; i < asserts; i++) {
+            testPackage.add(new Testcase(i == 0 ? Testcase.FAILURE : Testcase.SUCCESS, name,
+                    testPackage.getCounter() + procedure, 1000, "EQ \"" + i + "\""));
+        }
+        return testPackage;
+    }
+}
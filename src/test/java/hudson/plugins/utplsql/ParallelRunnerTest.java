@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ParallelRunner}, running against the {@link FakeDatabase}
+ */
+public class ParallelRunnerTest {
+
+    @Test
+    public void longestPackagesAreScheduledFirst() {
+        // GIVEN
+        Map<String, Long> expected = new HashMap<String, Long>();
+        expected.put("UT_SHORT", 10L);
+        expected.put("TESTER.UT_LONG", 1000L);
+        expected.put("UT_MEDIUM", 100L);
+
+        // WHEN
+        List<Integer> order = ParallelRunner.schedule(
+                Arrays.asList("ut_short", "UT_NEW", "tester.UT_LONG", "UT_MEDIUM", "UT_NEWER"), expected);
+
+        // THEN
+        assertEquals("Unknown packages first, then the longest", Arrays.asList(1, 4, 2, 3, 0), order);
+    }
+
+    @Test
+    public void expectedTimesAreFoundWithAndWithoutSchema() {
+        // GIVEN
+        List<PackageEntry> packages = Arrays.asList(
+                new PackageEntry(0, "USER1", "UT_A", 1, 0, 100, 0, 0),
+                new PackageEntry(1, "USER2", "UT_A", 1, 0, 300, 0, 0),
+                new PackageEntry(2, null, "UT_B", 1, 0, 50, 0, 0),
+                new PackageEntry(3, "USER1", "UT_A", 1, 0, 10, 0, 0));
+
+        // WHEN
+        Map<String, Long> expected = UtplsqlBuilder.expectedMicros(packages);
+
+        // THEN
+        assertEquals("Package of a schema, run twice", 110, ParallelRunner.expected("user1.ut_a", expected));
+        assertEquals("Package of the other schema", 300, ParallelRunner.expected("USER2.UT_A", expected));
+        assertEquals("Name alone finds the longest", 300, ParallelRunner.expected("UT_A", expected));
+        assertEquals("Package without schema", 50, ParallelRunner.expected("UT_B", expected));
+        assertEquals("Unknown schema", Long.MAX_VALUE, ParallelRunner.expected("USER3.UT_A", expected));
+    }
+
+    @Test
+    public void outputIsMergedInTheConfiguredOrder() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase();
+        List<String> names = new ArrayList<String>();
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 12; i++) {
+            String name = "UT_" + i;
+            names.add(name);
+            database.output(name, UtplsqlRunnerTest.lines(name + "-", 25)).delay(name, (i % 4) * 10);
+            lines.addAll(UtplsqlRunnerTest.lines(name + "-", 25));
+        }
+        List<String> received = new ArrayList<String>();
+
+        // WHEN
+        long count = new ParallelRunner(database, 10, 4).run(UtplsqlRunner.Mode.TEST, names,
+                new HashMap<String, Long>(), UtplsqlRunnerTest.collect(received));
+
+        // THEN
+        assertEquals("Number of lines", 300, count);
+        assertEquals("Lines in the configured order", lines, received);
+        assertEquals("Each package runs once", 12, new HashSet<String>(database.getCalls()).size());
+        assertTrue("Sessions run at the same time", database.getMaxOpenConnections() > 1);
+        assertTrue("At most 4 sessions", database.getMaxOpenConnections() <= 4);
+        assertEquals("Sessions are closed", 0, database.getOpenConnections());
+    }
+
+    @Test
+    public void mergedOutputIsParsedLikeASpoolFile() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase()
+                .outputOf("UT_FAKE", "OneFileOnePackage.log")
+                .outputOf("UT_BETWNSTR", "OneFileOneTestSuiteOnePackage.log")
+                .delay("UT_FAKE", 50);
+        UtplsqlTestResultParser.PackageCollector collector = new UtplsqlTestResultParser.PackageCollector(0, null);
+
+        // WHEN
+        new ParallelRunner(database, 7, 2).run(UtplsqlRunner.Mode.TEST, Arrays.asList("UT_FAKE", "UT_BETWNSTR"),
+                new HashMap<String, Long>(), collector);
+
+        // THEN
+        List<TestPackage> packages = collector.finish();
+        assertEquals("Number of packages", 2, packages.size());
+        assertEquals("Packages in the configured order", "UT_FAKE", packages.get(0).getName());
+        assertEquals("Packages in the configured order", "UT_BETWNSTR", packages.get(1).getName());
+        assertEquals("Number of total Testcases", 3, packages.get(1).getTotalCount());
+        assertEquals("Number of failed Testcases", 1, packages.get(1).getFailures());
+    }
+
+    @Test
+    public void longestPackagesAreStartedFirst() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase();
+        Map<String, Long> expected = new HashMap<String, Long>();
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 6; i++) {
+            names.add("UT_" + i);
+            database.output("UT_" + i, UtplsqlRunnerTest.lines("", 1)).delay("UT_" + i, 20);
+            expected.put("UT_" + i, (long) i);
+        }
+
+        // WHEN
+        new ParallelRunner(database, 10, 2).run(UtplsqlRunner.Mode.TEST, names, expected,
+                UtplsqlRunnerTest.collect(new ArrayList<String>()));
+
+        // THEN
+        assertEquals("The two longest packages are started first",
+                new HashSet<String>(Arrays.asList("utplsql.test(UT_5)", "utplsql.test(UT_4)")),
+                new HashSet<String>(database.getCalls().subList(0, 2)));
+    }
+
+    @Test
+    public void failingPackageStopsTheRun() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase()
+                .output("UT_A", UtplsqlRunnerTest.lines("a", 10))
+                .output("UT_B", UtplsqlRunnerTest.lines("b", 10));
+
+        // WHEN
+        try {
+            new ParallelRunner(database, 10, 2).run(UtplsqlRunner.Mode.TEST,
+                    Arrays.asList("UT_A", "UT_MISSING", "UT_B"), new HashMap<String, Long>(),
+                    UtplsqlRunnerTest.collect(new ArrayList<String>()));
+            fail("Unknown package must fail the run");
+        } catch (SQLException e) {
+            // THEN
+            assertTrue("Error of the database", e.getMessage().contains("UT_MISSING"));
+            assertEquals("Sessions are closed", 0, database.getOpenConnections());
+        }
+    }
+
+    @Test
+    public void errorInASessionFailsTheRun() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase()
+                .output("UT_A", UtplsqlRunnerTest.lines("a", 10))
+                .output("UT_B", UtplsqlRunnerTest.lines("b", 10));
+        DbmsOutputReader.LineHandler failing = new DbmsOutputReader.LineHandler() {
+            public void line(char[] chars, int offset, int length) {
+                throw new Error("handler failed");
+            }
+        };
+
+        // WHEN
+        try {
+            new ParallelRunner(database, 10, 2).run(UtplsqlRunner.Mode.TEST, Arrays.asList("UT_A", "UT_B"),
+                    new HashMap<String, Long>(), failing);
+            fail("Error in a session must fail the run");
+        } catch (Error e) {
+            // THEN
+            assertEquals("Error of the session", "handler failed", e.getMessage());
+            assertEquals("Sessions are closed", 0, database.getOpenConnections());
+        }
+    }
+
+    @Test
+    public void patternsAreReplacedByThePackages() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase()
+                .output("UT_B", UtplsqlRunnerTest.lines("b", 1))
+                .output("UT_A", UtplsqlRunnerTest.lines("a", 1))
+                .output("OTHER", UtplsqlRunnerTest.lines("o", 1));
+
+        // WHEN
+        List<String> packages = new ParallelRunner(database, 10, 2).discover(Arrays.asList("OTHER", "ut_%", "UT_A"));
+
+        // THEN
+        assertEquals("Packages", Arrays.asList("OTHER", "UT_A", "UT_B"), packages);
+        assertEquals("Names without patterns are kept",
+                Arrays.asList("UT_A"), new ParallelRunner(database, 10, 2).discover(Arrays.asList("UT_A")));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link ParseCache}
+ */
+public class ParseCacheTest {
+
+    private File directory;
+    private File log;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("parse-cache", "");
+        directory.delete();
+        directory.mkdirs();
+        log = File.createTempFile("parse-cache", ".log");
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        log.delete();
+    }
+
+    @Test
+    public void keyDependsOnContentAndSettings() throws IOException {
+        // GIVEN
+        ParseCache cache = new ParseCache(directory, 1024 * 1024);
+        new SyntheticLog().seed(1).writeTo(log);
+        String key = cache.key(log, "UTF-8/0");
+
+        // WHEN
+        String sameContent = cache.key(log, "UTF-8/0");
+        String otherSettings = cache.key(log, "UTF-8/100");
+        new SyntheticLog().seed(2).writeTo(log);
+        String otherContent = cache.key(log, "UTF-8/0");
+
+        // THEN
+        assertEquals("Same content and settings", key, sameContent);
+        assertFalse("Other settings", key.equals(otherSettings));
+        assertFalse("Other content", key.equals(otherContent));
+    }
+
+    @Test
+    public void packagesAreReturnedFromTheCache() throws IOException {
+        // GIVEN
+        ParseCache cache = new ParseCache(new File(directory, "created"), 1024 * 1024);
+        List<TestPackage> parsed = parse(new SyntheticLog().packages(2).assertsPerPackage(10).failureRatio(0.5));
+        String key = cache.key(log, "");
+
+        // WHEN
+        List<TestPackage> missing = cache.get(key);
+        cache.put(key, parsed);
+        List<TestPackage> cached = cache.get(key);
+
+        // THEN
+        assertNull("Not in the cache yet", missing);
+        assertEquals("Number of packages", 2, cached.size());
+        assertEquals("Name of a package", parsed.get(1).getName(), cached.get(1).getName());
+        assertEquals("Failures of a package", parsed.get(1).getFailures(), cached.get(1).getFailures());
+        assertEquals("Message of a testcase", parsed.get(1).getTestCases().get(3).getMessage(),
+                cached.get(1).getTestCases().get(3).getMessage());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        // GIVEN
+        List<TestPackage> parsed = parse(new SyntheticLog().packages(1).assertsPerPackage(100));
+        ParseCache probe = new ParseCache(directory, Long.MAX_VALUE);
+        probe.put("probe", parsed);
+        long entrySize = new File(directory, "probe.bin").length();
+        new File(directory, "probe.bin").delete();
+
+        ParseCache cache = new ParseCache(directory, 2 * entrySize);
+        cache.put("first", parsed);
+        cache.put("second", parsed);
+        new File(directory, "first.bin").setLastModified(System.currentTimeMillis() - 60000);
+        new File(directory, "second.bin").setLastModified(System.currentTimeMillis() - 120000);
+        cache.get("first");
+
+        // WHEN
+        cache.put("third", parsed);
+
+        // THEN
+        assertTrue("Recently used entry is kept", new File(directory, "first.bin").exists());
+        assertFalse("Least recently used entry is evicted", new File(directory, "second.bin").exists());
+        assertTrue("New entry is kept", new File(directory, "third.bin").exists());
+    }
+
+    @Test
+    public void brokenEntryIsDeleted() throws IOException {
+        // GIVEN
+        ParseCache cache = new ParseCache(directory, 1024 * 1024);
+        File entry = new File(directory, "broken.bin");
+        FileOutputStream out = new FileOutputStream(entry);
+        try {
+            out.write(new byte[] { 'U', 'T', 'P', 'L', 99 });
+        } finally {
+            out.close();
+        }
+
+        // WHEN
+        List<TestPackage> cached = cache.get("broken");
+
+        // THEN
+        assertNull("Broken entry is a miss", cached);
+        assertFalse("Broken entry is deleted", entry.exists());
+    }
+
+    private List<TestPackage> parse(SyntheticLog synthetic) throws IOException {
+        synthetic.writeTo(log);
+        UtplsqlTestResultParser.PackageCollector collector =
+                new UtplsqlTestResultParser.PackageCollector(0, null);
+        new DbmsOutputReader(null).read(log, collector);
+        return collector.finish();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link PublishStatistics}
+ */
+public class PublishStatisticsTest {
+
+    @Test
+    public void phasesAreAddedUp() {
+        // GIVEN
+        PublishStatistics statistics = new PublishStatistics();
+
+        // WHEN
+        statistics.add(PublishStatistics.Phase.PARSE, 1500000);
+        statistics.add(PublishStatistics.Phase.PARSE, 500000);
+        statistics.add(PublishStatistics.Phase.TRANSFER, 250000);
+
+        // THEN
+        Map<String, Double> millis = statistics.getPhaseMillis();
+        assertEquals("All phases in their order",
+                Arrays.asList("list", "parse", "junit", "encode", "transfer", "decode", "action"),
+                Arrays.asList(millis.keySet().toArray()));
+        assertEquals("Parse phase", 2.0, millis.get("parse"), 0.0);
+        assertEquals("Transfer phase", 0.25, millis.get("transfer"), 0.0);
+        assertEquals("Phase without time", 0.0, millis.get("list"), 0.0);
+        assertEquals("Total", 2.25, statistics.getTotalMillis(), 0.0);
+    }
+
+    @Test
+    public void inputOfTheFiles() throws IOException {
+        // GIVEN
+        PublishStatistics statistics = new PublishStatistics();
+        DbmsOutputReader reader = new DbmsOutputReader(null);
+        File file = File.createTempFile("statistics", ".log");
+        file.deleteOnExit();
+        new SyntheticLog().packages(2).assertsPerPackage(10).banners(false).writeTo(file);
+        UtplsqlTestResultParser.PackageCollector collector =
+                new UtplsqlTestResultParser.PackageCollector(0, null);
+        reader.read(file, collector);
+
+        // WHEN
+        statistics.addFile(reader, collector.finish());
+        statistics.addFile(reader, Arrays.asList(new TestPackage("EMPTY")));
+        statistics.add(PublishStatistics.Phase.PARSE, 1000000000L);
+
+        // THEN
+        assertEquals("Files", 2, statistics.getFiles());
+        assertEquals("Bytes of both files", 2 * file.length(), statistics.getBytesRead());
+        assertEquals("Lines per second", statistics.getLines(), statistics.getLinesPerSecond());
+        assertEquals("Asserts", 20, statistics.getAsserts());
+        assertEquals("Packages", 3, statistics.getPackages());
+        assertEquals("Largest package", 10, statistics.getLargestPackage());
+        assertTrue("Summary " + statistics, statistics.toString().contains(
+                "2 files (0 cached), " + 2 * file.length() + " bytes, "));
+    }
+}
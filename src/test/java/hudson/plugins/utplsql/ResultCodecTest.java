@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ResultCodec}
+ */
+public class ResultCodecTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void roundTripDeflated() throws IOException {
+        roundTrip(true);
+    }
+
+    private void roundTrip(boolean deflate) throws IOException {
+        // GIVEN
+        UtplsqlResult result = new UtplsqlResult();
+        TestPackage first = new TestPackage("ALL", "TESTER", "UT_FIRST");
+        first.add(new Testcase(first, "SUCCESS - UT_FIRST.UT_ONE [1,5 ms] : EQ \"\u00e4\u00f6\u00fc\""));
+        Testcase multiline = new Testcase(first, "FAILURE - UT_FIRST.UT_TWO [123456,789 ms] : EQQUERY \"diff");
+        multiline.appendToMessage("second line\"");
+        first.add(multiline);
+        first.add(new Testcase(first, "SUCCESS - UT_FIRST.UT_THREE:"));
+        result.add(first);
+        TestPackage second = new TestPackage("UT_SECOND");
+        second.add(new Testcase(second, "no testcase at all"));
+        result.add(second);
+
+        // WHEN
+        byte[] encoded = ResultCodec.encode(result, deflate);
+        ResultCodec.Header header = ResultCodec.readHeader(encoded);
+        UtplsqlResult decoded = ResultCodec.decode(encoded);
+
+        // THEN
+        assertEquals("Total count in header", 4, header.totalCount);
+        assertEquals("Fail count in header", 2, header.failCount);
+        assertEquals("Deflated", deflate, header.deflated);
+        assertEquals("Number of packages", 2, decoded.getPackages().size());
+        assertEquals("Total count", 4, decoded.getTotalCount());
+        assertEquals("Fail count", 2, decoded.getFailCount());
+        assertEquals("Duration", result.getDuration(), decoded.getDuration(), 0.0);
+        for (int p = 0; p < 2; p++) {
+            TestPackage expectedPackage = result.getPackages().get(p);
+            TestPackage decodedPackage = decoded.getPackages().get(p);
+            assertEquals("Package name", expectedPackage.getName(), decodedPackage.getName());
+            assertEquals("Suite", expectedPackage.getSuite(), decodedPackage.getSuite());
+            assertEquals("Schema", expectedPackage.getSchema(), decodedPackage.getSchema());
+            for (int c = 0; c < expectedPackage.getTotalCount(); c++) {
+                Testcase expected = expectedPackage.getTestCases().get(c);
+                Testcase actual = decodedPackage.getTestCases().get(c);
+                assertEquals("Result", expected.getResult(), actual.getResult());
+                assertEquals("Class name", expected.getClassName(), actual.getClassName());
+                assertEquals("Name", expected.getName(), actual.getName());
+                assertEquals("Elapsed time", expected.getElapsedMicros(), actual.getElapsedMicros());
+                assertEquals("Message", expected.getMessage(), actual.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void procedureIsStoredOnce() throws IOException {
+        // GIVEN
+        UtplsqlResult result = new UtplsqlResult();
+        TestPackage testPackage = new TestPackage("UT_PKG");
+        for (int i = 0; i < 20; i++) {
+            testPackage.add(new Testcase(testPackage, "SUCCESS - UT_PKG.UT_SAME: EQ \"" + i + "\""));
+        }
+        testPackage.add(new Testcase(testPackage, "no testcase at all"));
+        testPackage.add(new Testcase(testPackage, "SUCCESS - UT_PKG.UT_SAME: EQ \"last\""));
+        result.add(testPackage);
+
+        // WHEN
+        byte[] encoded = ResultCodec.encode(result, false);
+        UtplsqlResult decoded = ResultCodec.decode(encoded);
+
+        // THEN
+        assertEquals("Procedure in the table once", 1, count(new String(encoded, "UTF-8"), "UT_SAME"));
+        List<Testcase> testcases = decoded.getPackages().get(0).getTestCases();
+        assertEquals("Name numbered again", "20UT_SAME", testcases.get(19).getName());
+        assertEquals("Name without counter", testPackage.getTestCases().get(20).getName(),
+                testcases.get(20).getName());
+        assertEquals("Numbered on after a name without counter", "21UT_SAME", testcases.get(21).getName());
+    }
+
+    @Test
+    public void varints() throws IOException {
+        long[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            ResultCodec.writeVarint(out, value);
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        for (long value : values) {
+            assertEquals("Varint", value, ResultCodec.readVarint(in));
+        }
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
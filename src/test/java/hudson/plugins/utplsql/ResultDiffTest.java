@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ResultDiff}
+ */
+public class ResultDiffTest {
+
+    @Test
+    public void newFailuresFixedAndSlower() throws IOException {
+        // GIVEN
+        UtplsqlResult reference = result(
+                "SUCCESS - UT_A.UT_ONE [1,000 ms] : EQ \"one\" Expected \"1\" and got \"1\"",
+                "FAILURE - UT_A.UT_TWO [1,000 ms] : EQ \"two\" Expected \"1\" and got \"2\"",
+                "SUCCESS - UT_A.UT_THREE [1,000 ms] : EQ \"three\" Expected \"1\" and got \"1\"",
+                "SUCCESS - UT_A.UT_GONE [1,000 ms] : EQ \"gone\" Expected \"1\" and got \"1\"");
+        UtplsqlResult current = result(
+                "SUCCESS - UT_A.UT_NEW [1,000 ms] : EQ \"new\" Expected \"1\" and got \"1\"",
+                "FAILURE - UT_A.UT_ONE [1,000 ms] : EQ \"one\" Expected \"1\" and got \"3\"",
+                "SUCCESS - UT_A.UT_TWO [1,000 ms] : EQ \"two\" Expected \"1\" and got \"1\"",
+                "SUCCESS - UT_A.UT_THREE [50,000 ms] : EQ \"three\" Expected \"1\" and got \"1\"");
+
+        // WHEN
+        ResultDiff diff = diff(7, reference, current, ResultDiff.SLOWER_PERCENT, ResultDiff.SLOWER_MILLIS);
+
+        // THEN
+        assertEquals("Reference build", 7, diff.getReferenceBuild());
+        assertEquals("New failures", 1, diff.getNewFailureCount());
+        assertEquals("New failure without the counter", current.getPackages().get(0).getTestCases().get(1).getStableName(),
+                diff.getNewFailures().get(0).getName());
+        assertTrue("New failure without the counter", diff.getNewFailures().get(0).getName().startsWith("UT_ONE:"));
+        assertEquals("Message of the new failure", "EQ \"one\" Expected \"1\" and got \"3\"",
+                diff.getNewFailures().get(0).getMessage());
+        assertEquals("Fixed", 1, diff.getFixedCount());
+        assertEquals("Fixed assert", "UT_A", diff.getFixed().get(0).getPackageName());
+        assertEquals("Slower", 1, diff.getSlowerCount());
+        assertEquals("Slower assert", 50.0, diff.getSlower().get(0).getCurrentMillis(), 1e-9);
+        assertEquals("Added", 1, diff.getAddedCount());
+        assertEquals("Removed", 1, diff.getRemovedCount());
+        assertTrue("Log names the reference: " + diff.describe(), diff.describe().contains("build #7"));
+    }
+
+    @Test
+    public void failingNewAssertIsANewFailure() throws IOException {
+        // GIVEN
+        UtplsqlResult reference = result("SUCCESS - UT_A.UT_ONE: EQ \"one\" Expected \"1\" and got \"1\"");
+        UtplsqlResult current = result(
+                "SUCCESS - UT_A.UT_ONE: EQ \"one\" Expected \"1\" and got \"1\"",
+                "FAILURE - UT_A.UT_ONE: EQ \"another\" Expected \"1\" and got \"2\"");
+
+        // WHEN
+        ResultDiff diff = diff(1, reference, current, 0, 0);
+
+        // THEN
+        assertEquals("New failures", 1, diff.getNewFailureCount());
+        assertFalse("Not in the reference", diff.getNewFailures().get(0).isInReference());
+        assertEquals("Added", 1, diff.getAddedCount());
+    }
+
+    @Test
+    public void sameResultIsEmpty() throws IOException {
+        // GIVEN
+        SyntheticLog log = new SyntheticLog().packages(3).assertsPerPackage(50).failureRatio(0.1);
+
+        // WHEN
+        ResultDiff diff = diff(1, parse(log.toString()), parse(log.toString()), 0, 0);
+
+        // THEN
+        assertTrue("No changes: " + diff.getSummary(), diff.isEmpty());
+    }
+
+    @Test
+    public void onlyTheFirstChangesAreListed() throws IOException {
+        // GIVEN
+        SyntheticLog log = new SyntheticLog().packages(1).assertsPerPackage(ResultDiff.LISTED * 2).failureRatio(1);
+
+        // WHEN
+        ResultDiff diff = diff(1, new UtplsqlResult(), parse(log.toString()), 0, 0);
+
+        // THEN
+        assertEquals("All are counted", ResultDiff.LISTED * 2, diff.getNewFailureCount());
+        assertEquals("Only some are listed", ResultDiff.LISTED, diff.getNewFailures().size());
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        // GIVEN
+        ResultDiff diff = diff(3, result("FAILURE - UT_A.UT_ONE: EQ \"one\""),
+                result("SUCCESS - UT_A.UT_ONE: EQ \"one\""), 0, 0);
+        File file = File.createTempFile("utplsql-diff", ".ser");
+
+        // WHEN
+        ResultDiff loaded;
+        try {
+            diff.save(file);
+            loaded = ResultDiff.load(file);
+        } finally {
+            file.delete();
+        }
+
+        // THEN
+        assertEquals("Reference build", 3, loaded.getReferenceBuild());
+        assertEquals("Fixed", diff.getFixed().get(0).getId(), loaded.getFixed().get(0).getId());
+    }
+
+    @Test
+    public void referenceIsReadFromTheHistoryIndex() throws IOException {
+        // GIVEN
+        File directory = File.createTempFile("history-index", "");
+        directory.delete();
+        directory.mkdirs();
+        HistoryIndex history = new HistoryIndex(directory);
+        history.append(1, result(
+                "SUCCESS - UT_A.UT_ONE [1,000 ms] : EQ \"one\" Expected \"1\" and got \"1\"",
+                "FAILURE - UT_A.UT_TWO [1,000 ms] : EQ \"two\" Expected \"1\" and got \"2\""));
+        history.append(2, result(
+                "FAILURE - UT_A.UT_ONE [1,000 ms] : EQ \"one\" Expected \"1\" and got \"3\"",
+                "SUCCESS - UT_A.UT_TWO [1,000 ms] : EQ \"two\" Expected \"1\" and got \"1\""));
+        UtplsqlResult current = result(
+                "FAILURE - UT_A.UT_ONE [1,000 ms] : EQ \"one\" Expected \"1\" and got \"3\"");
+
+        // WHEN
+        ResultDiff diff;
+        try {
+            diff = ResultDiff.of(history, 1, 2, current, 0, 0);
+        } finally {
+            File files = new File(directory, HistoryIndex.DIRECTORY);
+            for (File file : files.listFiles()) {
+                file.delete();
+            }
+            files.delete();
+            directory.delete();
+        }
+
+        // THEN
+        assertEquals("Failure against the reference build, not the latest", 1, diff.getNewFailureCount());
+        assertEquals("Assert gone since the reference build", 1, diff.getRemovedCount());
+        assertEquals("No assert added", 0, diff.getAddedCount());
+    }
+
+    /**
+     * Diffs against the asserts of a reference result, as the {@link HistoryIndex} returns them
+     */
+    private static ResultDiff diff(int referenceBuild, UtplsqlResult reference, UtplsqlResult current,
+                                   double relativeThreshold, double absoluteThresholdMillis) {
+        Map<String, HistoryEntry> entries = new HashMap<String, HistoryEntry>();
+        for (TestPackage testPackage : reference.getPackages()) {
+            for (Testcase testcase : testPackage.getTestCases()) {
+                entries.put(testcase.getId(),
+                        new HistoryEntry(referenceBuild, testcase.getResult(), testcase.getElapsedMicros()));
+            }
+        }
+        return ResultDiff.of(referenceBuild, reference.getTotalCount(), entries, current, relativeThreshold,
+                absoluteThresholdMillis);
+    }
+
+    private static UtplsqlResult result(String... lines) throws IOException {
+        StringBuilder log = new StringBuilder("SUCCESS: \"TESTER.UT_A\"\n");
+        for (String line : lines) {
+            log.append(line).append('\n');
+        }
+        return parse(log.toString());
+    }
+
+    private static UtplsqlResult parse(String log) throws IOException {
+        final UtplsqlResult result = new UtplsqlResult();
+        IncrementalParser parser = new IncrementalParser(0, null, new IncrementalParser.Listener() {
+            public void testcase(Testcase testcase) {
+            }
+
+            public void testPackage(TestPackage testPackage) {
+                result.add(testPackage);
+            }
+        });
+        parser.chars(log.toCharArray(), 0, log.length());
+        parser.finish();
+        return result;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ResultNode}
+ */
+public class ResultNodeTest {
+
+    private static final String LOG = "SUITE FAILURE: \"ALL\"\n"
+            + "SUITE STATS: 1 of 2 packages succeeded.\n"
+            + "FAILURE: \"USER1.UT_A\" Run ID: 1\n"
+            + "SUCCESS - UT_A.UT_ONE [1,000 ms] : EQ \"one\" Expected \"1\" and got \"1\"\n"
+            + "FAILURE - UT_A.UT_ONE [2,000 ms] : EQ \"two\" Expected \"1\" and got \"2\"\n"
+            + "SUCCESS - UT_A.UT_TWO [3,000 ms] : EQ \"three\" Expected \"1\" and got \"1\"\n"
+            + "SUCCESS: \"USER2.UT_B\" Run ID: 2\n"
+            + "SUCCESS - UT_B.UT_ONE [4,000 ms] : EQ \"one\" Expected \"1\" and got \"1\"\n"
+            + "SUITE SUCCESS: \"OTHER\"\n"
+            + "SUCCESS: \"UT_C\"\n"
+            + "SUCCESS - UT_C.UT_ONE: EQ \"one\" Expected \"1\" and got \"1\"\n";
+
+    @Test
+    public void countsAreAggregatedAlongThePath() throws IOException {
+        // GIVEN
+        UtplsqlResult result = parse(LOG);
+
+        // WHEN
+        ResultNode root = result.getTree();
+
+        // THEN
+        assertEquals("All asserts", 5, root.getTotalCount());
+        assertEquals("All failures", 1, root.getFailCount());
+        assertEquals("Suites", 2, root.getChildren().size());
+        ResultNode all = root.getChild("ALL");
+        assertEquals("Kind of a suite", ResultNode.Kind.SUITE, all.getKind());
+        assertEquals("Asserts of the suite", 4, all.getTotalCount());
+        assertEquals("Schemas of the suite", 2, all.getChildren().size());
+        ResultNode procedure = all.getChild("USER1").getChild("UT_A").getChild("UT_ONE");
+        assertEquals("Kind of a procedure", ResultNode.Kind.PROCEDURE, procedure.getKind());
+        assertEquals("Asserts of the procedure", 2, procedure.getTotalCount());
+        assertEquals("Failures of the procedure", 1, procedure.getFailCount());
+        assertEquals("Duration of the procedure", 0.003, procedure.getDuration(), 1e-9);
+        assertEquals("Duration of the schema", 0.006, all.getChild("USER1").getDuration(), 1e-9);
+        assertEquals("Path", 4, procedure.getPath().size());
+        assertEquals("Package without schema", 1,
+                root.getChild("OTHER").getChild(ResultNode.NONE).getChild("UT_C").getTotalCount());
+    }
+
+    @Test
+    public void packagesOutsideOfSuites() throws IOException {
+        // GIVEN
+        UtplsqlResult result = parse("SUCCESS: \"TESTER.UT_A\"\n"
+                + "SUCCESS - UT_A.UT_ONE: EQ \"one\" Expected \"1\" and got \"1\"\n");
+
+        // WHEN
+        ResultNode root = result.getTree();
+
+        // THEN
+        assertEquals("Package without suite", 1,
+                root.getChild(ResultNode.NONE).getChild("TESTER").getChild("UT_A").getTotalCount());
+        assertNull("Unknown child", root.getChild("UT_A"));
+    }
+
+    @Test
+    public void assertsOfAProcedureAreLoadedWithThePackage() throws IOException {
+        // GIVEN a stored result without saved tree
+        File file = File.createTempFile("result-node", ".dat");
+        ResultStore.write(file, parse(LOG));
+
+        // WHEN
+        List<Testcase> testcases;
+        try {
+            testcases = ResultStore.open(file).getTree().getChild("ALL").getChild("USER1").getChild("UT_A")
+                    .getChild("UT_ONE").getTestCases();
+        } finally {
+            file.delete();
+        }
+
+        // THEN
+        assertEquals("Asserts of the procedure", 2, testcases.size());
+        assertEquals("Second assert", Testcase.FAILURE, testcases.get(1).getResult());
+    }
+
+    @Test
+    public void treeOfAStoredResult() throws IOException {
+        // GIVEN
+        File directory = File.createTempFile("result-node", "");
+        directory.delete();
+        directory.mkdirs();
+        File file = new File(directory, ResultStore.FILE_NAME);
+        File treeFile = new File(directory, ResultNode.FILE_NAME);
+        UtplsqlResult result = parse(LOG);
+
+        // WHEN
+        List<Testcase> testcases;
+        ResultNode loaded;
+        try {
+            ResultStore.write(file, result);
+            result.getTree().save(treeFile);
+            loaded = ResultStore.open(file).getTree();
+            testcases = loaded.getChild("ALL").getChild("USER2").getChild("UT_B").getChild("UT_ONE").getTestCases();
+        } finally {
+            file.delete();
+            treeFile.delete();
+            directory.delete();
+        }
+
+        // THEN
+        assertEquals("All asserts", 5, loaded.getTotalCount());
+        assertEquals("Asserts loaded from the result file", 1, testcases.size());
+    }
+
+    static UtplsqlResult parse(String log) throws IOException {
+        final UtplsqlResult result = new UtplsqlResult();
+        IncrementalParser parser = new IncrementalParser(0, null, new IncrementalParser.Listener() {
+            public void testcase(Testcase testcase) {
+            }
+
+            public void testPackage(TestPackage testPackage) {
+                result.add(testPackage);
+            }
+        });
+        parser.chars(log.toCharArray(), 0, log.length());
+        parser.finish();
+        return result;
+    }
+}
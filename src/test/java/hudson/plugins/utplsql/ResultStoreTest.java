@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link ResultStore}, {@link StoredResult} and {@link ResultCache}
+ */
+public class ResultStoreTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("utplsql-result", ".dat");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void directoryIsReadWithoutTestcases() throws IOException {
+        // GIVEN
+        ResultStore.write(file, result(3, 2, 1));
+
+        // WHEN
+        StoredResult stored = ResultStore.open(file);
+
+        // THEN
+        assertEquals("Total count", 6, stored.getTotalCount());
+        assertEquals("Fail count", 3, stored.getFailCount());
+        assertEquals("Number of packages", 3, stored.getPackages().size());
+        PackageEntry second = stored.getPackages().get(1);
+        assertEquals("Name of a package", "UT_PACKAGE_1", second.getName());
+        assertEquals("Testcases of a package", 2, second.getTotalCount());
+        assertEquals("Failures of a package", 1, second.getFailures());
+        assertEquals("Duration of a package", 0.002, second.getDuration(), 1e-9);
+    }
+
+    @Test
+    public void singlePackageIsLoaded() throws IOException {
+        // GIVEN
+        ResultStore.write(file, result(3, 2, 1));
+        StoredResult stored = ResultStore.open(file);
+
+        // WHEN
+        TestPackage testPackage = stored.getPackage("UT_PACKAGE_2");
+
+        // THEN
+        assertEquals("Testcases of the package", 1, testPackage.getTotalCount());
+        Testcase testcase = testPackage.getTestCases().get(0);
+        assertEquals("Class of a testcase", "UT_PACKAGE_2", testcase.getClassName());
+        assertEquals("Message of a testcase", "message 0", testcase.getMessage());
+        assertNull("Unknown package", stored.getPackage("UT_UNKNOWN"));
+    }
+
+    @Test
+    public void packagesOfDifferentSchemasAreLoadedByQualifiedName() throws IOException {
+        // GIVEN
+        UtplsqlResult result = new UtplsqlResult();
+        result.add(new TestPackage(null, "USER1", "UT_PACKAGE"));
+        TestPackage second = new TestPackage(null, "USER2", "UT_PACKAGE");
+        second.add(new Testcase(Testcase.SUCCESS, "UT_PACKAGE", "1UT_PROCEDURE", 1000, "message"));
+        result.add(second);
+        ResultStore.write(file, result);
+        StoredResult stored = ResultStore.open(file);
+
+        // WHEN
+        TestPackage testPackage = stored.getPackage("USER2.UT_PACKAGE");
+
+        // THEN
+        assertEquals("Schema in the directory", "USER1", stored.getPackages().get(0).getSchema());
+        assertEquals("Package of the second schema", 1, testPackage.getTotalCount());
+        assertNull("Name without the schema", stored.getPackage("UT_PACKAGE"));
+    }
+
+    @Test
+    public void allPackagesAreLoaded() throws IOException {
+        // GIVEN
+        ResultStore.write(file, result(3, 2, 1));
+
+        // WHEN
+        UtplsqlResult loaded = ResultStore.open(file).getResult();
+
+        // THEN
+        assertEquals("Total count", 6, loaded.getTotalCount());
+        assertEquals("Last package", "UT_PACKAGE_2", loaded.getPackages().get(2).getName());
+    }
+
+    @Test
+    public void cacheReturnsLoadedPackages() throws IOException {
+        // GIVEN
+        ResultStore.write(file, result(3, 2, 1));
+        StoredResult stored = ResultStore.open(file);
+        ResultCache cache = new ResultCache(100);
+
+        // WHEN
+        TestPackage first = cache.get(file, stored.getPackages().get(0));
+        TestPackage again = cache.get(file, stored.getPackages().get(0));
+
+        // THEN
+        assertSame("Package from the cache", first, again);
+        assertEquals("Cached testcases", 3, cache.getCachedCases());
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsed() throws IOException {
+        // GIVEN
+        ResultStore.write(file, result(3, 2, 1));
+        StoredResult stored = ResultStore.open(file);
+        ResultCache cache = new ResultCache(5);
+        TestPackage first = cache.get(file, stored.getPackages().get(0));
+        cache.get(file, stored.getPackages().get(2));
+        cache.get(file, stored.getPackages().get(0));
+
+        // WHEN
+        cache.get(file, stored.getPackages().get(1));
+
+        // THEN
+        assertEquals("Only the least recently used package is evicted", 5, cache.getCachedCases());
+        assertSame("Package used recently is still cached", first, cache.get(file, stored.getPackages().get(0)));
+    }
+
+    @Test
+    public void packageLargerThanTheCacheIsReturned() throws IOException {
+        // GIVEN
+        ResultStore.write(file, result(3));
+        StoredResult stored = ResultStore.open(file);
+        ResultCache cache = new ResultCache(1);
+
+        // WHEN
+        TestPackage testPackage = cache.get(file, stored.getPackages().get(0));
+
+        // THEN
+        assertEquals("Testcases of the package", 3, testPackage.getTotalCount());
+    }
+
+    /**
+     * @param casesPerPackage number of testcases per package, the first one of each package fails
+     */
+    private static UtplsqlResult result(int... casesPerPackage) {
+        UtplsqlResult result = new UtplsqlResult();
+        for (int p = 0; p < casesPerPackage.length; p++) {
+            String name = "UT_PACKAGE_" + p;
+            TestPackage testPackage = new TestPackage(name);
+            for (int c = 0; c < casesPerPackage[p]; c++) {
+                testPackage.add(new Testcase(c == 0 ? Testcase.FAILURE : Testcase.SUCCESS,
+                        name, (c + 1) + "UT_PROCEDURE", 1000, "message " + c));
+            }
+            result.add(testPackage);
+        }
+        return result;
+    }
+}
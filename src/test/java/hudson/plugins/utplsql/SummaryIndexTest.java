@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link SummaryIndex}
+ */
+public class SummaryIndexTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("summary-index", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void trendInBuildNumberOrder() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        index.append(summary(2, 10, 1, "UT_B"));
+        index.append(summary(1, 10, 0));
+        index.append(summary(3, 12, 2, "UT_A", "UT_B"));
+
+        // WHEN
+        List<BuildSummary> trend = index.readTrend(10);
+
+        // THEN
+        assertEquals("Number of builds", 3, trend.size());
+        assertEquals("First build", 1, trend.get(0).getBuildNumber());
+        assertEquals("Last build", 3, trend.get(2).getBuildNumber());
+        assertEquals("Total count", 12, trend.get(2).getTotalCount());
+        assertEquals("Fail count", 2, trend.get(2).getFailCount());
+        assertEquals("Duration", 0.012, trend.get(2).getDuration(), 1e-9);
+        assertEquals("Package failures are not read for the trend", 0, trend.get(2).getPackageFailures().size());
+    }
+
+    @Test
+    public void trendIsLimitedToTheLatestBuilds() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        for (int build = 1; build <= 5; build++) {
+            index.append(summary(build, 10, 0));
+        }
+
+        // WHEN
+        List<BuildSummary> trend = index.readTrend(2);
+
+        // THEN
+        assertEquals("Number of builds", 2, trend.size());
+        assertEquals("Oldest build shown", 4, trend.get(0).getBuildNumber());
+    }
+
+    @Test
+    public void packageFailuresOfSomeBuilds() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        index.append(summary(1, 10, 1, "UT_C"));
+        index.append(summary(2, 10, 1, "UT_A"));
+        index.append(summary(3, 10, 2, "UT_A", "UT_B"));
+        index.append(summary(4, 10, 0));
+
+        // WHEN
+        Map<String, Integer> failures = index.readPackageFailures(Arrays.asList(2, 3, 4, 5));
+
+        // THEN
+        assertEquals("Failed packages", 2, failures.size());
+        assertEquals("Failures summed up", Integer.valueOf(2), failures.get("UT_A"));
+        assertEquals("Failures of a package", Integer.valueOf(1), failures.get("UT_B"));
+        assertNull("Build not asked for", failures.get("UT_C"));
+    }
+
+    @Test
+    public void lastRecordOfABuildWins() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        index.append(summary(1, 10, 1, "UT_A"));
+
+        // WHEN
+        index.append(summary(1, 20, 0));
+
+        // THEN
+        assertEquals("Number of builds", 1, index.readTrend(10).size());
+        assertEquals("Total count of the last record", 20, index.readTrend(10).get(0).getTotalCount());
+        assertEquals("Package failures of the last record", 0,
+                index.readPackageFailures(Collections.singleton(1)).size());
+    }
+
+    @Test
+    public void incompleteRecordIsIgnoredAndOverwritten() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        index.append(summary(1, 10, 0));
+        RandomAccessFile records = new RandomAccessFile(new File(directory, SummaryIndex.RECORDS), "rw");
+        try {
+            records.seek(records.length());
+            records.write(new byte[] { 0, 0, 0, 2, 0, 0 });
+        } finally {
+            records.close();
+        }
+
+        // WHEN
+        List<BuildSummary> beforeAppend = index.readTrend(10);
+        index.append(summary(3, 10, 0));
+
+        // THEN
+        assertEquals("Incomplete record is ignored", 1, beforeAppend.size());
+        assertEquals("Size of the index", SummaryIndex.HEADER_SIZE + 2 * SummaryIndex.RECORD_SIZE,
+                new File(directory, SummaryIndex.RECORDS).length());
+        assertEquals("Appended build", 3, index.readTrend(10).get(1).getBuildNumber());
+    }
+
+    @Test
+    public void packageFailuresByQualifiedName() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        UtplsqlResult result = new UtplsqlResult();
+        for (String schema : new String[] { "USER1", "USER2" }) {
+            TestPackage testPackage = new TestPackage(null, schema, "UT_A");
+            testPackage.add(new Testcase(Testcase.FAILURE, "UT_A", "1UT_FAILED", 1000, "failed"));
+            result.add(testPackage);
+        }
+
+        // WHEN
+        index.append(BuildSummary.of(1, result));
+
+        // THEN
+        Map<String, Integer> failures = index.readPackageFailures(Collections.singleton(1));
+        assertEquals("Packages of both schemas", 2, failures.size());
+        assertEquals("Package of a schema", Integer.valueOf(1), failures.get("USER1.UT_A"));
+    }
+
+    @Test
+    public void recordsOfDeletedBuildsAreDroppedOnceTheyOutnumberTheOthers() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        for (int build = 1; build <= 5; build++) {
+            index.append(summary(build, 10, 1, "UT_" + build));
+        }
+        index.append(summary(5, 10, 1, "UT_LAST"));
+
+        // WHEN
+        boolean fewStale = index.compact(Arrays.asList(2, 3, 4, 5));
+        boolean manyStale = index.compact(Arrays.asList(4, 5));
+        index.append(summary(6, 10, 0));
+
+        // THEN
+        assertFalse("Not compacted while the stale records are fewer", fewStale);
+        assertTrue("Compacted once the stale records are more", manyStale);
+        List<BuildSummary> trend = index.readTrend(10);
+        assertEquals("Builds kept and appended", 3, trend.size());
+        assertEquals("Oldest build kept", 4, trend.get(0).getBuildNumber());
+        assertEquals("Size of the index", SummaryIndex.HEADER_SIZE + 3 * SummaryIndex.RECORD_SIZE,
+                new File(directory, SummaryIndex.RECORDS).length());
+        Map<String, Integer> failures = index.readPackageFailures(Arrays.asList(4, 5));
+        assertEquals("Failures of the builds kept", 2, failures.size());
+        assertEquals("Last record of a build", Integer.valueOf(1), failures.get("UT_LAST"));
+    }
+
+    @Test
+    public void packageFailuresAreSkippedAfterAnInterruptedCompaction() throws IOException {
+        // GIVEN
+        SummaryIndex index = new SummaryIndex(directory);
+        for (int build = 1; build <= 3; build++) {
+            index.append(summary(build, 10, 1, "UT_" + build));
+        }
+        File records = new File(directory, SummaryIndex.RECORDS);
+        byte[] before = read(records);
+        index.compact(Collections.singleton(3));
+
+        // WHEN the records are not replaced
+        write(records, before);
+        SummaryIndex.invalidate(directory);
+
+        // THEN
+        assertEquals("Records before the compaction", 3, index.readTrend(10).size());
+        assertEquals("Failures of other builds are skipped", 0,
+                index.readPackageFailures(Arrays.asList(1, 2, 3)).size());
+    }
+
+    /**
+     * @param failedPackages packages with one failure each
+     */
+    private static BuildSummary summary(int build, int total, int failed, String... failedPackages) {
+        UtplsqlResult result = new UtplsqlResult();
+        TestPackage passed = new TestPackage("UT_PASSED");
+        for (int i = failedPackages.length; i < total; i++) {
+            passed.add(new Testcase(Testcase.SUCCESS, "UT_PASSED", "1UT_OK", 1000, ""));
+        }
+        result.add(passed);
+        for (String name : failedPackages) {
+            TestPackage testPackage = new TestPackage(name);
+            testPackage.add(new Testcase(Testcase.FAILURE, name, "1UT_FAILED", 1000, "failed"));
+            result.add(testPackage);
+        }
+        assertEquals("Failures of the test data", failed, result.getFailCount());
+        return BuildSummary.of(build, result);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates realistic dbms_output of utPLSQL runs of any size for benchmarks and
+ * scaling tests: package banners in ascii art, setup and teardown lines, elapsed
+ * times with ',' or '.' as decimal separator and multiline failure messages.
+ * The output only depends on the settings and the seed.
+ */
+public class SyntheticLog {
+
+    /**
+     * How elapsed times are printed
+     */
+    public enum ElapsedTime {
+        /** no elapsed time at all, like older utPLSQL versions */
+        NONE,
+        /** [1,101 ms] */
+        COMMA,
+        /** [1.101 ms] */
+        DOT,
+        /** randomly one of the above */
+        MIXED
+    }
+
+    private static final String[] FAILURE_BANNER = {
+        ">  FFFFFFF   AA     III  L      U     U RRRRR   EEEEEEE",
+        ">  F        A  A     I   L      U     U R    R  E",
+        ">  F       A    A    I   L      U     U R     R E",
+        ">  F      A      A   I   L      U     U R     R E",
+        ">  FFFF   A      A   I   L      U     U RRRRRR  EEEE",
+        ">  F      AAAAAAAA   I   L      U     U R   R   E",
+        ">  F      A      A   I   L      U     U R    R  E",
+        ">  F      A      A   I   L       U   U  R     R E",
+        ">  F      A      A  III  LLLLLLL  UUU   R     R EEEEEEE",
+    };
+
+    private static final String[] SUCCESS_BANNER = {
+        ">    SSSS   U     U  CCC     CCC   EEEEEEE   SSSS     SSSS",
+        ">   S    S  U     U C   C   C   C  E        S    S   S    S",
+        ">  S        U     U C     C C     C E       S        S",
+        ">   S       U     U C       C       E        S        S",
+        ">    SSSS   U     U C       C       EEEE      SSSS     SSSS",
+        ">        S  U     U C       C       E             S        S",
+        ">         S U     U C     C C     C E              S        S",
+        ">   S    S   U   U   C   C   C   C  E        S    S   S    S",
+        ">    SSSS     UUU     CCC     CCC   EEEEEEE   SSSS     SSSS",
+    };
+
+    private int packages = 1;
+    private int assertsPerPackage = 100;
+    private double failureRatio = 0.01;
+    private int messageLines = 1;
+    private boolean banners = true;
+    private boolean setupAndTeardown = true;
+    private ElapsedTime elapsedTime = ElapsedTime.COMMA;
+    private long seed = 42;
+
+    public SyntheticLog packages(int packages) {
+        this.packages = packages;
+        return this;
+    }
+
+    public SyntheticLog assertsPerPackage(int assertsPerPackage) {
+        this.assertsPerPackage = assertsPerPackage;
+        return this;
+    }
+
+    public SyntheticLog failureRatio(double failureRatio) {
+        this.failureRatio = failureRatio;
+        return this;
+    }
+
+    /**
+     * @param messageLines number of lines of the message of failing asserts
+     */
+    public SyntheticLog messageLines(int messageLines) {
+        this.messageLines = messageLines;
+        return this;
+    }
+
+    public SyntheticLog banners(boolean banners) {
+        this.banners = banners;
+        return this;
+    }
+
+    public SyntheticLog setupAndTeardown(boolean setupAndTeardown) {
+        this.setupAndTeardown = setupAndTeardown;
+        return this;
+    }
+
+    public SyntheticLog elapsedTime(ElapsedTime elapsedTime) {
+        this.elapsedTime = elapsedTime;
+        return this;
+    }
+
+    public SyntheticLog seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getTotalCount() {
+        return packages * assertsPerPackage;
+    }
+
+    /**
+     * @return the number of failing asserts, which are generated
+     */
+    public int getFailCount() {
+        Random failures = new Random(seed);
+        int count = 0;
+        for (int i = 0; i < getTotalCount(); i++) {
+            if (failures.nextDouble() < failureRatio) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void writeTo(File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 64 * 1024);
+        try {
+            writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return only the first line of each assert, without package headers
+     */
+    public String[] assertLines() {
+        Random failures = new Random(seed);
+        Random values = new Random(seed + 1);
+        String[] lines = new String[getTotalCount()];
+        int i = 0;
+        for (int p = 0; p < packages; p++) {
+            for (int a = 0; a < assertsPerPackage; a++) {
+                lines[i++] = assertLine(values, failures.nextDouble() < failureRatio, "UT_PACKAGE_" + p, a);
+            }
+        }
+        return lines;
+    }
+
+    public void writeTo(Writer out) throws IOException {
+        Random failures = new Random(seed);
+        Random values = new Random(seed + 1);
+        for (int p = 0; p < packages; p++) {
+            String packageName = "UT_PACKAGE_" + p;
+            boolean[] failed = new boolean[assertsPerPackage];
+            boolean packageFailed = false;
+            for (int a = 0; a < assertsPerPackage; a++) {
+                failed[a] = failures.nextDouble() < failureRatio;
+                packageFailed |= failed[a];
+            }
+            if (setupAndTeardown) {
+                out.write("Ran setup\nRan teardown\n");
+            }
+            out.write(".\n");
+            if (banners) {
+                for (String line : packageFailed ? FAILURE_BANNER : SUCCESS_BANNER) {
+                    out.write(line);
+                    out.write("\n");
+                }
+                out.write(".\n");
+            }
+            out.write((packageFailed ? "FAILURE" : "SUCCESS") + ": \"TESTER." + packageName + "\" Run ID: " + (p + 1) + "\n");
+            out.write(".\n");
+            out.write("> Individual Test Case Results:\n");
+            out.write(">\n");
+            for (int a = 0; a < assertsPerPackage; a++) {
+                out.write(assertLine(values, failed[a], packageName, a));
+                out.write("\n");
+                if (failed[a]) {
+                    for (int l = 1; l < messageLines; l++) {
+                        out.write("row " + l + " differs: expected \"" + values.nextInt(1000) + "\"\n");
+                    }
+                }
+                out.write(">\n");
+            }
+            out.write(">\n> Errors recorded in utPLSQL Error Log:\n>\n> NONE FOUND\n\n");
+            out.write("PL/SQL procedure successfully completed.\n\n");
+        }
+    }
+
+    private String assertLine(Random values, boolean failure, String packageName, int number) {
+        StringBuilder line = new StringBuilder(100);
+        line.append(failure ? "FAILURE" : "SUCCESS").append(" - ")
+            .append(packageName).append(".UT_PROCEDURE_").append(number % 20);
+        int micros = values.nextInt(100000);
+        ElapsedTime format = elapsedTime;
+        if (format == ElapsedTime.MIXED) {
+            format = values.nextBoolean() ? ElapsedTime.COMMA : ElapsedTime.DOT;
+        }
+        if (format != ElapsedTime.NONE) {
+            line.append(" [").append(micros / 1000).append(format == ElapsedTime.COMMA ? ',' : '.')
+                .append(String.format("%03d", micros % 1000)).append(" ms]");
+        }
+        line.append(" : EQ \"assert number ").append(number).append('"');
+        line.append(failure ? " Expected \"1\" and got \"2\"" : " Expected \"1\" and got \"1\"");
+        return line.toString();
+    }
+}
@@ -24,6 +24,7 @@
 package hudson.plugins.utplsql;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import org.junit.Test;
 
@@ -35,4 +36,67 @@ public class TestPackageTest {
 		TestPackage testPackage = new TestPackage("test");
 		assertEquals("Package name is wrong", "test", testPackage.getName());
 	}
+
+	@Test
+	public void identityDoesNotShiftWhenAnAssertIsAddedBefore()
+	{
+		// GIVEN
+		TestPackage before = new TestPackage("UT_FAKE");
+		before.add(new Testcase(before, "SUCCESS - UT_FAKE.UT_ONE: EQ \"first\" Expected \"1\" and got \"1\""));
+		before.add(new Testcase(before, "SUCCESS - UT_FAKE.UT_ONE: EQ \"first\" Expected \"2\" and got \"2\""));
+		TestPackage after = new TestPackage("UT_FAKE");
+		after.add(new Testcase(after, "SUCCESS - UT_FAKE.UT_NEW: EQ \"new\" Expected \"1\" and got \"1\""));
+		after.add(new Testcase(after, "SUCCESS - UT_FAKE.UT_ONE: EQ \"other\" Expected \"1\" and got \"1\""));
+		after.add(new Testcase(after, "FAILURE - UT_FAKE.UT_ONE: EQ \"first\" Expected \"1\" and got \"3\""));
+		after.add(new Testcase(after, "SUCCESS - UT_FAKE.UT_ONE: EQ \"first\" Expected \"2\" and got \"2\""));
+
+		// WHEN
+		Testcase first = before.getTestCases().get(0);
+		Testcase second = before.getTestCases().get(1);
+
+		// THEN
+		assertFalse("Names shift", first.getName().equals(after.getTestCases().get(2).getName()));
+		assertEquals("Identity of the first assert", first.getId(), after.getTestCases().get(2).getId());
+		assertEquals("Identity of the second assert", second.getId(), after.getTestCases().get(3).getId());
+		assertFalse("Ordinal of the same description", first.getId().equals(second.getId()));
+		assertEquals("Format of the identity", "UT_FAKE.UT_ONE:", first.getId().substring(0, 15));
+		assertEquals("Ordinal at the end", true, second.getId().endsWith(":2"));
+		assertEquals("Stable name without the package", first.getId().substring(8), first.getStableName());
+	}
+
+	@Test
+	public void identityIgnoresLaterLinesOfTheMessage()
+	{
+		// GIVEN
+		Testcase success = new Testcase(Testcase.SUCCESS, "UT_FAKE", "1UT_ONE", 0, "this is just a unittest");
+		Testcase failure = new Testcase(Testcase.FAILURE, "UT_FAKE", "7UT_ONE", 0, "this is just a unittest\nrow 1 differs");
+
+		// WHEN
+		TestPackage testPackage = new TestPackage("UT_FAKE");
+		testPackage.add(success);
+		TestPackage failedPackage = new TestPackage("UT_FAKE");
+		failedPackage.add(failure);
+
+		// THEN
+		assertEquals("Same identity", testPackage.getTestCases().get(0).getId(), failedPackage.getTestCases().get(0).getId());
+	}
+
+	@Test
+	public void identityContainsTheSchema()
+	{
+		// GIVEN
+		TestPackage first = new TestPackage(null, "APP_ONE", "UT_FAKE");
+		first.add(new Testcase(first, "SUCCESS - UT_FAKE.UT_ONE: EQ \"first\" Expected \"1\" and got \"1\""));
+		TestPackage second = new TestPackage(null, "APP_TWO", "UT_FAKE");
+		second.add(new Testcase(second, "SUCCESS - UT_FAKE.UT_ONE: EQ \"first\" Expected \"1\" and got \"1\""));
+
+		// WHEN
+		Testcase one = first.getTestCases().get(0);
+		Testcase two = second.getTestCases().get(0);
+
+		// THEN
+		assertFalse("Same identity in different schemas", one.getId().equals(two.getId()));
+		assertEquals("Format of the identity", "APP_ONE.UT_FAKE.UT_ONE:", one.getId().substring(0, 23));
+		assertEquals("Stable name without schema and package", one.getStableName(), two.getStableName());
+	}
 }
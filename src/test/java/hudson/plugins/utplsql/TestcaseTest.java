@@ -24,6 +24,10 @@
 package hudson.plugins.utplsql;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
 
 import org.junit.Test;
 
@@ -308,4 +312,42 @@ public class TestcaseTest {
         assertEquals("Message is filled (and surrounded with quotation marks)", secondLine, testcase.getMessage());
         assertEquals("Elapsed time is forced to 0", 0.0, testcase.getElapsedTimeInSeconds(), 0.0);
     }
+
+    @Test
+    public void finishMessageTruncatesLongMessages() throws IOException {
+        // GIVEN
+        Testcase testcase = new Testcase(new TestPackage("test"), "FAILURE - UT_FAKE.UT_FAKE1: EQQUERY \"first line");
+        for (int i = 0; i < 1000; i++) {
+            testcase.appendToMessage("diff line " + i);
+        }
+
+        // WHEN
+        boolean truncated = testcase.finishMessage(19 + LINE_SEPARATOR.length() + 1, null);
+
+        // THEN
+        assertTrue("Truncation is reported", truncated);
+        assertEquals("Message is truncated", "EQQUERY \"first line" + LINE_SEPARATOR + "d... [truncated]", testcase.getMessage());
+    }
+
+    @Test
+    public void finishMessageKeepsShortMessages() throws IOException {
+        // GIVEN
+        Testcase testcase = new Testcase(new TestPackage("test"), "FAILURE - UT_FAKE.UT_FAKE1: EQ \"first line");
+        testcase.appendToMessage("second line\"");
+
+        // WHEN
+        boolean truncated = testcase.finishMessage(100, null);
+
+        // THEN
+        assertFalse("No truncation is reported", truncated);
+        assertEquals("Message is complete", "EQ \"first line" + LINE_SEPARATOR + "second line\"", testcase.getMessage());
+    }
+
+    @Test
+    public void elapsedTimeIsConvertedToMicroseconds() {
+        assertEquals("Comma", 903L, Testcase.toMicros("0,903".toCharArray(), 0, 5));
+        assertEquals("Dot and more than 3 digits is rounded", 12346L, Testcase.toMicros("12.3456".toCharArray(), 0, 7));
+        assertEquals("Without fraction", 5000L, Testcase.toMicros("5".toCharArray(), 0, 1));
+        assertEquals("Malformed", 0L, Testcase.toMicros("1.2.3".toCharArray(), 0, 5));
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link TimingAnalysis}
+ */
+public class TimingAnalysisTest {
+
+    @Test
+    public void slowestAssertsAndPackages() {
+        // GIVEN
+        UtplsqlResult result = new UtplsqlResult();
+        result.add(testPackage("UT_FAST", 1, 2, 3));
+        result.add(testPackage("UT_SLOW", 900000, 5));
+        result.add(testPackage("UT_MANY", 1000, 1000, 1000, 1000));
+
+        // WHEN
+        TimingAnalysis analysis = TimingAnalysis.of(result, 2);
+
+        // THEN
+        List<TimingAnalysis.AssertTiming> asserts = analysis.getSlowestAsserts();
+        assertEquals("Number of slowest asserts", 2, asserts.size());
+        assertEquals("Slowest assert", 900000, asserts.get(0).getElapsedMicros());
+        assertEquals("Package of the slowest assert", "UT_SLOW", asserts.get(0).getPackageName());
+        assertEquals("Name of the slowest assert without the counter",
+                result.getPackages().get(1).getTestCases().get(0).getStableName(), asserts.get(0).getName());
+        assertEquals("Second slowest assert", 1000, asserts.get(1).getElapsedMicros());
+        assertEquals("Slowest package", "UT_SLOW", analysis.getSlowestPackages().get(0).getName());
+        assertEquals("Second slowest package", "UT_MANY", analysis.getSlowestPackages().get(1).getName());
+        assertEquals("All packages in the order of the result", "UT_FAST", analysis.getPackages().get(0).getName());
+        assertEquals("Total time of a package", 4000, analysis.getPackages().get(2).getTotalMicros());
+        assertEquals("Asserts of the build", 9, analysis.getHistogram().getCount());
+    }
+
+    @Test
+    public void manyAssertsKeepOnlyTheSlowest() {
+        // GIVEN
+        SyntheticLog log = new SyntheticLog().packages(100).assertsPerPackage(1000);
+        UtplsqlResult result = new UtplsqlResult();
+        TestPackage testPackage = null;
+        for (String line : log.assertLines()) {
+            UtplsqlLineLexer lexer = UtplsqlLineLexer.forLine(line);
+            if (testPackage == null || !testPackage.getName().equals(lexer.getPackageName())) {
+                testPackage = new TestPackage(lexer.getPackageName());
+                result.add(testPackage);
+            }
+            testPackage.add(new Testcase(testPackage, lexer));
+        }
+
+        // WHEN
+        TimingAnalysis analysis = TimingAnalysis.of(result, TimingAnalysis.TOP_COUNT);
+
+        // THEN
+        List<TimingAnalysis.AssertTiming> asserts = analysis.getSlowestAsserts();
+        assertEquals("Number of slowest asserts", TimingAnalysis.TOP_COUNT, asserts.size());
+        for (int i = 1; i < asserts.size(); i++) {
+            assertTrue("Slowest first", asserts.get(i - 1).getElapsedMicros() >= asserts.get(i).getElapsedMicros());
+        }
+        assertEquals("Slowest assert is the maximum", analysis.getHistogram().getMaxMicros(),
+                asserts.get(0).getElapsedMicros());
+        assertEquals("Asserts of the build", 100000, analysis.getHistogram().getCount());
+    }
+
+    @Test
+    public void savedAndLoaded() throws IOException {
+        // GIVEN
+        UtplsqlResult result = new UtplsqlResult();
+        result.add(testPackage("UT_SLOW", 900000, 5));
+        File file = File.createTempFile("utplsql-timing", ".ser");
+
+        // WHEN
+        TimingAnalysis.of(result, 10).save(file);
+        TimingAnalysis loaded = TimingAnalysis.load(file);
+        file.delete();
+
+        // THEN
+        assertEquals("Slowest assert", 900000, loaded.getSlowestAsserts().get(0).getElapsedMicros());
+        assertEquals("p99 of a package", 900000, loaded.getPackages().get(0).getHistogram().getP99());
+    }
+
+    private static TestPackage testPackage(String name, long... micros) {
+        TestPackage testPackage = new TestPackage(name);
+        for (int i = 0; i < micros.length; i++) {
+            testPackage.add(new Testcase(Testcase.SUCCESS, name, (i + 1) + "UT_PROCEDURE", micros[i], ""));
+        }
+        return testPackage;
+    }
+}
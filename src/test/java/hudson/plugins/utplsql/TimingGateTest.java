@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link TimingGate}
+ */
+public class TimingGateTest {
+
+    @Test
+    public void relativeThreshold() {
+        TimingGate gate = new TimingGate("LAST_STABLE", 1, 100, 0, "UNSTABLE");
+        assertFalse("Twice as slow", gate.isRegression(5000, 10000));
+        assertTrue("More than twice as slow", gate.isRegression(5000, 10001));
+        assertFalse("Faster", gate.isRegression(5000, 10));
+    }
+
+    @Test
+    public void absoluteThreshold() {
+        TimingGate gate = new TimingGate("LAST_STABLE", 1, 0, 50, "UNSTABLE");
+        assertFalse("50 ms slower", gate.isRegression(5000, 55000));
+        assertTrue("More than 50 ms slower", gate.isRegression(5000, 55001));
+    }
+
+    @Test
+    public void bothThresholdsMustBeExceeded() {
+        TimingGate gate = new TimingGate("LAST_STABLE", 1, 100, 50, "UNSTABLE");
+        assertFalse("Only relative threshold exceeded", gate.isRegression(10, 1000));
+        assertFalse("Only absolute threshold exceeded", gate.isRegression(100000, 160000));
+        assertTrue("Both thresholds exceeded", gate.isRegression(5000, 900000));
+    }
+
+    @Test
+    public void noThresholdNoRegression() {
+        TimingGate gate = new TimingGate("LAST_STABLE", 1, 0, 0, "UNSTABLE");
+        assertFalse("Without threshold", gate.isRegression(5000, 900000));
+    }
+
+    @Test
+    public void mediansOfAvailableBuilds() {
+        // GIVEN
+        Map<String, Long> first = new HashMap<String, Long>();
+        first.put("A", 10L);
+        first.put("B", 7L);
+        Map<String, Long> second = new HashMap<String, Long>();
+        second.put("A", 30L);
+        Map<String, Long> third = new HashMap<String, Long>();
+        third.put("A", 20L);
+        third.put("B", 9L);
+
+        // WHEN
+        @SuppressWarnings("unchecked")
+        Map<String, Long> medians = TimingGate.medians(Arrays.asList(first, second, third));
+
+        // THEN
+        assertEquals("Median of three builds", Long.valueOf(20), medians.get("A"));
+        assertEquals("Lower median of two builds", Long.valueOf(7), medians.get("B"));
+    }
+
+    @Test
+    public void regressionsOfAssertsAndPackagesGreatestFirst() {
+        // GIVEN
+        TimingGate gate = new TimingGate("ROLLING_MEDIAN", 3, 100, 1, "FAILURE");
+        UtplsqlResult current = new UtplsqlResult();
+        TestPackage testPackage = new TestPackage("UT_PKG");
+        testPackage.add(new Testcase(Testcase.SUCCESS, "UT_PKG", "1UT_FAST", 5000, ""));
+        testPackage.add(new Testcase(Testcase.SUCCESS, "UT_PKG", "2UT_SLOWER", 900000, ""));
+        testPackage.add(new Testcase(Testcase.SUCCESS, "UT_PKG", "3UT_NEW", 900000, ""));
+        current.add(testPackage);
+        String fast = testPackage.getTestCases().get(0).getId();
+        String slower = testPackage.getTestCases().get(1).getId();
+        Map<String, Long> asserts = new HashMap<String, Long>();
+        asserts.put(fast, 5000L);
+        asserts.put(slower, 5000L);
+        Map<String, Long> packages = new HashMap<String, Long>();
+        packages.put("UT_PKG", 10000L);
+
+        // WHEN
+        List<TimingGate.Regression> regressions = gate.compare(current, asserts, packages);
+
+        // THEN
+        assertEquals("Number of regressions", 2, regressions.size());
+        assertEquals("Greatest increase first", "UT_PKG", regressions.get(0).getName());
+        assertEquals("Regressed assert", slower, regressions.get(1).getName());
+    }
+
+    @Test
+    public void configurationIsNormalized() {
+        TimingGate gate = new TimingGate("unknown", 0, 100, 0, "FAILURE");
+        assertEquals("Unknown baseline", "LAST_STABLE", gate.getBaseline());
+        assertEquals("At least one build", 1, gate.getBaselineBuilds());
+    }
+
+    @Test
+    public void assertTimesAreKeyedOnTheIdentity() {
+        // GIVEN
+        TestPackage first = new TestPackage(null, "APP_ONE", "UT_PKG");
+        first.add(new Testcase(Testcase.SUCCESS, "UT_PKG", "1UT_QUERY", 5000, "EQ \"query\""));
+        TestPackage second = new TestPackage(null, "APP_TWO", "UT_PKG");
+        second.add(new Testcase(Testcase.SUCCESS, "UT_PKG", "1UT_QUERY", 7000, "EQ \"query\""));
+        UtplsqlResult result = new UtplsqlResult();
+        result.add(first);
+        result.add(second);
+
+        // WHEN
+        Map<String, Long> times = TimingGate.assertTimes(result);
+
+        // THEN
+        assertEquals("Not added up", Long.valueOf(5000), times.get(first.getTestCases().get(0).getId()));
+        assertEquals("Other schema", Long.valueOf(7000), times.get(second.getTestCases().get(0).getId()));
+    }
+
+    @Test
+    public void packageTimesAreKeyedOnSchemaAndName() {
+        // GIVEN
+        TimingGate gate = new TimingGate("LAST_STABLE", 1, 100, 0, "FAILURE");
+        TestPackage first = new TestPackage(null, "APP_ONE", "UT_PKG");
+        first.add(new Testcase(Testcase.SUCCESS, "UT_PKG", "1UT_QUERY", 5000, "EQ \"query\""));
+        TestPackage second = new TestPackage(null, "APP_TWO", "UT_PKG");
+        second.add(new Testcase(Testcase.SUCCESS, "UT_PKG", "1UT_QUERY", 20000, "EQ \"query\""));
+        UtplsqlResult current = new UtplsqlResult();
+        current.add(first);
+        current.add(second);
+        Map<String, Long> packages = new HashMap<String, Long>();
+        packages.put("APP_ONE.UT_PKG", 5000L);
+        packages.put("APP_TWO.UT_PKG", 5000L);
+
+        // WHEN
+        List<TimingGate.Regression> regressions = gate.compare(current, new HashMap<String, Long>(), packages);
+
+        // THEN
+        assertEquals("Only the package of the slower schema", 1, regressions.size());
+        assertEquals("Package with its schema", "APP_TWO.UT_PKG", regressions.get(0).getName());
+    }
+}
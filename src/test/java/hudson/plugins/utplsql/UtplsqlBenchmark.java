@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks for the separate stages of publishing utPLSQL results. Run them with
+ * <pre>mvn test-compile exec:exec -Pbenchmark</pre>
+ * or a single one with <code>-Dbenchmark=UtplsqlBenchmark.parseTestcases</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UtplsqlBenchmark {
+
+    public enum Mix {
+        SUCCESS_HEAVY(0.01), FAILURE_HEAVY(0.5);
+
+        final double failureRatio;
+
+        Mix(double failureRatio) {
+            this.failureRatio = failureRatio;
+        }
+    }
+
+    @Param({ "1000", "100000", "1000000" })
+    public int asserts;
+
+    @Param({ "SUCCESS_HEAVY", "FAILURE_HEAVY" })
+    public Mix mix;
+
+    private String[] assertLines;
+    private char[][] lines;
+    private File directory;
+    private File log;
+    private UtplsqlResult result;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        SyntheticLog synthetic = new SyntheticLog()
+                .packages(Math.max(1, asserts / 1000))
+                .assertsPerPackage(Math.min(asserts, 1000))
+                .failureRatio(mix.failureRatio);
+        assertLines = synthetic.assertLines();
+        String[] all = synthetic.toString().split("\n");
+        lines = new char[all.length][];
+        for (int i = 0; i < all.length; i++) {
+            lines[i] = all[i].toCharArray();
+        }
+        directory = File.createTempFile("utplsql-benchmark", "");
+        directory.delete();
+        directory.mkdirs();
+        log = new File(directory, "output.log");
+        synthetic.writeTo(log);
+        result = parseFile().getResult();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        log.delete();
+        directory.delete();
+    }
+
+    /**
+     * Testcase line parsing
+     */
+    @Benchmark
+    public void parseTestcases(Blackhole blackhole) {
+        TestPackage testPackage = new TestPackage("UT_PACKAGE");
+        UtplsqlLineLexer lexer = new UtplsqlLineLexer();
+        for (String line : assertLines) {
+            lexer.lex(line);
+            blackhole.consume(new Testcase(testPackage, lexer));
+        }
+    }
+
+    /**
+     * The per line classification loop, without reading the file
+     */
+    @Benchmark
+    public Object classifyLines() throws IOException {
+        UtplsqlTestResultParser.PackageCollector collector =
+                new UtplsqlTestResultParser.PackageCollector(0, null);
+        for (char[] line : lines) {
+            collector.line(line, 0, line.length);
+        }
+        return collector.finish();
+    }
+
+    /**
+     * Reading and decoding the file together with the classification
+     */
+    @Benchmark
+    public Object readAndClassify() throws IOException {
+        UtplsqlTestResultParser.PackageCollector collector =
+                new UtplsqlTestResultParser.PackageCollector(0, null);
+        new DbmsOutputReader(Charset.forName("UTF-8")).read(log, collector);
+        return collector.finish();
+    }
+
+    /**
+     * The jUnit xml export, which replaced TestPackage.getXmlSnippet
+     */
+    @Benchmark
+    public void writeJUnitXml() throws IOException {
+        JUnitXmlWriter writer = new JUnitXmlWriter();
+        OutputStream nowhere = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        for (TestPackage testPackage : result.getPackages()) {
+            writer.write(testPackage, nowhere);
+        }
+    }
+
+    /**
+     * From the files in the workspace to the result on the master: glob scanning,
+     * parsing, encoding and decoding
+     */
+    @Benchmark
+    public UtplsqlResult publish() throws IOException, InterruptedException {
+        return parseFile().getResult();
+    }
+
+    private EncodedResult parseFile() throws IOException, InterruptedException {
+        return new UtplsqlTestResultParser.ParseTestResultCallable("*.log", 1, "UTF-8", null, 0, null)
+                .invoke(directory, null);
+    }
+}
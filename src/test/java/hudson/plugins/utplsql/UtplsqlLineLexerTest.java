@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link UtplsqlLineLexer}
+ */
+public class UtplsqlLineLexerTest {
+
+    private final UtplsqlLineLexer lexer = new UtplsqlLineLexer();
+
+    @Test
+    public void packageWithSchemaAndRunId() {
+        // GIVEN
+        String line = "FAILURE: \"USER1.UT_BETWNSTR\" Run ID: 106      ";
+
+        // WHEN
+        UtplsqlLineLexer.LineType type = lexer.lex(line);
+
+        // THEN
+        assertEquals("Line is a package", UtplsqlLineLexer.LineType.PACKAGE, type);
+        assertEquals("Package without schema", "UT_BETWNSTR", lexer.getPackageName());
+        assertEquals("Schema", "USER1", lexer.getSchema());
+        assertEquals("Result is failure", Testcase.FAILURE, lexer.getResult());
+    }
+
+    @Test
+    public void suiteLines() {
+        assertEquals("Suite line", UtplsqlLineLexer.LineType.SUITE, lexer.lex("SUITE FAILURE: \"ALL\"  "));
+        assertEquals("Suite name", "ALL", lexer.getSuiteName());
+        assertEquals("Suite result", Testcase.FAILURE, lexer.getResult());
+        assertNull("No schema", lexer.getSchema());
+        assertEquals("Statistics", UtplsqlLineLexer.LineType.SUITE, lexer.lex("SUITE STATS: 0 of 1 packages succeeded."));
+        assertNull("Statistics have no name", lexer.getSuiteName());
+        assertNull("Statistics have no result", lexer.getResult());
+        assertEquals("Package line", UtplsqlLineLexer.LineType.PACKAGE, lexer.lex("SUCCESS: \"UT_A\""));
+        assertNull("Package without schema", lexer.getSchema());
+        assertNull("Package is no suite", lexer.getSuiteName());
+    }
+
+    @Test
+    public void outputLine() {
+        assertEquals("Banner line", UtplsqlLineLexer.LineType.OUTPUT, lexer.lex(">  FFFFFFF   AA     III  L"));
+        assertEquals("Blank line", UtplsqlLineLexer.LineType.OTHER, lexer.lex("      "));
+        assertEquals("Blank line is empty", "", lexer.getLine());
+    }
+
+    @Test
+    public void fixtureLines() {
+        assertEquals("Setup", UtplsqlLineLexer.LineType.FIXTURE, lexer.lex("Ran setup   "));
+        assertEquals("Teardown", UtplsqlLineLexer.LineType.FIXTURE, lexer.lex("Ran teardown"));
+        assertEquals("Other output", UtplsqlLineLexer.LineType.OTHER, lexer.lex("Ran setup of the data"));
+        assertEquals("Other output", UtplsqlLineLexer.LineType.OTHER, lexer.lex("Ran teardown [fast]"));
+    }
+
+    @Test
+    public void testcaseWithElapsedTime() {
+        // GIVEN
+        String line = "  SUCCESS - UT_FAKE.UT_FAKE1 [1,101 ms] : EQ \"this is just a unittest\"\t ";
+
+        // WHEN
+        UtplsqlLineLexer.LineType type = lexer.lex(line);
+
+        // THEN
+        assertEquals("Line is a testcase", UtplsqlLineLexer.LineType.TESTCASE, type);
+        assertTrue("Line is scanned", lexer.isWellFormed());
+        assertEquals("Result", Testcase.SUCCESS, lexer.getResult());
+        assertEquals("Package", "UT_FAKE", lexer.getPackageName());
+        assertEquals("Procedure", "UT_FAKE1", lexer.getProcedure());
+        assertEquals("Elapsed time", "1,101", lexer.getElapsedTime());
+        assertEquals("Message", "EQ \"this is just a unittest\"", lexer.getMessage());
+    }
+
+    @Test
+    public void testcaseWithoutElapsedTimeAndMessage() {
+        // GIVEN
+        char[] chars = "xxFAILURE - UT_FAKE.UT_FAKE1:yy".toCharArray();
+
+        // WHEN
+        UtplsqlLineLexer.LineType type = lexer.lex(chars, 2, chars.length - 4);
+
+        // THEN
+        assertEquals("Line is a testcase", UtplsqlLineLexer.LineType.TESTCASE, type);
+        assertTrue("Line is scanned", lexer.isWellFormed());
+        assertEquals("Result", Testcase.FAILURE, lexer.getResult());
+        assertEquals("Procedure", "UT_FAKE1", lexer.getProcedure());
+        assertNull("No elapsed time", lexer.getElapsedTime());
+        assertEquals("Empty message", "", lexer.getMessage());
+    }
+
+    @Test
+    public void malformedTestcase() {
+        // GIVEN
+        String line = "SUCCESS - NO_PROCEDURE_GIVEN";
+
+        // WHEN
+        UtplsqlLineLexer.LineType type = lexer.lex(line);
+
+        // THEN
+        assertEquals("Line is a testcase", UtplsqlLineLexer.LineType.TESTCASE, type);
+        assertFalse("Line can't be scanned", lexer.isWellFormed());
+        assertEquals("Testcase falls back to the regular expression", "PARSING_ERROR",
+                new Testcase(new TestPackage("test"), lexer).getName());
+    }
+}
@@ -0,0 +1,68 @@
+package hudson.plugins.utplsql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.TestBuilder;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+
+public class UtplsqlLiveWrapperTest extends HudsonTestCase
+{
+
+	public void testResultsAreShownWhileTheBuildRuns() throws Exception
+	{
+		final int[] seen = new int[2];
+		FreeStyleProject project = createFreeStyleProject();
+		project.getBuildWrappersList().add(new UtplsqlLiveWrapper(1));
+		project.getBuildersList().add(new TestBuilder() {
+			public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
+								   BuildListener listener) throws InterruptedException, IOException {
+				OutputStream output = build.getWorkspace().child("result.txt").write();
+				try {
+					output.write(("FAILURE: \"TESTER.UT_A\"\n"
+							+ "FAILURE - UT_A.UT_ONE: EQ \"one\" Expected \"1\" and got \"2\"\n"
+							+ "SUCCESS: \"TESTER.UT_B\"\n").getBytes("UTF-8"));
+					output.flush();
+					// the first package is shown before the build step is done
+					UtplsqlLiveAction action = build.getAction(UtplsqlLiveAction.class);
+					for (int i = 0; i < 200 && action.getPackageCount() == 0; i++) {
+						Thread.sleep(100);
+					}
+					seen[0] = action.getTotalCount();
+					seen[1] = action.getFailCount();
+					output.write("SUCCESS - UT_B.UT_TWO: EQ \"two\" Expected \"2\" and got \"2\"\n".getBytes("UTF-8"));
+				} finally {
+					output.close();
+				}
+				return true;
+			}
+		});
+		project.getPublishersList().add(new UtplsqlRecorder("*.txt"));
+
+		FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+		assertBuildStatus(Result.UNSTABLE, build);
+		assertEquals("Asserts seen while the build step ran", 1, seen[0]);
+		assertEquals("Failures seen while the build step ran", 1, seen[1]);
+		assertNull("Live results are replaced by the published results", build.getAction(UtplsqlLiveAction.class));
+		assertEquals("Number of total Testcases", 2, build.getAction(UtplsqlResultAction.class).getTotalCount());
+	}
+
+	public void testWithoutRecorder() throws Exception
+	{
+		FreeStyleProject project = createFreeStyleProject();
+		project.getBuildWrappersList().add(new UtplsqlLiveWrapper(1));
+
+		FreeStyleBuild build = project.scheduleBuild2(0).get();
+
+		assertBuildStatus(Result.SUCCESS, build);
+		assertLogContains("no live results", build);
+	}
+}
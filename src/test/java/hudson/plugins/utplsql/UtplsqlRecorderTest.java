@@ -16,5 +16,6 @@ public class UtplsqlRecorderTest extends HudsonTestCase {
 			submit(createWebClient().getPage(project, "configure").getFormByName("config"));
 			UtplsqlRecorder after = project.getPublishersList().get(UtplsqlRecorder.class);
 			assertEqualBeans(before, after, "testResults");
+			assertEquals("Parse cache is off by default", 0, after.getParseCacheMegabytes());
 	}
 }
@@ -0,0 +1,58 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link UtplsqlResult}
+ */
+public class UtplsqlResultTest {
+
+    @Test
+    public void countsOverAllPackages() {
+        // GIVEN
+        TestPackage first = new TestPackage("UT_FIRST");
+        first.add(new Testcase(first, "SUCCESS - UT_FIRST.UT_ONE [1,5 ms] : EQ \"one\""));
+        first.add(new Testcase(first, "FAILURE - UT_FIRST.UT_TWO [2,5 ms] : EQ \"two\""));
+        TestPackage second = new TestPackage("UT_SECOND");
+        second.add(new Testcase(second, "SUCCESS - UT_SECOND.UT_ONE: EQ \"one\""));
+
+        // WHEN
+        UtplsqlResult result = new UtplsqlResult();
+        result.add(first);
+        result.add(second);
+
+        // THEN
+        assertEquals("Number of total Testcases", 3, result.getTotalCount());
+        assertEquals("Number of failed Testcases", 1, result.getFailCount());
+        assertEquals("Number of passed Testcases", 2, result.getPassCount());
+        assertEquals("Duration is summed up", 0.004, result.getDuration(), 0.0000001);
+        assertEquals("Package is found by name", second, result.getPackage("UT_SECOND"));
+        assertNull("Unknown package", result.getPackage("UT_THIRD"));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link UtplsqlRunner}, running against the {@link FakeDatabase}
+ */
+public class UtplsqlRunnerTest {
+
+    @Test
+    public void outputIsParsedLikeASpoolFile() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase().outputOf("UT_FAKE", "OneFileOnePackage.log");
+        UtplsqlTestResultParser.PackageCollector collector = new UtplsqlTestResultParser.PackageCollector(0, null);
+
+        // WHEN
+        new UtplsqlRunner(database, 10).run(UtplsqlRunner.Mode.TEST, Arrays.asList("UT_FAKE"), collector);
+
+        // THEN
+        List<TestPackage> packages = collector.finish();
+        assertEquals("Number of packages", 1, packages.size());
+        assertEquals("Number of total Testcases", 3, packages.get(0).getTotalCount());
+        assertEquals("Number of failed Testcases", 1, packages.get(0).getFailures());
+        assertEquals("Connection is closed", 0, database.getOpenConnections());
+    }
+
+    @Test
+    public void outputIsFetchedInBatches() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase()
+                .output("UT_A", lines("a", 2500))
+                .output("UT_B", lines("b", 2000));
+        List<String> received = new ArrayList<String>();
+
+        // WHEN
+        long count = new UtplsqlRunner(database, 1000).run(UtplsqlRunner.Mode.TEST,
+                Arrays.asList("UT_A", "UT_B"), collect(received));
+
+        // THEN
+        assertEquals("Number of lines", 4500, count);
+        assertEquals("Lines in order", lines("a", 2500), received.subList(0, 2500));
+        assertEquals("Lines of the second package", "b1999", received.get(4499));
+        assertEquals("Round trips, the last batch of each package is not full", 3 + 3, database.getFetches());
+        assertEquals("Calls", Arrays.asList("utplsql.test(UT_A)", "utplsql.test(UT_B)"), database.getCalls());
+    }
+
+    @Test
+    public void emptyAndLongLines() throws Exception {
+        // GIVEN
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longLine.append("long line ");
+        }
+        FakeDatabase database = new FakeDatabase().output("UT_SUITE",
+                Arrays.asList("", longLine.toString(), ""));
+        List<String> received = new ArrayList<String>();
+
+        // WHEN
+        new UtplsqlRunner(database, 2).run(UtplsqlRunner.Mode.TESTSUITE, Arrays.asList("UT_SUITE"), collect(received));
+
+        // THEN
+        assertEquals("Lines", Arrays.asList("", longLine.toString(), ""), received);
+        assertEquals("Calls", Arrays.asList("utplsql.testsuite(UT_SUITE)"), database.getCalls());
+    }
+
+    @Test
+    public void failingCallClosesTheConnection() throws Exception {
+        // GIVEN
+        FakeDatabase database = new FakeDatabase();
+
+        // WHEN
+        try {
+            new UtplsqlRunner(database, 10).run(UtplsqlRunner.Mode.TEST, Arrays.asList("UT_MISSING"),
+                    collect(new ArrayList<String>()));
+            fail("Unknown package must fail");
+        } catch (SQLException e) {
+            // THEN
+            assertEquals("Connection is closed", 0, database.getOpenConnections());
+        }
+    }
+
+    static List<String> lines(String prefix, int count) {
+        List<String> lines = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(prefix + i);
+        }
+        return lines;
+    }
+
+    static DbmsOutputReader.LineHandler collect(final List<String> lines) {
+        return new DbmsOutputReader.LineHandler() {
+            public void line(char[] chars, int offset, int length) throws IOException {
+                lines.add(new String(chars, offset, length));
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2010 Nils op den Winkel
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy 
+ * of this software and associated documentation files (the "Software"), to deal 
+ * in the Software without restriction, including without limitation the rights 
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+ * copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, 
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN 
+ * THE SOFTWARE.
+ */
+package hudson.plugins.utplsql;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.TestBuilder;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+
+/**
+ * Publishes synthetic logs of growing size and fails when the time or the heap
+ * needed per assert exceeds the budget, or when the time grows much faster than
+ * the number of asserts. The budgets are deliberately generous and can be
+ * overridden with the system properties {@code utplsql.scaling.maxAsserts},
+ * {@code utplsql.scaling.microsPerAssert} and {@code utplsql.scaling.bytesPerAssert}.
+ */
+public class UtplsqlScalingTest extends HudsonTestCase
+{
+	private static final int MAX_ASSERTS = Integer.getInteger("utplsql.scaling.maxAsserts", 100000);
+	private static final long MICROS_PER_ASSERT = Long.getLong("utplsql.scaling.microsPerAssert", 200L);
+	private static final long BYTES_PER_ASSERT = Long.getLong("utplsql.scaling.bytesPerAssert", 2048L);
+	/** fixed costs of a build, which do not depend on the number of asserts */
+	private static final long BASE_MILLIS = 5000;
+	/** allowed growth of the time per assert between the smallest and the largest run */
+	private static final int MAX_SLOWDOWN = 5;
+
+	public void testPublishingScalesLinearly() throws Exception
+	{
+		long smallest = -1;
+		for (int asserts = MAX_ASSERTS / 100; asserts <= MAX_ASSERTS; asserts *= 10) {
+			SyntheticLog log = new SyntheticLog()
+				.packages(Math.max(1, asserts / 1000))
+				.assertsPerPackage(Math.min(asserts, 1000))
+				.failureRatio(0.05)
+				.messageLines(3)
+				.elapsedTime(SyntheticLog.ElapsedTime.MIXED);
+
+			FreeStyleProject project = createFreeStyleProject();
+			project.getBuildersList().add(new SyntheticLogBuilder(log));
+			project.getPublishersList().add(new UtplsqlRecorder("*.log"));
+
+			long heapBefore = usedHeap();
+			FreeStyleBuild build = project.scheduleBuild2(0).get();
+			UtplsqlResultAction action = build.getAction(UtplsqlResultAction.class);
+			long heap = usedHeap() - heapBefore;
+			long millis = build.getDuration();
+
+			assertBuildStatus(Result.UNSTABLE, build);
+			assertEquals("Number of total Testcases", log.getTotalCount(), action.getTotalCount());
+			assertEquals("Number of failed Testcases", log.getFailCount(), action.getFailCount());
+			assertTrue("Publishing " + asserts + " asserts took " + millis + " ms",
+				millis <= BASE_MILLIS + asserts * MICROS_PER_ASSERT / 1000);
+			assertTrue("Result of " + asserts + " asserts retains " + heap + " bytes",
+				heap <= asserts * BYTES_PER_ASSERT);
+
+			long microsPerAssert = Math.max(1, millis * 1000 / asserts);
+			if (smallest < 0) {
+				smallest = microsPerAssert;
+			} else {
+				assertTrue("Time per assert grew from " + smallest + " to " + microsPerAssert + " micros at " + asserts + " asserts",
+					microsPerAssert <= Math.max(smallest, MICROS_PER_ASSERT / 10) * MAX_SLOWDOWN);
+			}
+		}
+	}
+
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Writes the synthetic log into the workspace
+	 */
+	private static final class SyntheticLogBuilder extends TestBuilder
+	{
+		private final SyntheticLog log;
+
+		SyntheticLogBuilder(SyntheticLog log)
+		{
+			this.log = log;
+		}
+
+		public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
+							   BuildListener listener) throws InterruptedException, IOException {
+			log.writeTo(new File(build.getWorkspace().getRemote(), "result.log"));
+			return true;
+		}
+	}
+}
@@ -31,6 +31,14 @@ public class UtplsqlTestResultParserTest extends HudsonTestCase
 		AbstractTestResultAction action = build.getAction(AbstractTestResultAction.class);
 		assertEquals("Number of total Testcases", 3, action.getTotalCount());
 		assertEquals("Number of failed Testcases ", 1, action.getFailCount());
+		PublishStatistics statistics = build.getAction(UtplsqlStatisticsAction.class).getStatistics();
+		assertEquals("Number of files in the statistics", 1, statistics.getFiles());
+		assertEquals("Number of asserts in the statistics", 3, statistics.getAsserts());
+		UtplsqlProjectAction projectAction = new UtplsqlProjectAction(project);
+		assertEquals("Number of total Testcases in the summary index", 3, projectAction.getSummaries().get(0).getTotalCount());
+		assertEquals("Failed packages in the summary index", 1, projectAction.getFailingPackages().size());
+		TimingAnalysis timing = build.getAction(UtplsqlTimingAction.class).getAnalysis();
+		assertEquals("Number of timed asserts", 3, timing.getHistogram().getCount());
 	}
 
 
@@ -46,13 +54,82 @@ public class UtplsqlTestResultParserTest extends HudsonTestCase
 		AbstractTestResultAction action = build.getAction(AbstractTestResultAction.class);
 		assertEquals("Number of total Testcases", 3, action.getTotalCount());
 		assertEquals("Number of failed Testcases ", 1, action.getFailCount());
+		ResultNode suite = build.getAction(UtplsqlResultAction.class).getResult().getTree().getChild("ALL");
+		assertEquals("Testcases of the package in the suite", 3, suite.getChild("USER1").getChild("UT_BETWNSTR").getTotalCount());
+	}
+
+	public void testTwoFilesParsedInParallel() throws Exception
+	{
+		FreeStyleProject project = createFreeStyleProject();
+		addTestBuilderToProject(this.getClass().getResourceAsStream("OneFileOnePackage.log"), project, "result1.txt");
+		addTestBuilderToProject(this.getClass().getResourceAsStream("OneFileOneTestSuiteOnePackage.log"), project, "result2.txt");
+		UtplsqlRecorder recorder = new UtplsqlRecorder("*.txt", 2, null, null, 0);
+		project.getPublishersList().add(recorder);
+		FreeStyleBuild build = project.scheduleBuild2(0).get();
+		assertBuildStatus(Result.UNSTABLE, build);
+		UtplsqlResultAction action = build.getAction(UtplsqlResultAction.class);
+		assertEquals("Number of total Testcases", 6, action.getTotalCount());
+		assertEquals("Number of failed Testcases ", 2, action.getFailCount());
+		assertEquals("Packages are in the order of the files", "UT_FAKE", action.getResult().getPackages().get(0).getName());
+		assertEquals("Packages are in the order of the files", "UT_BETWNSTR", action.getResult().getPackages().get(1).getName());
+		assertEquals("Package loaded from the result file", 3, action.getResult().getPackage("USER1.UT_BETWNSTR").getTotalCount());
+	}
+
+	public void testSamePackageInTwoFilesIsMerged() throws Exception
+	{
+		FreeStyleProject project = createFreeStyleProject();
+		addTestBuilderToProject(this.getClass().getResourceAsStream("OneFileOnePackage.log"), project, "shard1.txt");
+		addTestBuilderToProject(this.getClass().getResourceAsStream("OneFileOnePackage.log"), project, "shard2.txt");
+		project.getPublishersList().add(new UtplsqlRecorder("*.txt", 2, null, null, 0));
+		FreeStyleBuild build = project.scheduleBuild2(0).get();
+		assertBuildStatus(Result.UNSTABLE, build);
+		UtplsqlResultAction action = build.getAction(UtplsqlResultAction.class);
+		assertEquals("Number of total Testcases", 6, action.getTotalCount());
+		assertEquals("One package for both files", 1, action.getResult().getPackages().size());
+		assertEquals("Testcases of both files in the package", 6, action.getResult().getPackage("UT_FAKE").getTotalCount());
+	}
+
+	public void testTimingRegressionFailsBuild() throws Exception
+	{
+		FreeStyleProject project = createFreeStyleProject();
+		project.getBuildersList().add(new TestBuilder() {
+			public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
+								   BuildListener listener) throws InterruptedException, IOException {
+				// the builds after the first are much slower
+				String elapsed = build.getNumber() == 1 ? "5,000" : "900,000";
+				build.getWorkspace().child("result.txt").write(
+						"SUCCESS: \"TESTER.UT_SLOW\"\n"
+						+ "SUCCESS - UT_SLOW.UT_QUERY [" + elapsed + " ms] : EQ \"query\" Expected \"1\" and got \"1\"\n", "UTF-8");
+				return true;
+			}
+		});
+		TimingGate gate = new TimingGate("LAST_STABLE", 1, 100, 50, "FAILURE");
+		project.getPublishersList().add(new UtplsqlRecorder("*.txt", 1, null, null, 0, gate));
+
+		assertBuildStatus(Result.SUCCESS, project.scheduleBuild2(0).get());
+		FreeStyleBuild build = project.scheduleBuild2(0).get();
+		assertBuildStatus(Result.FAILURE, build);
+		assertLogContains("assert TESTER.UT_SLOW.UT_QUERY:8ba01788:1: 5.0 ms -> 900.0 ms", build);
+		assertLogContains("utPLSQL changes against build #1: 0 new failures, 0 fixed, 1 slower", build);
+		assertEquals("Slower assert in the diff", 1, build.getAction(UtplsqlDiffAction.class).getDiff().getSlowerCount());
+		assertTrue("Regressed build is marked", build.getAction(UtplsqlResultAction.class).isTimingRegressed());
+
+		// the regressed build is no baseline
+		FreeStyleBuild third = project.scheduleBuild2(0).get();
+		assertBuildStatus(Result.FAILURE, third);
+		assertLogContains("assert TESTER.UT_SLOW.UT_QUERY:8ba01788:1: 5.0 ms -> 900.0 ms", third);
+		assertLogContains("regressions against the last stable build", third);
 	}
 
 	private void addTestBuilderToProject(final InputStream input, FreeStyleProject project) throws IOException {
+		addTestBuilderToProject(input, project, "result.txt");
+	}
+
+	private void addTestBuilderToProject(final InputStream input, FreeStyleProject project, final String fileName) throws IOException {
 		project.getBuildersList().add(new TestBuilder() {
 		    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher,
 								   BuildListener listener) throws InterruptedException, IOException {
-		        OutputStream output = build.getWorkspace().child("result.txt").write();
+		        OutputStream output = build.getWorkspace().child(fileName).write();
 		        int b;
 		        do
 		        {